@@ -0,0 +1,202 @@
+import org.cakedek.myitemlibrary.database.ConnectionPool;
+import org.cakedek.myitemlibrary.database.EmbeddedItemStore;
+import org.cakedek.myitemlibrary.database.SqliteWriter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Compares the Embedded store with tuned Local mode SQLite on the two paths it was built for:
+ * bulk grants (one template to many players) and GUI page reads (first 45 enabled items).
+ *
+ * <p>Run after {@code mvn package}, with sqlite-jdbc on the class path:
+ * <pre>
+ * java -cp target/classes:sqlite-jdbc.jar benchmarks/EmbeddedStoreBenchmark.java [players] [rounds] [pages]
+ * </pre>
+ * Defaults: 20,000 players, 50 bulk grant rounds (1,000,000 grants), 100,000 page reads.
+ * Both stores are created from scratch in {@code benchmark-embedded} and {@code benchmark-embedded.db}.
+ */
+public class EmbeddedStoreBenchmark {
+    private static final int PAGE_SIZE = 45;
+
+    private static final String PAGE_SQL = "SELECT g.id, g.template_id, t.item_name, t.item_display, t.description, p.name AS player, "
+            + "g.enable, t.command, g.used FROM co_item_grant g JOIN co_item_template t ON t.id = g.template_id "
+            + "LEFT JOIN co_player p ON p.id = g.player_id WHERE g.player_id = ? AND g.enable = 1 AND g.id > ? ORDER BY g.id LIMIT ?";
+
+    private static final List<String> WRITER_PRAGMAS = Arrays.asList(
+            "PRAGMA journal_mode = WAL", "PRAGMA synchronous = NORMAL", "PRAGMA busy_timeout = 5000",
+            "PRAGMA cache_size = -65536", "PRAGMA mmap_size = 268435456", "PRAGMA temp_store = MEMORY");
+    private static final List<String> READER_PRAGMAS = Arrays.asList(
+            "PRAGMA busy_timeout = 5000", "PRAGMA cache_size = -65536", "PRAGMA mmap_size = 268435456",
+            "PRAGMA temp_store = MEMORY", "PRAGMA query_only = ON");
+
+    interface Grant {
+        void grant(int round, List<String> names) throws SQLException;
+    }
+
+    interface Page {
+        void page(int player) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int pages = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        List<String> names = new ArrayList<>(playerCount);
+        for (int i = 1; i <= playerCount; i++) {
+            names.add("player" + i);
+        }
+
+        System.out.println("Embedded (fsync every second, as configured by default)");
+        runEmbedded(names, rounds, pages);
+        System.out.println("Local SQLite (WAL, read-only pool, group-committing writer)");
+        runSqlite(names, rounds, pages);
+    }
+
+    private static void runEmbedded(List<String> names, int rounds, int pages) throws Exception {
+        File directory = new File("benchmark-embedded");
+        deleteDirectory(directory);
+        EmbeddedItemStore store = new EmbeddedItemStore(directory, 64 * 1024 * 1024, 1000, 60000, 0.5, 300000,
+                Logger.getLogger("benchmark"));
+        if (!store.connect()) {
+            throw new IllegalStateException("Could not open " + directory);
+        }
+        try {
+            for (String name : names) {
+                store.registerPlayer(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)), name);
+            }
+            run(names, rounds, pages,
+                    (round, players) -> store.grantTemplateToAllPlayers(store.getOrCreateTemplateId("Item " + round, "DIAMOND",
+                            "Benchmark item number " + round, "give %player% diamond 1"), true, 1),
+                    player -> store.getListItemsPage("player" + player, 0, PAGE_SIZE));
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void runSqlite(List<String> names, int rounds, int pages) throws Exception {
+        File file = new File("benchmark-embedded.db");
+        file.delete();
+        new File(file.getPath() + "-wal").delete();
+        new File(file.getPath() + "-shm").delete();
+        String url = "jdbc:sqlite:" + file.getAbsolutePath();
+        Logger logger = Logger.getLogger("benchmark");
+
+        SqliteWriter writer = new SqliteWriter(url, WRITER_PRAGMAS, 64, logger);
+        writer.start();
+        ConnectionPool pool = null;
+        try {
+            writer.submit(connection -> {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("CREATE TABLE co_player (id INTEGER PRIMARY KEY AUTOINCREMENT, uuid CHAR(36) UNIQUE, "
+                            + "name TEXT COLLATE NOCASE UNIQUE, last_seen BIGINT)");
+                    stmt.execute("CREATE TABLE co_item_template (id INTEGER PRIMARY KEY AUTOINCREMENT, content_hash CHAR(64) NOT NULL, "
+                            + "item_name TEXT, item_display TEXT, description TEXT, command TEXT, created_at BIGINT)");
+                    stmt.execute("CREATE TABLE co_item_grant (id INTEGER PRIMARY KEY AUTOINCREMENT, template_id INTEGER NOT NULL, "
+                            + "player_id INTEGER, enable BOOLEAN, used INT)");
+                    stmt.execute("CREATE INDEX idx_co_item_grant_player_enable ON co_item_grant (player_id, enable)");
+                }
+                try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO co_player (name) VALUES (?)")) {
+                    for (String name : names) {
+                        pstmt.setString(1, name);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                return null;
+            }, false);
+
+            pool = new ConnectionPool(url, null, null, 1, 4, 5000, 600000, 0, 2, logger);
+            pool.setConnectionInitSql(READER_PRAGMAS);
+            pool.start();
+            ConnectionPool readers = pool;
+            run(names, rounds, pages,
+                    (round, players) -> writer.submit(connection -> {
+                        long templateId;
+                        try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO co_item_template "
+                                + "(content_hash, item_name, item_display, description, command, created_at) VALUES (?, ?, ?, ?, ?, ?)",
+                                Statement.RETURN_GENERATED_KEYS)) {
+                            pstmt.setString(1, String.format("%064d", round));
+                            pstmt.setString(2, "Item " + round);
+                            pstmt.setString(3, "DIAMOND");
+                            pstmt.setString(4, "Benchmark item number " + round);
+                            pstmt.setString(5, "give %player% diamond 1");
+                            pstmt.setLong(6, System.currentTimeMillis());
+                            pstmt.executeUpdate();
+                            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                                keys.next();
+                                templateId = keys.getLong(1);
+                            }
+                        }
+                        // เหมือน grantTemplateToAllPlayers ของ CoDatabase: INSERT ... SELECT ครั้งเดียว
+                        try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO co_item_grant "
+                                + "(template_id, player_id, enable, used) SELECT ?, id, 1, 1 FROM co_player")) {
+                            pstmt.setLong(1, templateId);
+                            pstmt.executeUpdate();
+                        }
+                        return null;
+                    }, false),
+                    player -> {
+                        try (Connection connection = readers.borrow();
+                             PreparedStatement pstmt = connection.prepareStatement(PAGE_SQL)) {
+                            pstmt.setInt(1, player);
+                            pstmt.setInt(2, 0);
+                            pstmt.setInt(3, PAGE_SIZE);
+                            try (ResultSet rs = pstmt.executeQuery()) {
+                                while (rs.next()) {
+                                    rs.getString("item_name");
+                                }
+                            }
+                        }
+                    });
+        } finally {
+            if (pool != null) {
+                pool.close();
+            }
+            writer.close();
+        }
+    }
+
+    private static void run(List<String> names, int rounds, int pages, Grant grant, Page page) throws SQLException {
+        long start = System.nanoTime();
+        for (int round = 1; round <= rounds; round++) {
+            grant.grant(round, names);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  bulk grants: %.0f items/s (%d items in %.1fs)%n",
+                (double) rounds * names.size() / seconds, (long) rounds * names.size(), seconds);
+
+        long[] latencies = new long[pages];
+        for (int i = 0; i < pages; i++) {
+            int player = ThreadLocalRandom.current().nextInt(names.size()) + 1;
+            long pageStart = System.nanoTime();
+            page.page(player);
+            latencies[i] = System.nanoTime() - pageStart;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("  page reads: p50 %.1fus, p99 %.1fus, max %.1fus%n",
+                latencies[pages / 2] / 1e3, latencies[(int) (pages * 0.99)] / 1e3, latencies[pages - 1] / 1e3);
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
@@ -0,0 +1,243 @@
+import org.cakedek.myitemlibrary.database.ConnectionPool;
+import org.cakedek.myitemlibrary.database.SqliteWriter;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Compares Local mode throughput before and after the SQLite tuning on a generated database.
+ *
+ * <p>Before: default rollback journal, one connection shared by every thread (the old single
+ * connection pool). After: WAL with the plugin's pragmas, the read-only {@link ConnectionPool}
+ * and the group-committing {@link SqliteWriter}.
+ *
+ * <p>Run after {@code mvn package}, with sqlite-jdbc on the class path:
+ * <pre>
+ * java -cp target/classes:sqlite-jdbc.jar benchmarks/SqliteLocalModeBenchmark.java [rows] [seconds] [readers] [writers]
+ * </pre>
+ * Defaults: 2,000,000 grants, 20 seconds per run, 8 reader threads, 4 writer threads.
+ * The database is generated once in {@code benchmark.db} and reused by later runs.
+ */
+public class SqliteLocalModeBenchmark {
+    private static final int PLAYERS = 20000;
+    private static final int TEMPLATES = 500;
+    private static final int PAGE_SIZE = 45;
+
+    private static final String PAGE_SQL = "SELECT g.id, g.template_id, t.item_name, t.item_display, t.description, p.name AS player, "
+            + "g.enable, t.command, g.used FROM co_item_grant g JOIN co_item_template t ON t.id = g.template_id "
+            + "LEFT JOIN co_player p ON p.id = g.player_id WHERE g.player_id = ? AND g.enable = 1 AND g.id > ? ORDER BY g.id LIMIT ?";
+    private static final String CLAIM_SQL = "UPDATE co_item_grant SET enable = 0, used = used - 1 WHERE id = ? AND enable = 1";
+
+    private static final List<String> WRITER_PRAGMAS = Arrays.asList(
+            "PRAGMA journal_mode = WAL", "PRAGMA synchronous = NORMAL", "PRAGMA busy_timeout = 5000",
+            "PRAGMA cache_size = -65536", "PRAGMA mmap_size = 268435456", "PRAGMA temp_store = MEMORY");
+    private static final List<String> READER_PRAGMAS = Arrays.asList(
+            "PRAGMA busy_timeout = 5000", "PRAGMA cache_size = -65536", "PRAGMA mmap_size = 268435456",
+            "PRAGMA temp_store = MEMORY", "PRAGMA query_only = ON");
+
+    interface Reader {
+        void page(int playerId) throws SQLException;
+    }
+
+    interface Writer {
+        void claim(int id) throws SQLException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int writers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        File file = new File("benchmark.db");
+        String url = "jdbc:sqlite:" + file.getAbsolutePath();
+        if (!file.exists()) {
+            generate(url, rows);
+        }
+
+        System.out.println("Before (rollback journal, one shared connection)");
+        runLegacy(url, rows, seconds, readers, writers);
+        System.out.println("After (WAL, read-only pool, group-committing writer)");
+        runTuned(url, rows, seconds, readers, writers);
+    }
+
+    private static void generate(String url, int rows) throws SQLException {
+        System.out.println("Generating " + rows + " grants...");
+        long start = System.currentTimeMillis();
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = OFF");
+            stmt.execute("PRAGMA synchronous = OFF");
+            stmt.execute("CREATE TABLE co_player (id INTEGER PRIMARY KEY AUTOINCREMENT, uuid CHAR(36) UNIQUE, "
+                    + "name TEXT COLLATE NOCASE UNIQUE, last_seen BIGINT)");
+            stmt.execute("CREATE TABLE co_item_template (id INTEGER PRIMARY KEY AUTOINCREMENT, content_hash CHAR(64) NOT NULL, "
+                    + "item_name TEXT, item_display TEXT, description TEXT, command TEXT, created_at BIGINT)");
+            stmt.execute("CREATE TABLE co_item_grant (id INTEGER PRIMARY KEY AUTOINCREMENT, template_id INTEGER NOT NULL, "
+                    + "player_id INTEGER, enable BOOLEAN, used INT)");
+
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO co_player (name) VALUES (?)")) {
+                for (int i = 1; i <= PLAYERS; i++) {
+                    pstmt.setString(1, "player" + i);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO co_item_template "
+                    + "(content_hash, item_name, item_display, description, command, created_at) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 1; i <= TEMPLATES; i++) {
+                    pstmt.setString(1, String.format("%064d", i));
+                    pstmt.setString(2, "Item " + i);
+                    pstmt.setString(3, "DIAMOND");
+                    pstmt.setString(4, "Benchmark item number " + i);
+                    pstmt.setString(5, "give %player% diamond " + (i % 64 + 1));
+                    pstmt.setLong(6, System.currentTimeMillis());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "INSERT INTO co_item_grant (template_id, player_id, enable, used) VALUES (?, ?, 1, 1)")) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 1; i <= rows; i++) {
+                    pstmt.setInt(1, random.nextInt(TEMPLATES) + 1);
+                    pstmt.setInt(2, random.nextInt(PLAYERS) + 1);
+                    pstmt.addBatch();
+                    if (i % 10000 == 0) {
+                        pstmt.executeBatch();
+                        connection.commit();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+            stmt.execute("CREATE INDEX idx_co_item_grant_player_enable ON co_item_grant (player_id, enable)");
+            stmt.execute("CREATE INDEX idx_co_item_grant_template ON co_item_grant (template_id)");
+            stmt.execute("ANALYZE");
+        }
+        System.out.println("Generated in " + (System.currentTimeMillis() - start) / 1000 + "s");
+    }
+
+    private static void runLegacy(String url, int rows, int seconds, int readers, int writers) throws Exception {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA journal_mode = DELETE");
+            }
+            Object lock = new Object();
+            run(rows, seconds, readers, writers,
+                    playerId -> {
+                        synchronized (lock) {
+                            readPage(connection, playerId);
+                        }
+                    },
+                    id -> {
+                        synchronized (lock) {
+                            claim(connection, id);
+                        }
+                    });
+        }
+    }
+
+    private static void runTuned(String url, int rows, int seconds, int readers, int writers) throws Exception {
+        Logger logger = Logger.getLogger("benchmark");
+        SqliteWriter writer = new SqliteWriter(url, WRITER_PRAGMAS, 64, logger);
+        writer.start();
+        ConnectionPool pool = new ConnectionPool(url, null, null, 1, readers, 5000, 600000, 0, 2, logger);
+        pool.setConnectionInitSql(READER_PRAGMAS);
+        pool.start();
+        try {
+            run(rows, seconds, readers, writers,
+                    playerId -> {
+                        try (Connection connection = pool.borrow()) {
+                            readPage(connection, playerId);
+                        }
+                    },
+                    id -> writer.submit(connection -> {
+                        claim(connection, id);
+                        return null;
+                    }, true));
+            System.out.println("  writer commits: " + writer.getCommits() + " for " + writer.getWrites() + " writes");
+        } finally {
+            pool.close();
+            writer.close();
+        }
+    }
+
+    private static void readPage(Connection connection, int playerId) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(PAGE_SQL)) {
+            pstmt.setInt(1, playerId);
+            pstmt.setInt(2, 0);
+            pstmt.setInt(3, PAGE_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rs.getString("item_name");
+                }
+            }
+        }
+    }
+
+    private static void claim(Connection connection, int id) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(CLAIM_SQL)) {
+            pstmt.setInt(1, id);
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static void run(int rows, int seconds, int readers, int writers, Reader reader, Writer writer) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        reader.page(ThreadLocalRandom.current().nextInt(PLAYERS) + 1);
+                        reads.incrementAndGet();
+                    } catch (SQLException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < writers; i++) {
+            threads.add(new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        writer.claim(ThreadLocalRandom.current().nextInt(rows) + 1);
+                        writes.incrementAndGet();
+                    } catch (SQLException e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("  reads/s: %.0f, writes/s: %.0f, errors: %d%n",
+                reads.get() / (double) seconds, writes.get() / (double) seconds, errors.get());
+    }
+}
@@ -14,7 +14,15 @@ import org.bukkit.plugin.PluginManager;
 import org.cakedek.myitemlibrary.api.Api;
 import org.cakedek.myitemlibrary.commands.CommandDetails;
 import org.cakedek.myitemlibrary.commands.CommandHandler;
+import org.cakedek.myitemlibrary.database.ClaimQueue;
 import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.DatabaseExecutor;
+import org.cakedek.myitemlibrary.database.GrantJobManager;
+import org.cakedek.myitemlibrary.database.EmbeddedItemStore;
+import org.cakedek.myitemlibrary.database.InMemoryItemStore;
+import org.cakedek.myitemlibrary.database.IdempotencyKeys;
+import org.cakedek.myitemlibrary.database.ItemArchiver;
+import org.cakedek.myitemlibrary.database.ItemStore;
 import org.cakedek.myitemlibrary.gui.GUIOpen;
 import org.cakedek.myitemlibrary.gui.GUISettings;
 import org.cakedek.myitemlibrary.config.PlayerConfig;
@@ -27,7 +35,12 @@ import java.util.*;
 public final class MyItemLibrary extends JavaPlugin implements Listener {
     // Fields
     private PlayerConfig playerConfigHandler;
-    private CoDatabase database;
+    private ItemStore database;
+    private DatabaseExecutor databaseExecutor;
+    private GrantJobManager grantJobManager;
+    private ClaimQueue claimQueue;
+    private ItemArchiver itemArchiver;
+    private IdempotencyKeys idempotencyKeys;
     private CommandHandler commandHandler;
     private GUIOpen guiOpen;
     private GUISettings guiSettings;
@@ -42,6 +55,7 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
     private int maxRequestsPerMinute;
     private long requestTimeWindowMs;
     private int maxRequestSizeBytes;
+    private int maxBatchItems;
 
     private boolean disablePluginPrefixCommands;
 
@@ -59,25 +73,28 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
         disablePluginPrefixCommands = getConfig().getBoolean("disable-plugin-prefix-commands", false);
 
         this.pluginVersion = getDescription().getVersion();
-        this.api = new Api(this);
 
+        if (database == null || !database.isConnectionValid()) {
+            getLogger().severe("Failed to setup database. Disabling plugin.");
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
 
+        this.api = new Api(this);
         if (getConfig().getBoolean("c-api.c-api-enable", false)) {
             api.startServer();
         }
-
-        if (!setupDatabase()) {
-            getLogger().severe("Failed to setup database. Disabling plugin.");
-            getServer().getPluginManager().disablePlugin(this);
-        }
     }
 
     @Override
     public void onDisable() {
+        if (databaseExecutor != null) {
+            databaseExecutor.shutdown();
+        }
+        stopServices();
         if (database != null) {
             database.close();
         }
-        api.stopServer();
     }
 
     // Initialization methods
@@ -87,23 +104,107 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
         languageFiles = new HashMap<>();
         playerSearchMode = new HashMap<>();
         playerConfigHandler = new PlayerConfig(this);
+        databaseExecutor = new DatabaseExecutor(this, getConfig().getInt("c-database-async-threads", 2));
 
         loadLanguageFiles();
 
         if (!setupDatabase()) {
             getLogger().severe(getTranslation("messages.reload_fail"));
+        } else if (!database.migrateSchema()) {
+            // ห้ามเริ่มงานเบื้องหลังหรือ API บน schema ที่ migrate ไม่ครบ ปิด connection ให้ onEnable ปิดปลั๊กอิน
+            getLogger().severe("Database schema migration failed, the plugin will be disabled.");
+            database.close();
         } else {
-            database.createTableIfNotExists();
+            startServices();
         }
 
         commandHandler = new CommandHandler(this);
         guiOpen = new GUIOpen(this);
         guiSettings = new GUISettings(this);
+    }
+
+    // งานเบื้องหลังทั้งหมดที่ผูกกับ store ตัวปัจจุบัน
+    private void startServices() {
+        grantJobManager = new GrantJobManager(this, database, getConfig().getInt("c-api.c-api-job-threads", 2));
+        grantJobManager.resumeUnfinishedJobs();
+        if (getConfig().getBoolean("c-claim-write-behind.enabled", false)) {
+            claimQueue = new ClaimQueue(database, getLogger(),
+                    getConfig().getLong("c-claim-write-behind.flush-interval-ms", 500),
+                    getConfig().getInt("c-claim-write-behind.batch-size", 200),
+                    getConfig().getInt("c-claim-write-behind.max-queue-size", 5000));
+        }
+        if (getConfig().getBoolean("c-item-archive.enabled", false)) {
+            itemArchiver = new ItemArchiver(database, getLogger(),
+                    getConfig().getLong("c-item-archive.interval-minutes", 10) * 60_000L,
+                    getConfig().getLong("c-item-archive.min-age-days", 30) * 86_400_000L,
+                    getConfig().getInt("c-item-archive.batch-size", 500),
+                    getConfig().getLong("c-item-archive.batch-pause-ms", 200),
+                    getConfig().getInt("c-item-archive.max-batches-per-run", 100));
+        }
+        if (getConfig().getBoolean("c-api-idempotency.enabled", true)) {
+            idempotencyKeys = new IdempotencyKeys(database, getLogger(),
+                    getConfig().getLong("c-api-idempotency.ttl-hours", 24) * 3_600_000L,
+                    getConfig().getInt("c-api-idempotency.cache-size", 10000),
+                    getConfig().getLong("c-api-idempotency.purge-interval-minutes", 10) * 60_000L);
+        }
+    }
+
+    private void stopServices() {
+        if (api != null) {
+            api.stopServer();
+            api = null;
+        }
+        if (grantJobManager != null) {
+            grantJobManager.shutdown();
+            grantJobManager = null;
+        }
+        if (claimQueue != null) {
+            claimQueue.shutdown();
+            claimQueue = null;
+        }
+        if (itemArchiver != null) {
+            itemArchiver.shutdown();
+            itemArchiver = null;
+        }
+        if (idempotencyKeys != null) {
+            idempotencyKeys.shutdown();
+            idempotencyKeys = null;
+        }
+    }
+
+    /**
+     * Replaces the item store with the one the current config describes. The API and every
+     * background service hold the store they were built with, so they are stopped first, the
+     * old store is closed, and all of them are rebuilt on the new one.
+     *
+     * @return {@code false} if the new store could not be opened; the API then stays down
+     */
+    public boolean reloadDatabase() {
+        // รอให้งาน GUI ที่ค้างใช้ store เก่าจบก่อนปิด
+        databaseExecutor.shutdown();
+        stopServices();
+        if (database != null) {
+            database.close();
+            database = null;
+        }
+        databaseExecutor = new DatabaseExecutor(this, getConfig().getInt("c-database-async-threads", 2));
+
+        if (!setupDatabase() || !database.migrateSchema()) {
+            if (database != null) {
+                database.close();
+                database = null;
+            }
+            return false;
+        }
+        startServices();
         api = new Api(this);
+        api.startServer();
+        return true;
     }
 
     private void setupCommands() {
         getCommand("my-library-reload").setExecutor(commandHandler);
+        getCommand("my-library-transfer").setExecutor(commandHandler);
         getCommand("my-library").setExecutor(guiOpen);
     }
 
@@ -130,9 +231,14 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
                 return false;
             }
 
-            database = new CoDatabase(host, port, username, password, databaseName);
+            database = new CoDatabase(this);
         } else if ("Local".equalsIgnoreCase(databaseMode)) {
             database = new CoDatabase(this);
+        } else if ("Embedded".equalsIgnoreCase(databaseMode)) {
+            database = new EmbeddedItemStore(this);
+        } else if ("Memory".equalsIgnoreCase(databaseMode)) {
+            getLogger().warning("Memory database mode keeps items in memory only, they are lost on restart.");
+            database = new InMemoryItemStore();
         } else {
             getLogger().severe("Invalid database mode specified in config: " + databaseMode);
             return false;
@@ -274,6 +380,7 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
         maxRequestsPerMinute = config.getInt("c-api-dos-protection.max-requests-per-minute", 100);
         requestTimeWindowMs = config.getLong("c-api-dos-protection.request-time-window-ms", 60000);
         maxRequestSizeBytes = config.getInt("c-api-dos-protection.max-request-size-bytes", 1048576);
+        maxBatchItems = config.getInt("c-api-dos-protection.max-batch-items", 500);
 
         if (maxRequestsPerMinute <= 0) {
             getLogger().warning("Invalid max-requests-per-minute value. Setting to default (100).");
@@ -287,13 +394,40 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
             getLogger().warning("Invalid max-request-size-bytes value. Setting to default (1048576).");
             maxRequestSizeBytes = 1048576;
         }
+        if (maxBatchItems <= 0) {
+            getLogger().warning("Invalid max-batch-items value. Setting to default (500).");
+            maxBatchItems = 500;
+        }
     }
 
     // Getters
-    public CoDatabase getDatabase() {
+    public ItemStore getDatabase() {
         return database;
     }
 
+    public DatabaseExecutor getDatabaseExecutor() {
+        return databaseExecutor;
+    }
+
+    public GrantJobManager getGrantJobManager() {
+        return grantJobManager;
+    }
+
+    public ClaimQueue getClaimQueue() {
+        return claimQueue;
+    }
+
+    public ItemArchiver getItemArchiver() {
+        return itemArchiver;
+    }
+
+    /**
+     * @return the Idempotency-Key store, or {@code null} if it is turned off
+     */
+    public IdempotencyKeys getIdempotencyKeys() {
+        return idempotencyKeys;
+    }
+
     public Map<ItemStack, CommandDetails> getCommandMap() {
         return commandMap;
     }
@@ -326,6 +460,11 @@ public final class MyItemLibrary extends JavaPlugin implements Listener {
         return maxRequestSizeBytes;
     }
 
+    public int getMaxBatchItems() {
+        // ไม่ให้เกินที่ store รับได้ใน batch เดียว ไม่งั้นคำขอที่ถูกต้องจะได้ 500
+        return database == null ? maxBatchItems : Math.min(maxBatchItems, database.getMaxBatchSize());
+    }
+
     public String getPluginVersion() {
         return pluginVersion;
     }
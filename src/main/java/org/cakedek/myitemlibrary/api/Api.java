@@ -5,50 +5,100 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import org.bukkit.configuration.file.FileConfiguration;
 import com.google.gson.*;
+import org.cakedek.myitemlibrary.database.ChangeVersions;
 import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.IdempotencyKeys;
+import org.cakedek.myitemlibrary.database.IdempotencyRecord;
+import org.cakedek.myitemlibrary.database.ItemStore;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 import org.cakedek.myitemlibrary.api.handlers.*;
 import org.cakedek.myitemlibrary.util.RateLimiter;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Api {
     private final MyItemLibrary plugin;
     private HttpServer server;
+    private ApiExecutor executor;
     private final Gson gson;
     private String apiKey;
     private final RateLimiter rateLimiter;
     private final boolean dosProtectionEnabled;
     private final int maxRequestSizeBytes;
+    private final ResponseCompression compression;
+    private final ChangeVersions changeVersions;
+    private final boolean etagsEnabled;
+    private final AtomicLong notModifiedResponses = new AtomicLong();
+
+    // คำตอบที่ sendResponse ส่งไป เก็บไว้ให้คำขอที่ใช้ Idempotency-Key
+    // ใช้ ThreadLocal แทน attribute ของ exchange เพราะ JDK รุ่นเก่าเก็บ attribute รวมกันทั้ง context
+    private final ThreadLocal<CapturedResponse> capturedResponse = new ThreadLocal<>();
+
+    private static final class CapturedResponse {
+        private final HttpExchange exchange;
+        private int status;
+        private String contentType;
+        private String body;
+
+        private CapturedResponse(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+    }
 
     private final PlayerItemsHandlers playerItemsHandlers;
     private final AddItemHandlers addItemHandlers;
+    private final AddItemsHandlers addItemsHandlers;
     private final AddItemAllHandlers addItemAllHandlers;
     private final AddItemOnlineHandlers addItemOnlineHandlers;
     private final GetShowAllItemsHandlers getShowAllItemsHandlers;
     private final ItemOperationsHandlers itemOperationsHandlers;
+    private final GrantJobHandlers grantJobHandlers;
+    private final SearchItemsHandlers searchItemsHandlers;
+    private final MetricsHandlers metricsHandlers;
+    private final TemplateHandlers templateHandlers;
+    private final ArchiveHandlers archiveHandlers;
+    private final TransferHandlers transferHandlers;
 
     public Api(MyItemLibrary plugin) {
         this.plugin = plugin;
-        CoDatabase database = plugin.getDatabase();
+        ItemStore database = plugin.getDatabase();
         this.gson = new GsonBuilder().disableHtmlEscaping().create();
 
         this.dosProtectionEnabled = plugin.isDosProtectionEnabled();
         this.maxRequestSizeBytes = plugin.getMaxRequestSizeBytes();
         this.rateLimiter = new RateLimiter(plugin.getMaxRequestsPerMinute(), plugin.getRequestTimeWindowMs());
+        FileConfiguration config = plugin.getConfig();
+        this.compression = new ResponseCompression(config.getBoolean("c-api.c-api-compression", true),
+                config.getInt("c-api.c-api-compression-min-bytes", 1024),
+                config.getInt("c-api.c-api-compression-level", 6));
+        this.changeVersions = database.getChangeVersions();
+        this.etagsEnabled = resolveEtags(config.getString("c-api.c-api-etags", "auto"), database);
 
         // Initialize all handlers
         this.playerItemsHandlers = new PlayerItemsHandlers(plugin, database, this, gson);
         this.addItemHandlers = new AddItemHandlers(plugin, database, this);
-        this.addItemAllHandlers = new AddItemAllHandlers(plugin, database, this);
-        this.addItemOnlineHandlers = new AddItemOnlineHandlers(plugin, database, this);
+        this.addItemsHandlers = new AddItemsHandlers(plugin, database, this, gson);
+        this.addItemAllHandlers = new AddItemAllHandlers(plugin, this);
+        this.addItemOnlineHandlers = new AddItemOnlineHandlers(plugin, this);
         this.getShowAllItemsHandlers = new GetShowAllItemsHandlers(plugin, database, this, gson);
         this.itemOperationsHandlers = new ItemOperationsHandlers(plugin, database, this, gson);
+        this.grantJobHandlers = new GrantJobHandlers(plugin, this);
+        this.searchItemsHandlers = new SearchItemsHandlers(plugin, database, this, gson);
+        this.metricsHandlers = new MetricsHandlers(plugin, this);
+        this.templateHandlers = new TemplateHandlers(plugin, database, this, gson);
+        this.archiveHandlers = new ArchiveHandlers(plugin, database, this, gson);
+        this.transferHandlers = new TransferHandlers(plugin, database, this, gson);
     }
 
     public void startServer() {
@@ -65,23 +115,48 @@ public class Api {
             server = HttpServer.create(new InetSocketAddress(host, port), 0);
 
             createProtectedContext("/items/", playerItemsHandlers.new PlayerItemsHandler());
-            createProtectedContext("/add-item", addItemHandlers.new AddItemHandler());
-            createProtectedContext("/add-item-all", addItemAllHandlers.new AddItemAllHandler());
-            createProtectedContext("/add-item-online", addItemOnlineHandlers.new AddItemOnlineHandler());
+            createProtectedContext("/add-item", idempotent(addItemHandlers.new AddItemHandler()));
+            createProtectedContext("/add-items", idempotent(addItemsHandlers.new AddItemsHandler()));
+            createProtectedContext("/add-item-all", idempotent(addItemAllHandlers.new AddItemAllHandler()));
+            createProtectedContext("/add-item-online", idempotent(addItemOnlineHandlers.new AddItemOnlineHandler()));
             createProtectedContext("/items", getShowAllItemsHandlers.new GetShowAllItemsHandler());
             createProtectedContext("/item/", itemOperationsHandlers.new ItemOperationsHandler());
+            createProtectedContext("/jobs/", grantJobHandlers.new GrantJobHandler());
+            createProtectedContext("/search/", searchItemsHandlers.new SearchItemsHandler());
+            createProtectedContext("/metrics", metricsHandlers.new MetricsHandler());
+            createProtectedContext("/templates/", templateHandlers.new TemplateHandler());
+            createProtectedContext("/archive/", archiveHandlers.new ArchiveHandler());
+            createProtectedContext("/export", transferHandlers.new ExportHandler());
+            // ไฟล์นำเข้าใหญ่กว่าคำขอทั่วไปมาก ใช้ขีดจำกัดแยก
+            createProtectedContext("/import", transferHandlers.new ImportHandler(),
+                    config.getLong("c-item-transfer.max-import-bytes", 104857600L));
 
-            server.setExecutor(null);
+            // ไม่ให้ทุกคำขอรอคิวบน dispatcher thread เดียว
+            executor = new ApiExecutor(config.getString("c-api.c-api-executor", "pool"),
+                    config.getInt("c-api.c-api-threads", 16),
+                    config.getInt("c-api.c-api-queue-size", 200),
+                    plugin.getLogger());
+            server.setExecutor(executor);
             server.start();
-            plugin.getLogger().info("API server started on " + host + ":" + port);
+            plugin.getLogger().info("API server started on " + host + ":" + port + " (" + executor.getMode() + " executor)");
         } catch (IOException e) {
             plugin.getLogger().severe("Failed to start API server: " + e.getMessage());
         }
     }
 
     private void createProtectedContext(String path, HttpHandler handler) {
+        createProtectedContext(path, handler, maxRequestSizeBytes);
+    }
+
+    private void createProtectedContext(String path, HttpHandler handler, long maxBodyBytes) {
         server.createContext(path, exchange -> {
             try {
+                if (ApiExecutor.isRejected()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendResponse(exchange, 503, "Service Unavailable");
+                    return;
+                }
+
                 if (dosProtectionEnabled) {
                     String remoteAddress = exchange.getRemoteAddress().getAddress().getHostAddress();
                     if (!rateLimiter.allowRequest(remoteAddress)) {
@@ -90,8 +165,13 @@ public class Api {
                     }
 
                     if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
-                        int contentLength = Integer.parseInt(exchange.getRequestHeaders().getFirst("Content-length"));
-                        if (contentLength > maxRequestSizeBytes) {
+                        String contentLengthHeader = exchange.getRequestHeaders().getFirst("Content-length");
+                        if (contentLengthHeader == null) {
+                            sendResponse(exchange, 411, "Length Required");
+                            return;
+                        }
+                        long contentLength = Long.parseLong(contentLengthHeader);
+                        if (contentLength > maxBodyBytes) {
                             sendResponse(exchange, 413, "Request Entity Too Large");
                             return;
                         }
@@ -120,11 +200,162 @@ public class Api {
 
 
 
+    /**
+     * Lets clients retry a POST safely by sending an {@code Idempotency-Key} header: the first
+     * request with a key runs, later ones with the same key and body get its response back with
+     * {@code Idempotent-Replayed: true}. Only responses sent with {@link #sendResponse} are kept,
+     * and 5xx responses free the key instead, so a retry after a server error runs again.
+     * Keyed bodies are buffered, so they are capped at the max request size even with DoS
+     * protection turned off.
+     */
+    private HttpHandler idempotent(HttpHandler handler) {
+        return exchange -> {
+            String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            IdempotencyKeys keys = plugin.getIdempotencyKeys();
+            if (key == null || keys == null || !"POST".equals(exchange.getRequestMethod())) {
+                handler.handle(exchange);
+                return;
+            }
+            key = key.trim();
+            if (key.isEmpty() || key.length() > IdempotencyKeys.MAX_KEY_LENGTH) {
+                sendResponse(exchange, 400, "Bad Request: Idempotency-Key must be 1 to " + IdempotencyKeys.MAX_KEY_LENGTH + " characters");
+                return;
+            }
+
+            // ต้องอ่าน body มาทั้งก้อนเพื่อ hash จึงจำกัดขนาดเองแม้ปิด DoS protection อยู่
+            byte[] body = exchange.getRequestBody().readNBytes(Math.min(maxRequestSizeBytes, Integer.MAX_VALUE - 9) + 1);
+            if (body.length > maxRequestSizeBytes) {
+                sendResponse(exchange, 413, "Request Entity Too Large");
+                return;
+            }
+            String requestHash = IdempotencyKeys.requestHash(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), body);
+            IdempotencyKeys.Claim claim;
+            try {
+                claim = keys.take(key, requestHash);
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error reading idempotency key: " + e.getMessage());
+                sendResponse(exchange, 500, "Internal Server Error");
+                return;
+            }
+
+            IdempotencyRecord record = claim.getRecord();
+            if (!claim.isOwner()) {
+                if (!record.getRequestHash().equals(requestHash)) {
+                    sendResponse(exchange, 422, "Unprocessable Entity: Idempotency-Key was already used for a different request");
+                } else if (record.isPending()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendResponse(exchange, 409, "Conflict: a request with this Idempotency-Key is still in progress");
+                } else {
+                    exchange.getResponseHeaders().set("Idempotent-Replayed", "true");
+                    if (record.getContentType() != null) {
+                        exchange.getResponseHeaders().set("Content-Type", record.getContentType());
+                    }
+                    sendResponse(exchange, record.getStatus(), record.getBody());
+                }
+                return;
+            }
+
+            // handler อ่าน body ซ้ำจากสำเนาที่อ่านไว้แล้ว
+            exchange.setStreams(new ByteArrayInputStream(body), null);
+            CapturedResponse captured = new CapturedResponse(exchange);
+            capturedResponse.set(captured);
+            try {
+                handler.handle(exchange);
+            } finally {
+                capturedResponse.remove();
+                try {
+                    if (captured.status > 0 && captured.status < 500) {
+                        keys.complete(record.complete(captured.status, captured.contentType, captured.body));
+                    } else {
+                        keys.release(record);
+                    }
+                } catch (SQLException e) {
+                    // คีย์ค้างเป็น pending จนหมดอายุ คำขอซ้ำจะได้ 409 แทนที่จะแจกซ้ำ
+                    plugin.getLogger().severe("Error saving idempotency key " + key + ": " + e.getMessage());
+                }
+            }
+        };
+    }
+
     public void stopServer() {
         if (server != null) {
             server.stop(0);
+            server = null;
             plugin.getLogger().info("API server stopped");
         }
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public ResponseCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the request executor, or {@code null} while the server isn't running
+     */
+    public ApiExecutor getExecutor() {
+        return executor;
+    }
+
+    public long getNotModifiedResponses() {
+        return notModifiedResponses.get();
+    }
+
+    /**
+     * Tags the response with a weak ETag for {@code version}, taken from the store's
+     * {@link ChangeVersions} before reading, and answers 304 if the request's
+     * {@code If-None-Match} already holds it.
+     *
+     * @return {@code true} if 304 was sent and the handler has nothing left to do
+     */
+    public boolean checkNotModified(HttpExchange exchange, long version) throws IOException {
+        if (!etagsEnabled) {
+            return false;
+        }
+        // epoch แยกรอบการรันของเซิร์ฟ เพราะ version เริ่มนับใหม่ทุกครั้งที่รีสตาร์ท
+        String etag = "W/\"" + Long.toString(changeVersions.getEpoch(), 36) + "-" + version + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            // If-None-Match เทียบแบบ weak ไม่สนใจ W/
+            if (tag.equals("*") || stripWeak(tag).equals(stripWeak(etag))) {
+                notModifiedResponses.incrementAndGet();
+                if (compression.isEnabled()) {
+                    // 304 ต้องมี Vary ตรงกับ 200 ของ URL เดียวกัน
+                    exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+                }
+                exchange.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The version only counts writes made through this process, so it cannot vouch for
+     * rows another server wrote to a shared MySQL database, or for a replica that has
+     * not caught up yet. {@code auto} therefore enables ETags everywhere but MySQL.
+     */
+    private boolean resolveEtags(String setting, ItemStore database) {
+        CoDatabase sql = database instanceof CoDatabase ? (CoDatabase) database : null;
+        boolean enabled = "auto".equalsIgnoreCase(setting) ? sql == null || !sql.isMySql() : Boolean.parseBoolean(setting);
+        if (enabled && sql != null && sql.getReplicaRouter() != null) {
+            // body อาจอ่านมาจาก replica ที่ยังตามไม่ทัน แต่ได้ tag ของ version ใหม่ไป
+            plugin.getLogger().warning("c-api-etags is ignored while read replicas are enabled");
+            return false;
+        }
+        return enabled;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
     }
 
     public boolean validateApiKey(HttpExchange exchange) {
@@ -137,12 +368,65 @@ public class Api {
         return gson.fromJson(reader, JsonObject.class);
     }
 
+    public Map<String, String> parseQueryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator >= 0 ? pair.substring(0, separator) : pair;
+            String value = separator >= 0 ? pair.substring(separator + 1) : "";
+            parameters.putIfAbsent(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
     public void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        CapturedResponse captured = capturedResponse.get();
+        if (captured != null && captured.exchange == exchange) {
+            captured.status = statusCode;
+            captured.contentType = exchange.getResponseHeaders().getFirst("Content-Type");
+            captured.body = response;
+        }
         byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
+        String encoding = negotiateEncoding(exchange);
+        if (encoding != null) {
+            byte[] compressed = compression.compress(responseBytes, encoding);
+            if (compressed != null) {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                responseBytes = compressed;
+            }
+        }
         exchange.sendResponseHeaders(statusCode, responseBytes.length);
         try (OutputStream os = exchange.getResponseBody()) {
             os.write(responseBytes);
         }
     }
 
+    /**
+     * Sends the headers for a body of unknown length (chunked transfer encoding) and returns the
+     * stream to write it to, compressed if the client accepts it. Closing the stream ends the response.
+     */
+    public OutputStream sendStreamingResponse(HttpExchange exchange, int statusCode) throws IOException {
+        String encoding = negotiateEncoding(exchange);
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        // ความยาว 0 = chunked ไม่ต้องรู้ขนาดทั้งหมดก่อน
+        exchange.sendResponseHeaders(statusCode, 0);
+        OutputStream body = exchange.getResponseBody();
+        return encoding == null ? body : compression.wrap(body, encoding);
+    }
+
+    private String negotiateEncoding(HttpExchange exchange) {
+        if (!compression.isEnabled()) {
+            return null;
+        }
+        // cache/proxy ต้องแยกเก็บตาม Accept-Encoding
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return compression.negotiate(exchange);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package org.cakedek.myitemlibrary.api;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs API requests off the {@code HttpServer} dispatcher thread, on either a bounded
+ * thread pool or one virtual thread per request (Java 21+).
+ *
+ * <p>When the pool and its queue are full, the request runs on the dispatcher thread
+ * flagged as rejected; {@link #isRejected()} tells the handler to answer 503 straight away
+ * instead of doing the work. The JDK server would otherwise just drop the connection.
+ */
+public class ApiExecutor implements Executor {
+    private static final ThreadLocal<Boolean> REJECTED = new ThreadLocal<>();
+
+    public enum Mode { POOL, VIRTUAL }
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor pool;
+    private final int queueSize;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param mode      {@code pool} or {@code virtual}; virtual falls back to the pool before Java 21
+     * @param threads   pool size, ignored for virtual threads
+     * @param queueSize requests waiting for a pool thread before new ones are rejected
+     */
+    public ApiExecutor(String mode, int threads, int queueSize, Logger logger) {
+        this.queueSize = Math.max(0, queueSize);
+        ExecutorService virtual = "virtual".equalsIgnoreCase(mode) ? newVirtualThreadExecutor(logger) : null;
+        if (virtual != null) {
+            this.mode = Mode.VIRTUAL;
+            this.executor = virtual;
+            this.pool = null;
+            return;
+        }
+        if (!"pool".equalsIgnoreCase(mode) && !"virtual".equalsIgnoreCase(mode)) {
+            logger.warning("Invalid c-api.c-api-executor value " + mode + ", using pool");
+        }
+
+        int size = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        // SynchronousQueue ไม่รับงานรอเลย ใช้เมื่อ queue-size เป็น 0
+        this.pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                this.queueSize > 0 ? new ArrayBlockingQueue<>(this.queueSize) : new SynchronousQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "MyItemLibrary-API-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, executor) -> {
+                    rejected.incrementAndGet();
+                    REJECTED.set(Boolean.TRUE);
+                    try {
+                        task.run();
+                    } finally {
+                        REJECTED.remove();
+                    }
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.mode = Mode.POOL;
+        this.executor = pool;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(Logger logger) {
+        try {
+            // ปลั๊กอิน build ด้วย Java 16 จึงเรียกผ่าน reflection
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warning("Virtual threads need Java 21 or newer (running " + System.getProperty("java.version")
+                    + "), using a thread pool for the API instead");
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(() -> {
+            active.incrementAndGet();
+            try {
+                command.run();
+            } finally {
+                active.decrementAndGet();
+                completed.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} while handling a request that the pool had no room for
+     */
+    public static boolean isRejected() {
+        return REJECTED.get() != null;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stats
+    public String getMode() { return mode.name().toLowerCase(Locale.ROOT); }
+    public int getActive() { return active.get(); }
+    public int getQueued() { return pool == null ? 0 : pool.getQueue().size(); }
+    public long getCompleted() { return completed.get(); }
+    public long getRejected() { return rejected.get(); }
+    public int getMaxThreads() { return pool == null ? -1 : pool.getMaximumPoolSize(); }
+    public int getQueueCapacity() { return pool == null ? -1 : queueSize; }
+}
@@ -0,0 +1,240 @@
+package org.cakedek.myitemlibrary.api;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Picks gzip or deflate from the request's {@code Accept-Encoding} and compresses API responses.
+ * Fixed-size bodies smaller than {@code minSizeBytes} are sent as they are; streamed bodies are
+ * always compressed because their size isn't known up front.
+ *
+ * <p>Only time spent inside {@link Deflater#deflate} counts as compression time, so a slow
+ * client reading a streamed response doesn't show up as compression cost.
+ */
+public class ResponseCompression {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final boolean enabled;
+    private final int minSizeBytes;
+    private final int level;
+
+    private final AtomicLong gzipResponses = new AtomicLong();
+    private final AtomicLong deflateResponses = new AtomicLong();
+    private final AtomicLong skippedSmall = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+
+    /**
+     * @param level 1 (fastest) to 9 (smallest)
+     */
+    public ResponseCompression(boolean enabled, int minSizeBytes, int level) {
+        this.enabled = enabled;
+        this.minSizeBytes = Math.max(0, minSizeBytes);
+        this.level = Math.max(Deflater.BEST_SPEED, Math.min(level, Deflater.BEST_COMPRESSION));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return {@link #GZIP}, {@link #DEFLATE}, or {@code null} to send the response uncompressed
+     */
+    public String negotiate(HttpExchange exchange) {
+        if (!enabled) {
+            return null;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (header == null || header.isEmpty()) {
+            return null;
+        }
+        // NaN = ไม่ได้ระบุ ใช้ค่าของ * แทน
+        double gzip = Double.NaN;
+        double deflate = Double.NaN;
+        double any = 0;
+        for (String part : header.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < tokens.length; i++) {
+                String parameter = tokens[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        gzip = Double.isNaN(gzip) ? any : gzip;
+        deflate = Double.isNaN(deflate) ? any : deflate;
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * @return the compressed body, or {@code null} if it is too small to be worth compressing
+     */
+    public byte[] compress(byte[] body, String encoding) throws IOException {
+        if (body.length < minSizeBytes) {
+            skippedSmall.incrementAndGet();
+            return null;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (OutputStream out = wrap(compressed, encoding)) {
+            out.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Compresses everything written to the returned stream into {@code out}. {@code flush()}
+     * pushes what has been written so far through to the client; {@code close()} ends the body.
+     */
+    public OutputStream wrap(OutputStream out, String encoding) throws IOException {
+        return new CompressingOutputStream(out, GZIP.equals(encoding));
+    }
+
+    private final class CompressingOutputStream extends FilterOutputStream {
+        private final boolean gzip;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[8192];
+        private long inputBytes;
+        private long outputBytes;
+        private boolean closed;
+
+        CompressingOutputStream(OutputStream out, boolean gzip) throws IOException {
+            super(out);
+            this.gzip = gzip;
+            // gzip = deflate ดิบ + header/trailer ของ gzip เอง, deflate ใน HTTP คือรูปแบบ zlib
+            this.deflater = new Deflater(level, gzip);
+            if (gzip) {
+                writeOut(GZIP_HEADER, GZIP_HEADER.length);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (gzip) {
+                crc.update(b, off, len);
+            }
+            inputBytes += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!closed) {
+                // buffer เต็ม = deflater อาจยังมีข้อมูลค้างอยู่
+                int length;
+                do {
+                    length = deflate(Deflater.SYNC_FLUSH);
+                } while (length == buffer.length);
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate(Deflater.NO_FLUSH);
+                }
+                if (gzip) {
+                    byte[] trailer = new byte[8];
+                    writeIntLE(trailer, 0, (int) crc.getValue());
+                    writeIntLE(trailer, 4, (int) inputBytes);
+                    writeOut(trailer, trailer.length);
+                }
+                (gzip ? gzipResponses : deflateResponses).incrementAndGet();
+                uncompressedBytes.addAndGet(inputBytes);
+                compressedBytes.addAndGet(outputBytes);
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private int deflate(int flush) throws IOException {
+            long start = System.nanoTime();
+            int length = deflater.deflate(buffer, 0, buffer.length, flush);
+            compressNanos.addAndGet(System.nanoTime() - start);
+            if (length > 0) {
+                writeOut(buffer, length);
+            }
+            return length;
+        }
+
+        private void writeOut(byte[] bytes, int length) throws IOException {
+            out.write(bytes, 0, length);
+            outputBytes += length;
+        }
+
+        private void writeIntLE(byte[] bytes, int offset, int value) {
+            bytes[offset] = (byte) value;
+            bytes[offset + 1] = (byte) (value >> 8);
+            bytes[offset + 2] = (byte) (value >> 16);
+            bytes[offset + 3] = (byte) (value >> 24);
+        }
+    }
+
+    // Stats
+    public int getMinSizeBytes() { return minSizeBytes; }
+    public int getLevel() { return level; }
+    public long getGzipResponses() { return gzipResponses.get(); }
+    public long getDeflateResponses() { return deflateResponses.get(); }
+    public long getSkippedSmall() { return skippedSmall.get(); }
+    public long getUncompressedBytes() { return uncompressedBytes.get(); }
+    public long getCompressedBytes() { return compressedBytes.get(); }
+    public double getCompressMs() { return compressNanos.get() / 1e6; }
+
+    /**
+     * @return compressed size over uncompressed size, 0 before anything was compressed
+     */
+    public double getRatio() {
+        long uncompressed = uncompressedBytes.get();
+        return uncompressed == 0 ? 0 : (double) compressedBytes.get() / uncompressed;
+    }
+}
@@ -4,22 +4,20 @@ import com.google.gson.JsonObject;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.cakedek.myitemlibrary.api.Api;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.GrantJob;
+import org.cakedek.myitemlibrary.database.GrantJobManager;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
 import java.io.IOException;
-import java.util.List;
 
 import static org.cakedek.myitemlibrary.util.Input.sanitizeInput;
 
 public class AddItemAllHandlers {
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
     private final Api api;
 
-    public AddItemAllHandlers(MyItemLibrary plugin, CoDatabase database, Api api) {
+    public AddItemAllHandlers(MyItemLibrary plugin, Api api) {
         this.plugin = plugin;
-        this.database = database;
         this.api = api;
     }
 
@@ -52,14 +50,14 @@ public class AddItemAllHandlers {
                     throw new IllegalArgumentException("Item name or display name is too long (max 255 characters)");
                 }
 
-                List<String> allPlayers = database.getAllPlayersEverJoined();
-                int addedCount = 0;
-                for (String playerName : allPlayers) {
-                    database.addItem(itemName, itemDisplay, description, playerName, true, command, used);
-                    addedCount++;
+                GrantJobManager jobManager = plugin.getGrantJobManager();
+                if (jobManager == null) {
+                    api.sendResponse(exchange, 503, "Service Unavailable");
+                    return;
                 }
 
-                api.sendResponse(exchange, 200, "Item added for " + addedCount + " players");
+                GrantJob job = jobManager.submit(GrantJob.Type.ALL, itemName, itemDisplay, description, command, used, null);
+                api.sendResponse(exchange, 202, GrantJobHandlers.toJson(job).toString());
             } catch (IllegalArgumentException e) {
                 plugin.getLogger().warning("Invalid input in API request: " + e.getMessage());
                 api.sendResponse(exchange, 400, "Bad Request: " + e.getMessage());
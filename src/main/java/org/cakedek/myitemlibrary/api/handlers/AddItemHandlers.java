@@ -4,20 +4,21 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.google.gson.JsonObject;
 import org.cakedek.myitemlibrary.api.Api;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.ItemStore;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
 import java.io.IOException;
+import java.sql.SQLException;
 
 import static org.cakedek.myitemlibrary.util.Input.sanitizeInput;
 
 public class AddItemHandlers {
 
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
+    private final ItemStore database;
     private final Api api;
 
-    public AddItemHandlers(MyItemLibrary plugin, CoDatabase database, Api api) {
+    public AddItemHandlers(MyItemLibrary plugin, ItemStore database, Api api) {
         this.plugin = plugin;
         this.database = database;
         this.api = api;
@@ -52,6 +53,9 @@ public class AddItemHandlers {
 
                 database.addItem(itemName, itemDisplay, description, player, true, command, used);
                 api.sendResponse(exchange, 200, "Item added successfully");
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error adding item: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
             } catch (Exception e) {
                 plugin.getLogger().severe("Error processing API request: " + e.getMessage());
                 api.sendResponse(exchange, 400, "Bad Request: " + e.getMessage());
@@ -6,21 +6,22 @@ import com.sun.net.httpserver.HttpHandler;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.cakedek.myitemlibrary.api.Api;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.GrantJob;
+import org.cakedek.myitemlibrary.database.GrantJobManager;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.cakedek.myitemlibrary.util.Input.sanitizeInput;
 
 public class AddItemOnlineHandlers {
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
     private final Api api;
 
-    public AddItemOnlineHandlers(MyItemLibrary plugin, CoDatabase database, Api api) {
+    public AddItemOnlineHandlers(MyItemLibrary plugin, Api api) {
         this.plugin = plugin;
-        this.database = database;
         this.api = api;
     }
 
@@ -53,13 +54,19 @@ public class AddItemOnlineHandlers {
                     throw new IllegalArgumentException("Item name or display name is too long (max 255 characters)");
                 }
 
-                int addedCount = 0;
+                List<String> onlinePlayers = new ArrayList<>();
                 for (Player player : Bukkit.getOnlinePlayers()) {
-                    database.addItem(itemName, itemDisplay, description, player.getName(), true, command, used);
-                    addedCount++;
+                    onlinePlayers.add(player.getName());
                 }
 
-                api.sendResponse(exchange, 200, "Item added for " + addedCount + " online players");
+                GrantJobManager jobManager = plugin.getGrantJobManager();
+                if (jobManager == null) {
+                    api.sendResponse(exchange, 503, "Service Unavailable");
+                    return;
+                }
+
+                GrantJob job = jobManager.submit(GrantJob.Type.ONLINE, itemName, itemDisplay, description, command, used, onlinePlayers);
+                api.sendResponse(exchange, 202, GrantJobHandlers.toJson(job).toString());
             } catch (IllegalArgumentException e) {
                 plugin.getLogger().warning("Invalid input in API request: " + e.getMessage());
                 api.sendResponse(exchange, 400, "Bad Request: " + e.getMessage());
@@ -0,0 +1,112 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.ItemTransfer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AddItemsHandlers {
+    private final MyItemLibrary plugin;
+    private final ItemStore database;
+    private final Api api;
+    private final Gson gson;
+
+    public AddItemsHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
+        this.plugin = plugin;
+        this.database = database;
+        this.api = api;
+        this.gson = gson;
+    }
+
+    // POST /add-items  [{"item_name": ..., "item_display": ..., "description": ..., "player": ..., "command": ..., "used": 1}, ...]
+    // ตรวจทุกรายการก่อน ถ้ามีรายการไหนผิดจะไม่เพิ่มเลยสักรายการ
+    public class AddItemsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                api.sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            JsonArray entries;
+            try {
+                JsonElement body = gson.fromJson(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), JsonElement.class);
+                if (body == null || !body.isJsonArray()) {
+                    api.sendResponse(exchange, 400, "Bad Request: expected a JSON array of items");
+                    return;
+                }
+                entries = body.getAsJsonArray();
+            } catch (JsonParseException e) {
+                api.sendResponse(exchange, 400, "Bad Request: invalid JSON");
+                return;
+            }
+            if (entries.size() == 0) {
+                api.sendResponse(exchange, 400, "Bad Request: no items");
+                return;
+            }
+            if (entries.size() > plugin.getMaxBatchItems()) {
+                api.sendResponse(exchange, 413, "Too many items (max " + plugin.getMaxBatchItems() + ")");
+                return;
+            }
+
+            List<ItemData> items = new ArrayList<>(entries.size());
+            JsonArray errors = new JsonArray();
+            for (int i = 0; i < entries.size(); i++) {
+                JsonElement entry = entries.get(i);
+                try {
+                    if (!entry.isJsonObject()) {
+                        throw new IllegalArgumentException("expected a JSON object");
+                    }
+                    items.add(ItemTransfer.parseItem(entry.getAsJsonObject()));
+                } catch (IllegalArgumentException e) {
+                    JsonObject error = new JsonObject();
+                    error.addProperty("index", i);
+                    error.addProperty("error", e.getMessage());
+                    errors.add(error);
+                }
+            }
+
+            JsonObject response = new JsonObject();
+            if (errors.size() > 0) {
+                response.addProperty("added", 0);
+                response.add("results", errors);
+                api.sendResponse(exchange, 400, response.toString());
+                return;
+            }
+
+            try {
+                List<Integer> ids = database.addItemBatch(items);
+                JsonArray results = new JsonArray();
+                for (int i = 0; i < ids.size(); i++) {
+                    JsonObject result = new JsonObject();
+                    result.addProperty("index", i);
+                    result.addProperty("id", ids.get(i));
+                    results.add(result);
+                }
+                response.addProperty("added", ids.size());
+                response.add("results", results);
+                api.sendResponse(exchange, 200, response.toString());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error adding item batch: " + e.getMessage());
+                response.addProperty("added", 0);
+                response.addProperty("error", "Internal Server Error");
+                api.sendResponse(exchange, 500, response.toString());
+            }
+        }
+    }
+}
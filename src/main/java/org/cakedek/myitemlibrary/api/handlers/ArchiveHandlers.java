@@ -0,0 +1,92 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.ArchivedItem;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.cakedek.myitemlibrary.util.Input.isValidPlayerName;
+
+public class ArchiveHandlers {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+
+    private final MyItemLibrary plugin;
+    private final ItemStore database;
+    private final Api api;
+    private final Gson gson;
+
+    public ArchiveHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
+        this.plugin = plugin;
+        this.database = database;
+        this.api = api;
+        this.gson = gson;
+    }
+
+    // GET /archive/{player}?after={id}&limit={n}
+    public class ArchiveHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                api.sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String[] pathParts = path.split("/");
+            if (pathParts.length != 3) {
+                api.sendResponse(exchange, 400, "Bad Request");
+                return;
+            }
+
+            String playerName = URLDecoder.decode(pathParts[2], StandardCharsets.UTF_8);
+            if (!isValidPlayerName(playerName)) {
+                api.sendResponse(exchange, 400, "Invalid player name");
+                return;
+            }
+
+            Map<String, String> parameters = api.parseQueryParameters(exchange);
+            int limit;
+            int after;
+            try {
+                limit = Math.max(1, Math.min(Integer.parseInt(parameters.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT))), MAX_LIMIT));
+                after = Math.max(0, Integer.parseInt(parameters.getOrDefault("after", "0")));
+            } catch (NumberFormatException e) {
+                api.sendResponse(exchange, 400, "Invalid limit or after");
+                return;
+            }
+
+            try {
+                List<ArchivedItem> items = database.getArchivedItems(playerName, after, limit);
+                JsonObject response = new JsonObject();
+                response.add("items", gson.toJsonTree(items));
+                // หน้าถัดไปใช้ after = id สุดท้ายของหน้านี้
+                if (items.size() == limit) {
+                    response.addProperty("next_after", items.get(items.size() - 1).getId());
+                } else {
+                    response.add("next_after", null);
+                }
+                api.sendResponse(exchange, 200, response.toString());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error fetching archived items for player: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+}
@@ -4,21 +4,24 @@ import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.cakedek.myitemlibrary.api.Api;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.ItemStore;
 import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.database.ItemQuery;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class GetShowAllItemsHandlers {
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
+    private final ItemStore database;
     private final Api api;
     private final Gson gson;
 
-    public GetShowAllItemsHandlers(MyItemLibrary plugin, CoDatabase database, Api api, Gson gson) {
+    public GetShowAllItemsHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
         this.plugin = plugin;
         this.database = database;
         this.api = api;
@@ -38,10 +41,51 @@ public class GetShowAllItemsHandlers {
                 return;
             }
 
+            // ไม่มีอะไรเปลี่ยนตั้งแต่ client ดึงไปครั้งก่อน ตอบ 304 โดยไม่แตะฐานข้อมูล
+            if (api.checkNotModified(exchange, database.getChangeVersions().getVersion())) {
+                return;
+            }
+
+            Map<String, String> parameters = api.parseQueryParameters(exchange);
+            if (ItemListing.isRequested(parameters)) {
+                handlePage(exchange, parameters);
+                return;
+            }
+
+            JsonArrayStream stream = new JsonArrayStream(exchange, api, gson);
+            try {
+                database.streamItems(null, stream);
+                stream.finish();
+            } catch (IOException e) {
+                // client ปิดการเชื่อมต่อกลางทาง ส่งสถานะอื่นซ้ำไม่ได้แล้ว
+                if (!stream.isStarted()) {
+                    throw e;
+                }
+                plugin.getLogger().fine("Item listing stream ended early: " + e.getMessage());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error fetching items: " + e.getMessage());
+                // ส่ง 200 ไปแล้วก็ได้แค่ตัดจบ array ที่ไม่ปิด client จะ parse ไม่ผ่าน
+                if (!stream.isStarted()) {
+                    api.sendResponse(exchange, 500, "Internal Server Error");
+                }
+            }
+        }
+
+        // GET /items?limit=&cursor=&enabled=&name=&q=&fields=
+        private void handlePage(HttpExchange exchange, Map<String, String> parameters) throws IOException {
+            ItemQuery query;
+            Set<String> fields;
+            try {
+                query = ItemListing.parseQuery(null, parameters);
+                fields = ItemListing.parseFields(parameters);
+            } catch (IllegalArgumentException e) {
+                api.sendResponse(exchange, 400, e.getMessage());
+                return;
+            }
+
             try {
-                List<ItemData> items = database.getAllItems();
-                String response = gson.toJson(items);
-                api.sendResponse(exchange, 200, response);
+                List<ItemData> items = database.findItems(query);
+                api.sendResponse(exchange, 200, ItemListing.toResponse(gson, items, query, fields));
             } catch (SQLException e) {
                 plugin.getLogger().severe("Error fetching items: " + e.getMessage());
                 api.sendResponse(exchange, 500, "Internal Server Error");
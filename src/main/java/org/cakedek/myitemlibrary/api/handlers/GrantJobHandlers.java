@@ -0,0 +1,112 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.GrantJob;
+import org.cakedek.myitemlibrary.database.GrantJobManager;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+public class GrantJobHandlers {
+    private final MyItemLibrary plugin;
+    private final Api api;
+
+    public GrantJobHandlers(MyItemLibrary plugin, Api api) {
+        this.plugin = plugin;
+        this.api = api;
+    }
+
+    public static JsonObject toJson(GrantJob job) {
+        long end = job.getFinishedAt() > 0 ? job.getFinishedAt() : System.currentTimeMillis();
+        long elapsedMs = job.getStartedAt() > 0 ? Math.max(0, end - job.getStartedAt()) : 0;
+
+        JsonObject json = new JsonObject();
+        json.addProperty("job_id", job.getId());
+        json.addProperty("type", job.getType().name());
+        json.addProperty("status", job.getStatus().name());
+        json.addProperty("total", job.getTotal());
+        json.addProperty("processed", job.getProcessed());
+        json.addProperty("progress", job.getTotal() > 0 ? Math.min(100.0, job.getProcessed() * 100.0 / job.getTotal()) : 100.0);
+        json.addProperty("elapsed_ms", elapsedMs);
+        json.addProperty("throughput_per_sec", elapsedMs > 0 ? job.getProcessed() * 1000.0 / elapsedMs : 0.0);
+        json.addProperty("created_at", job.getCreatedAt());
+        json.addProperty("started_at", job.getStartedAt());
+        json.addProperty("finished_at", job.getFinishedAt());
+        if (job.getError() != null) {
+            json.addProperty("error", job.getError());
+        }
+        return json;
+    }
+
+    public class GrantJobHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String[] pathParts = path.split("/");
+            if (pathParts.length != 3 || pathParts[2].isEmpty()) {
+                api.sendResponse(exchange, 400, "Bad Request");
+                return;
+            }
+
+            GrantJobManager jobManager = plugin.getGrantJobManager();
+            if (jobManager == null) {
+                api.sendResponse(exchange, 503, "Service Unavailable");
+                return;
+            }
+
+            String jobId = pathParts[2];
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    handleGetJob(exchange, jobManager, jobId);
+                    break;
+                case "DELETE":
+                    handleCancelJob(exchange, jobManager, jobId);
+                    break;
+                default:
+                    api.sendResponse(exchange, 405, "Method Not Allowed");
+            }
+        }
+
+        private void handleGetJob(HttpExchange exchange, GrantJobManager jobManager, String jobId) throws IOException {
+            try {
+                GrantJob job = jobManager.getJob(jobId);
+                if (job != null) {
+                    api.sendResponse(exchange, 200, toJson(job).toString());
+                } else {
+                    api.sendResponse(exchange, 404, "Job not found");
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error fetching grant job: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+
+        private void handleCancelJob(HttpExchange exchange, GrantJobManager jobManager, String jobId) throws IOException {
+            if (jobManager.cancel(jobId)) {
+                api.sendResponse(exchange, 200, "Job cancellation requested");
+                return;
+            }
+
+            try {
+                GrantJob job = jobManager.getJob(jobId);
+                if (job == null) {
+                    api.sendResponse(exchange, 404, "Job not found");
+                } else {
+                    api.sendResponse(exchange, 409, "Job already " + job.getStatus().name().toLowerCase());
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error fetching grant job: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+}
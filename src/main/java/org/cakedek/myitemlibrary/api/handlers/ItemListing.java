@@ -0,0 +1,137 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.database.ItemQuery;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Paging shared by {@code GET /items} and {@code GET /items/{player}}: {@code limit},
+ * an opaque {@code cursor}, {@code enabled}, {@code name} (exact item name), {@code q}
+ * (name or description contains) and {@code fields} (comma separated projection).
+ * Responses are {@code {"items": [...], "next": cursor}}; {@code next} is null on the last page.
+ */
+final class ItemListing {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private static final Set<String> PARAMETERS = Set.of("limit", "cursor", "enabled", "name", "q", "fields");
+    // ชื่อฟิลด์ตามที่ Gson เขียน ItemData อยู่แล้ว
+    private static final Set<String> FIELDS = Set.of("id", "templateId", "itemName", "itemDisplay", "description",
+            "player", "enable", "command", "used");
+    private static final String CURSOR_PREFIX = "i:";
+
+    private ItemListing() {
+    }
+
+    /**
+     * @return {@code true} if the request asks for a page; without paging parameters the
+     * endpoints keep returning the whole list as a plain array
+     */
+    static boolean isRequested(Map<String, String> parameters) {
+        for (String parameter : parameters.keySet()) {
+            if (PARAMETERS.contains(parameter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    static ItemQuery parseQuery(String player, Map<String, String> parameters) {
+        int limit = DEFAULT_LIMIT;
+        if (parameters.containsKey("limit")) {
+            try {
+                limit = Math.max(1, Math.min(Integer.parseInt(parameters.get("limit")), MAX_LIMIT));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid limit");
+            }
+        }
+        String cursor = parameters.get("cursor");
+        int afterId = cursor == null || cursor.isEmpty() ? 0 : decodeCursor(cursor);
+
+        Boolean enabled = null;
+        String enabledValue = parameters.get("enabled");
+        if (enabledValue != null && !enabledValue.isEmpty()) {
+            if (enabledValue.equalsIgnoreCase("true") || enabledValue.equals("1")) {
+                enabled = true;
+            } else if (enabledValue.equalsIgnoreCase("false") || enabledValue.equals("0")) {
+                enabled = false;
+            } else {
+                throw new IllegalArgumentException("Invalid enabled");
+            }
+        }
+        return new ItemQuery(player, enabled, parameters.get("name"), parameters.get("q"), afterId, limit);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code fields} names an unknown field
+     */
+    static Set<String> parseFields(Map<String, String> parameters) {
+        String value = parameters.get("fields");
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        Set<String> fields = new LinkedHashSet<>(Arrays.asList(value.split(",")));
+        for (String field : fields) {
+            if (!FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+        return fields;
+    }
+
+    static String toResponse(Gson gson, List<ItemData> items, ItemQuery query, Set<String> fields) {
+        JsonArray array = new JsonArray();
+        for (ItemData item : items) {
+            JsonObject json = gson.toJsonTree(item).getAsJsonObject();
+            if (fields != null) {
+                JsonObject projected = new JsonObject();
+                for (String field : fields) {
+                    JsonElement value = json.get(field);
+                    if (value != null) {
+                        projected.add(field, value);
+                    }
+                }
+                json = projected;
+            }
+            array.add(json);
+        }
+        JsonObject response = new JsonObject();
+        response.add("items", array);
+        if (items.size() == query.getLimit()) {
+            response.addProperty("next", encodeCursor(items.get(items.size() - 1).getId()));
+        } else {
+            response.add("next", null);
+        }
+        return response.toString();
+    }
+
+    static String encodeCursor(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((CURSOR_PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(CURSOR_PREFIX)) {
+                throw new IllegalArgumentException();
+            }
+            return Math.max(0, Integer.parseInt(decoded.substring(CURSOR_PREFIX.length())));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -4,7 +4,7 @@ import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.cakedek.myitemlibrary.api.Api;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.ItemStore;
 import org.cakedek.myitemlibrary.database.ItemData;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
@@ -13,11 +13,11 @@ import java.sql.SQLException;
 
 public class ItemOperationsHandlers {
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
+    private final ItemStore database;
     private final Api api;
     private final Gson gson;
 
-    public ItemOperationsHandlers(MyItemLibrary plugin, CoDatabase database, Api api, Gson gson) {
+    public ItemOperationsHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
         this.plugin = plugin;
         this.database = database;
         this.api = api;
@@ -0,0 +1,64 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.database.ItemStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes items as a JSON array straight to the response body with chunked transfer encoding
+ * (compressed when the client accepts it), so a listing never needs the whole result in
+ * memory. The 200 headers go out with the first item; until then the handler can still
+ * answer with another status.
+ */
+final class JsonArrayStream implements ItemStore.ItemConsumer {
+    private final HttpExchange exchange;
+    private final Api api;
+    private final Gson gson;
+    private JsonWriter writer;
+
+    JsonArrayStream(HttpExchange exchange, Api api, Gson gson) {
+        this.exchange = exchange;
+        this.api = api;
+        this.gson = gson;
+    }
+
+    @Override
+    public void accept(ItemData item) throws IOException {
+        if (writer == null) {
+            start();
+        }
+        gson.toJson(item, ItemData.class, writer);
+    }
+
+    /**
+     * @return {@code true} once the response status has been sent
+     */
+    boolean isStarted() {
+        return writer != null;
+    }
+
+    /**
+     * Closes the array, sending an empty one if no item came.
+     */
+    void finish() throws IOException {
+        if (writer == null) {
+            start();
+        }
+        writer.endArray();
+        writer.close();
+    }
+
+    private void start() throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(api.sendStreamingResponse(exchange, 200), StandardCharsets.UTF_8)));
+        writer.beginArray();
+    }
+}
@@ -0,0 +1,193 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.api.ApiExecutor;
+import org.cakedek.myitemlibrary.api.ResponseCompression;
+import org.cakedek.myitemlibrary.database.ClaimQueue;
+import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.ConnectionPool;
+import org.cakedek.myitemlibrary.database.IdempotencyKeys;
+import org.cakedek.myitemlibrary.database.ItemArchiver;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.LibraryCache;
+import org.cakedek.myitemlibrary.database.ReplicaRouter;
+import org.cakedek.myitemlibrary.database.SqliteWriter;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.io.IOException;
+
+public class MetricsHandlers {
+    private final MyItemLibrary plugin;
+    private final Api api;
+
+    public MetricsHandlers(MyItemLibrary plugin, Api api) {
+        this.plugin = plugin;
+        this.api = api;
+    }
+
+    public class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                api.sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            JsonObject json = new JsonObject();
+            ItemStore store = plugin.getDatabase();
+            if (store != null) {
+                LibraryCache cache = store.getLibraryCache();
+                if (cache != null) {
+                    json.add("library_cache", toJson(cache));
+                }
+            }
+            if (store instanceof CoDatabase) {
+                CoDatabase database = (CoDatabase) store;
+                ConnectionPool pool = database.getPool();
+                if (pool != null) {
+                    JsonObject poolJson = new JsonObject();
+                    poolJson.addProperty("active", pool.getActiveCount());
+                    poolJson.addProperty("idle", pool.getIdleCount());
+                    poolJson.addProperty("max", pool.getMaxSize());
+                    json.add("connection_pool", poolJson);
+                }
+                SqliteWriter writer = database.getSqliteWriter();
+                if (writer != null) {
+                    JsonObject writerJson = new JsonObject();
+                    writerJson.addProperty("queue_depth", writer.getQueueDepth());
+                    writerJson.addProperty("writes", writer.getWrites());
+                    writerJson.addProperty("commits", writer.getCommits());
+                    json.add("sqlite_writer", writerJson);
+                }
+                ReplicaRouter router = database.getReplicaRouter();
+                if (router != null) {
+                    json.add("read_routing", toJson(router));
+                }
+                json.addProperty("search_backend", database.getSearchBackend().name());
+            }
+            ClaimQueue claimQueue = plugin.getClaimQueue();
+            if (claimQueue != null) {
+                json.add("claim_queue", toJson(claimQueue));
+            }
+            ItemArchiver archiver = plugin.getItemArchiver();
+            if (archiver != null) {
+                JsonObject archiverJson = new JsonObject();
+                archiverJson.addProperty("runs", archiver.getRuns());
+                archiverJson.addProperty("archived_items", archiver.getArchivedItems());
+                archiverJson.addProperty("failed_runs", archiver.getFailedRuns());
+                archiverJson.addProperty("last_run_at", archiver.getLastRunAt());
+                archiverJson.addProperty("last_run_ms", archiver.getLastRunMs());
+                archiverJson.addProperty("last_run_archived", archiver.getLastRunArchived());
+                json.add("item_archiver", archiverJson);
+            }
+            IdempotencyKeys idempotencyKeys = plugin.getIdempotencyKeys();
+            if (idempotencyKeys != null) {
+                JsonObject idempotencyJson = new JsonObject();
+                idempotencyJson.addProperty("ttl_ms", idempotencyKeys.getTtlMs());
+                idempotencyJson.addProperty("cache_size", idempotencyKeys.getCacheSize());
+                idempotencyJson.addProperty("cached", idempotencyKeys.getCachedEntries());
+                idempotencyJson.addProperty("taken", idempotencyKeys.getTaken());
+                idempotencyJson.addProperty("replayed", idempotencyKeys.getReplayed());
+                idempotencyJson.addProperty("cache_hits", idempotencyKeys.getCacheHits());
+                idempotencyJson.addProperty("in_progress", idempotencyKeys.getInProgress());
+                idempotencyJson.addProperty("mismatched", idempotencyKeys.getMismatched());
+                idempotencyJson.addProperty("released", idempotencyKeys.getReleased());
+                idempotencyJson.addProperty("purged", idempotencyKeys.getPurged());
+                json.add("idempotency", idempotencyJson);
+            }
+            ApiExecutor executor = api.getExecutor();
+            if (executor != null) {
+                JsonObject executorJson = new JsonObject();
+                executorJson.addProperty("mode", executor.getMode());
+                executorJson.addProperty("active", executor.getActive());
+                executorJson.addProperty("queued", executor.getQueued());
+                executorJson.addProperty("rejected", executor.getRejected());
+                executorJson.addProperty("completed", executor.getCompleted());
+                executorJson.addProperty("max_threads", executor.getMaxThreads());
+                executorJson.addProperty("queue_capacity", executor.getQueueCapacity());
+                json.add("api_executor", executorJson);
+            }
+            JsonObject etagJson = new JsonObject();
+            etagJson.addProperty("version", store.getChangeVersions().getVersion());
+            etagJson.addProperty("not_modified", api.getNotModifiedResponses());
+            json.add("etags", etagJson);
+            ResponseCompression compression = api.getCompression();
+            if (compression.isEnabled()) {
+                JsonObject compressionJson = new JsonObject();
+                compressionJson.addProperty("level", compression.getLevel());
+                compressionJson.addProperty("min_size_bytes", compression.getMinSizeBytes());
+                compressionJson.addProperty("gzip_responses", compression.getGzipResponses());
+                compressionJson.addProperty("deflate_responses", compression.getDeflateResponses());
+                compressionJson.addProperty("skipped_small", compression.getSkippedSmall());
+                compressionJson.addProperty("uncompressed_bytes", compression.getUncompressedBytes());
+                compressionJson.addProperty("compressed_bytes", compression.getCompressedBytes());
+                compressionJson.addProperty("ratio", compression.getRatio());
+                compressionJson.addProperty("compress_ms", compression.getCompressMs());
+                json.add("api_compression", compressionJson);
+            }
+            api.sendResponse(exchange, 200, json.toString());
+        }
+
+        private JsonObject toJson(ClaimQueue claimQueue) {
+            JsonObject json = new JsonObject();
+            json.addProperty("depth", claimQueue.getQueueDepth());
+            json.addProperty("max_depth", claimQueue.getMaxQueueSize());
+            json.addProperty("oldest_age_ms", claimQueue.getOldestQueuedAgeMs());
+            json.addProperty("flushes", claimQueue.getFlushes());
+            json.addProperty("flushed_claims", claimQueue.getFlushedClaims());
+            json.addProperty("failed_flushes", claimQueue.getFailedFlushes());
+            json.addProperty("conflicts", claimQueue.getConflicts());
+            json.addProperty("backpressure_fallbacks", claimQueue.getBackpressureFallbacks());
+            json.addProperty("last_flush_ms", claimQueue.getLastFlushMs());
+            json.addProperty("avg_flush_ms", claimQueue.getAverageFlushMs());
+            json.addProperty("max_flush_ms", claimQueue.getMaxFlushMs());
+            return json;
+        }
+
+        private JsonObject toJson(ReplicaRouter router) {
+            JsonObject json = new JsonObject();
+            json.addProperty("pinned_reads", router.getPinnedReads());
+            json.addProperty("fallbacks", router.getFallbacks());
+            JsonObject routes = new JsonObject();
+            routes.add(router.getPrimary().getName(), toJson(router.getPrimary()));
+            for (ReplicaRouter.Route replica : router.getReplicas()) {
+                routes.add(replica.getName(), toJson(replica));
+            }
+            json.add("routes", routes);
+            return json;
+        }
+
+        private JsonObject toJson(ReplicaRouter.Route route) {
+            JsonObject json = new JsonObject();
+            json.addProperty("up", route.isUp());
+            json.addProperty("reads", route.getReads());
+            json.addProperty("errors", route.getErrors());
+            json.addProperty("avg_ms", route.getAverageMs());
+            json.addProperty("max_ms", route.getMaxMs());
+            return json;
+        }
+
+        private JsonObject toJson(LibraryCache cache) {
+            long hits = cache.getHits();
+            long misses = cache.getMisses();
+            JsonObject json = new JsonObject();
+            json.addProperty("hits", hits);
+            json.addProperty("misses", misses);
+            json.addProperty("hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+            json.addProperty("evictions", cache.getEvictions());
+            json.addProperty("loads", cache.getLoads());
+            json.addProperty("players", cache.getPlayerCount());
+            json.addProperty("items", cache.getItemCount());
+            json.addProperty("max_items", cache.getMaxItems());
+            return json;
+        }
+    }
+}
@@ -4,8 +4,9 @@ import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import org.cakedek.myitemlibrary.api.Api;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.ItemStore;
 import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.database.ItemQuery;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
 import java.io.IOException;
@@ -13,16 +14,18 @@ import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.cakedek.myitemlibrary.util.Input.isValidPlayerName;
 
 public class PlayerItemsHandlers {
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
+    private final ItemStore database;
     private final Api api;
     private final Gson gson;
 
-    public PlayerItemsHandlers(MyItemLibrary plugin, CoDatabase database, Api api, Gson gson) {
+    public PlayerItemsHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
         this.plugin = plugin;
         this.database = database;
         this.api = api;
@@ -56,14 +59,53 @@ public class PlayerItemsHandlers {
                 return;
             }
 
+            if (api.checkNotModified(exchange, database.getChangeVersions().getVersion(playerName))) {
+                return;
+            }
+
+            Map<String, String> parameters = api.parseQueryParameters(exchange);
+            if (ItemListing.isRequested(parameters)) {
+                handlePage(exchange, playerName, parameters);
+                return;
+            }
+
+            JsonArrayStream stream = new JsonArrayStream(exchange, api, gson);
             try {
-                List<ItemData> items = database.getItemsByPlayer(playerName);
-                if (items.isEmpty()) {
-                    api.sendResponse(exchange, 404, "No items found for player: " + playerName);
+                database.streamItems(playerName, stream);
+                if (stream.isStarted()) {
+                    stream.finish();
                 } else {
-                    String response = gson.toJson(items);
-                    api.sendResponse(exchange, 200, response);
+                    api.sendResponse(exchange, 404, "No items found for player: " + playerName);
+                }
+            } catch (IOException e) {
+                // client ปิดการเชื่อมต่อกลางทาง ส่งสถานะอื่นซ้ำไม่ได้แล้ว
+                if (!stream.isStarted()) {
+                    throw e;
+                }
+                plugin.getLogger().fine("Item listing stream ended early: " + e.getMessage());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error fetching items for player: " + e.getMessage());
+                if (!stream.isStarted()) {
+                    api.sendResponse(exchange, 500, "Internal Server Error");
                 }
+            }
+        }
+
+        // GET /items/{player}?limit=&cursor=&enabled=&name=&q=&fields=
+        private void handlePage(HttpExchange exchange, String playerName, Map<String, String> parameters) throws IOException {
+            ItemQuery query;
+            Set<String> fields;
+            try {
+                query = ItemListing.parseQuery(playerName, parameters);
+                fields = ItemListing.parseFields(parameters);
+            } catch (IllegalArgumentException e) {
+                api.sendResponse(exchange, 400, e.getMessage());
+                return;
+            }
+
+            try {
+                List<ItemData> items = database.findItems(query);
+                api.sendResponse(exchange, 200, ItemListing.toResponse(gson, items, query, fields));
             } catch (SQLException e) {
                 plugin.getLogger().severe("Error fetching items for player: " + e.getMessage());
                 api.sendResponse(exchange, 500, "Internal Server Error");
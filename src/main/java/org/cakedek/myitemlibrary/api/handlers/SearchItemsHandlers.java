@@ -0,0 +1,88 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+import static org.cakedek.myitemlibrary.util.Input.isValidPlayerName;
+
+public class SearchItemsHandlers {
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 200;
+
+    private final MyItemLibrary plugin;
+    private final ItemStore database;
+    private final Api api;
+    private final Gson gson;
+
+    public SearchItemsHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
+        this.plugin = plugin;
+        this.database = database;
+        this.api = api;
+        this.gson = gson;
+    }
+
+    public class SearchItemsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                api.sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String[] pathParts = path.split("/");
+            if (pathParts.length != 3) {
+                api.sendResponse(exchange, 400, "Bad Request");
+                return;
+            }
+
+            String playerName = URLDecoder.decode(pathParts[2], StandardCharsets.UTF_8);
+            if (!isValidPlayerName(playerName)) {
+                api.sendResponse(exchange, 400, "Invalid player name");
+                return;
+            }
+
+            Map<String, String> parameters = api.parseQueryParameters(exchange);
+            String query = parameters.getOrDefault("q", "").trim();
+            if (query.isEmpty() || query.length() > 255) {
+                api.sendResponse(exchange, 400, "Query parameter 'q' must be 1-255 characters");
+                return;
+            }
+
+            int limit;
+            int offset;
+            try {
+                limit = Math.max(1, Math.min(Integer.parseInt(parameters.getOrDefault("limit", String.valueOf(DEFAULT_LIMIT))), MAX_LIMIT));
+                offset = Math.max(0, Integer.parseInt(parameters.getOrDefault("offset", "0")));
+            } catch (NumberFormatException e) {
+                api.sendResponse(exchange, 400, "Invalid limit or offset");
+                return;
+            }
+
+            try {
+                List<ItemData> items = database.searchItems(playerName, query, offset, limit);
+                api.sendResponse(exchange, 200, gson.toJson(items));
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error searching items for player: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+}
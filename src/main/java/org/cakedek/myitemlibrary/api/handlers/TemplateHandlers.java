@@ -0,0 +1,155 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.ItemTemplate;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import static org.cakedek.myitemlibrary.util.Input.sanitizeInput;
+
+public class TemplateHandlers {
+    private final MyItemLibrary plugin;
+    private final ItemStore database;
+    private final Api api;
+    private final Gson gson;
+
+    public TemplateHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
+        this.plugin = plugin;
+        this.database = database;
+        this.api = api;
+        this.gson = gson;
+    }
+
+    public class TemplateHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            // /templates/{id} หรือ /templates/{id}/grant-all
+            String path = exchange.getRequestURI().getPath();
+            String[] pathParts = path.split("/");
+            if (pathParts.length < 3 || pathParts.length > 4 || (pathParts.length == 4 && !"grant-all".equals(pathParts[3]))) {
+                api.sendResponse(exchange, 400, "Bad Request");
+                return;
+            }
+
+            int templateId;
+            try {
+                templateId = Integer.parseInt(pathParts[2]);
+                if (templateId <= 0) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                api.sendResponse(exchange, 400, "Invalid Template ID: must be a positive integer");
+                return;
+            }
+
+            String method = exchange.getRequestMethod();
+            if (pathParts.length == 4) {
+                if ("POST".equals(method)) {
+                    handleGrantAll(exchange, templateId);
+                } else {
+                    api.sendResponse(exchange, 405, "Method Not Allowed");
+                }
+                return;
+            }
+
+            switch (method) {
+                case "GET":
+                    handleGetTemplate(exchange, templateId);
+                    break;
+                case "PUT":
+                    handleUpdateTemplate(exchange, templateId);
+                    break;
+                default:
+                    api.sendResponse(exchange, 405, "Method Not Allowed");
+            }
+        }
+
+        private void handleGetTemplate(HttpExchange exchange, int templateId) throws IOException {
+            try {
+                ItemTemplate template = database.getTemplate(templateId);
+                if (template != null) {
+                    api.sendResponse(exchange, 200, gson.toJson(template));
+                } else {
+                    api.sendResponse(exchange, 404, "Template not found");
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error fetching template: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+
+        private void handleUpdateTemplate(HttpExchange exchange, int templateId) throws IOException {
+            ItemTemplate template;
+            try {
+                JsonObject jsonObject = api.parseRequestBody(exchange.getRequestBody());
+                template = new ItemTemplate(
+                        templateId,
+                        sanitizeInput(jsonObject.get("item_name").getAsString()),
+                        sanitizeInput(jsonObject.get("item_display").getAsString()),
+                        sanitizeInput(jsonObject.get("description").getAsString()),
+                        sanitizeInput(jsonObject.get("command").getAsString())
+                );
+                if (template.getItemName().isEmpty() || template.getItemDisplay().isEmpty() || template.getCommand().isEmpty()) {
+                    throw new IllegalArgumentException("item_name, item_display and command must be non-empty");
+                }
+                if (template.getItemName().length() > 255 || template.getItemDisplay().length() > 255) {
+                    throw new IllegalArgumentException("Item name or display name is too long (max 255 characters)");
+                }
+            } catch (Exception e) {
+                plugin.getLogger().warning("Invalid input in API request: " + e.getMessage());
+                api.sendResponse(exchange, 400, "Bad Request: " + e.getMessage());
+                return;
+            }
+
+            try {
+                if (database.updateTemplate(template)) {
+                    api.sendResponse(exchange, 200, gson.toJson(template));
+                } else {
+                    api.sendResponse(exchange, 404, "Template not found");
+                }
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error updating template: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+
+        private void handleGrantAll(HttpExchange exchange, int templateId) throws IOException {
+            int used;
+            try {
+                JsonObject jsonObject = api.parseRequestBody(exchange.getRequestBody());
+                used = Math.max(0, jsonObject.get("used").getAsInt());
+            } catch (Exception e) {
+                plugin.getLogger().warning("Invalid input in API request: " + e.getMessage());
+                api.sendResponse(exchange, 400, "Bad Request: " + e.getMessage());
+                return;
+            }
+
+            try {
+                if (database.getTemplate(templateId) == null) {
+                    api.sendResponse(exchange, 404, "Template not found");
+                    return;
+                }
+                int granted = database.grantTemplateToAllPlayers(templateId, true, used);
+                JsonObject response = new JsonObject();
+                response.addProperty("template_id", templateId);
+                response.addProperty("granted", granted);
+                api.sendResponse(exchange, 200, response.toString());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error granting template: " + e.getMessage());
+                api.sendResponse(exchange, 500, "Internal Server Error");
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+import org.cakedek.myitemlibrary.api.Api;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.ItemTransfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransferHandlers {
+    private final MyItemLibrary plugin;
+    private final ItemTransfer transfer;
+    private final Api api;
+
+    public TransferHandlers(MyItemLibrary plugin, ItemStore database, Api api, Gson gson) {
+        this.plugin = plugin;
+        this.transfer = new ItemTransfer(database, gson, plugin.getConfig().getInt("c-item-transfer.batch-size", 500));
+        this.api = api;
+    }
+
+    private ItemTransfer.Format parseFormat(HttpExchange exchange) {
+        return ItemTransfer.Format.parse(api.parseQueryParameters(exchange).getOrDefault("format", "ndjson"));
+    }
+
+    // GET /export?format=ndjson|csv
+    public class ExportHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                api.sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            ItemTransfer.Format format = parseFormat(exchange);
+            if (format == null) {
+                api.sendResponse(exchange, 400, "Invalid format");
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", format.getContentType() + "; charset=utf-8");
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"items." + format.getExtension() + "\"");
+            // ส่งแบบ chunked ทีละชุดโดยไม่ต้องรู้ขนาดทั้งหมดก่อน
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(api.sendStreamingResponse(exchange, 200), StandardCharsets.UTF_8))) {
+                try {
+                    long written = transfer.exportItems(format, out, null);
+                    plugin.getLogger().info("Exported " + written + " items over the API as " + format);
+                } catch (SQLException e) {
+                    plugin.getLogger().severe("Error exporting items: " + e.getMessage());
+                    // ส่ง status 200 ไปแล้ว ปิดท้ายด้วยแถวที่ไม่ใช่ไอเทม ไฟล์ที่ไม่ครบจะนำเข้าไม่ผ่าน
+                    if (format == ItemTransfer.Format.NDJSON) {
+                        out.write("{\"error\":\"Export aborted\"}\n");
+                    } else {
+                        out.write("\"error: export aborted\"\r\n");
+                    }
+                }
+            }
+        }
+    }
+
+    // POST /import?format=ndjson|csv
+    public class ImportHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                api.sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+
+            if (api.validateApiKey(exchange)) {
+                api.sendResponse(exchange, 401, "Unauthorized");
+                return;
+            }
+
+            ItemTransfer.Format format = parseFormat(exchange);
+            if (format == null) {
+                api.sendResponse(exchange, 400, "Invalid format");
+                return;
+            }
+
+            AtomicLong imported = new AtomicLong();
+            JsonObject response = new JsonObject();
+            try {
+                transfer.importItems(format, new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), imported::set);
+                response.addProperty("imported", imported.get());
+                api.sendResponse(exchange, 200, response.toString());
+            } catch (IllegalArgumentException e) {
+                // ชุดก่อนหน้าบรรทัดที่ผิดถูก commit ไปแล้ว บอกจำนวนกลับไปด้วย
+                response.addProperty("imported", imported.get());
+                response.addProperty("error", e.getMessage());
+                api.sendResponse(exchange, 400, response.toString());
+            } catch (SQLException e) {
+                plugin.getLogger().severe("Error importing items: " + e.getMessage());
+                response.addProperty("imported", imported.get());
+                response.addProperty("error", "Internal Server Error");
+                api.sendResponse(exchange, 500, response.toString());
+            }
+        }
+    }
+}
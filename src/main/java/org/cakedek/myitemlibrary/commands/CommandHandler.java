@@ -1,34 +1,153 @@
 package org.cakedek.myitemlibrary.commands;
 
+import com.google.gson.GsonBuilder;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
-import org.cakedek.myitemlibrary.database.CoDatabase;
 import org.cakedek.myitemlibrary.MyItemLibrary;
+import org.cakedek.myitemlibrary.database.InMemoryItemStore;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.ItemTransfer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @SuppressWarnings("NullableProblems")
 public class CommandHandler implements CommandExecutor {
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
+    private final AtomicBoolean transferRunning = new AtomicBoolean();
 
     public CommandHandler(MyItemLibrary plugin) {
         this.plugin = plugin;
-        this.database = plugin.getDatabase();
     }
 
 
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (command.getName().equalsIgnoreCase("my-library-reload")) {
-            plugin.reloadConfig();
-            if (!plugin.setupDatabase()) {
-                sender.sendMessage("Database not configured properly.");
-            } else {
-                database.createTableIfNotExists();
-                sender.sendMessage("Plugin reloaded and database connected.");
+            // store ในหน่วยความจำเปิดใหม่ไม่ได้ รีโหลดแล้วไอเทมทั้งหมดจะหายไป
+            if (plugin.getDatabase() instanceof InMemoryItemStore) {
+                sender.sendMessage("Memory mode cannot be reloaded without losing every item. Restart the server instead.");
+                return true;
+            }
+            if (!transferRunning.compareAndSet(false, true)) {
+                sender.sendMessage("An import or export is still running, reload once it has finished.");
+                return true;
+            }
+            try {
+                plugin.reloadConfig();
+                if (!plugin.reloadDatabase()) {
+                    sender.sendMessage("Database not configured properly.");
+                } else {
+                    sender.sendMessage("Plugin reloaded and database connected.");
+                }
+            } finally {
+                transferRunning.set(false);
             }
             return true;
         }
+        if (command.getName().equalsIgnoreCase("my-library-transfer")) {
+            return onTransfer(sender, args);
+        }
         return false;
     }
+
+    // /my-library-transfer <export|import> <ndjson|csv> <file>
+    private boolean onTransfer(CommandSender sender, String[] args) {
+        if (args.length != 3) {
+            return false;
+        }
+        String action = args[0].toLowerCase(Locale.ROOT);
+        ItemTransfer.Format format = ItemTransfer.Format.parse(args[1]);
+        if (!action.equals("export") && !action.equals("import") || format == null) {
+            return false;
+        }
+        ItemStore database = plugin.getDatabase();
+        if (database == null) {
+            sender.sendMessage("Database not configured properly.");
+            return true;
+        }
+
+        // ไฟล์ต้องอยู่ในโฟลเดอร์ transfers ของปลั๊กอินเท่านั้น
+        Path directory = plugin.getDataFolder().toPath()
+                .resolve(plugin.getConfig().getString("c-item-transfer.directory", "transfers")).toAbsolutePath().normalize();
+        Path file = directory.resolve(args[2]).normalize();
+        if (!file.startsWith(directory) || file.equals(directory)) {
+            sender.sendMessage("File must be inside " + directory);
+            return true;
+        }
+        if (action.equals("import") && !Files.isRegularFile(file)) {
+            sender.sendMessage("File not found: " + file);
+            return true;
+        }
+        if (!transferRunning.compareAndSet(false, true)) {
+            sender.sendMessage("Another import or export is still running.");
+            return true;
+        }
+
+        ItemTransfer transfer = new ItemTransfer(database, new GsonBuilder().disableHtmlEscaping().create(),
+                plugin.getConfig().getInt("c-item-transfer.batch-size", 500));
+        sender.sendMessage("Started " + action + " of " + file.getFileName() + " as " + format + ".");
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.currentTimeMillis();
+            long[] lastReport = {start};
+            String verb = action.equals("export") ? "Exported" : "Imported";
+            ItemTransfer.Progress progress = items -> {
+                long now = System.currentTimeMillis();
+                if (now - lastReport[0] >= PROGRESS_INTERVAL_MS) {
+                    lastReport[0] = now;
+                    tell(sender, verb + " " + items + " items so far...");
+                }
+            };
+            try {
+                long items = action.equals("export") ? export(transfer, format, file, progress) : importFile(transfer, format, file, progress);
+                tell(sender, verb + " " + items + " items in " + (System.currentTimeMillis() - start) + "ms.");
+            } catch (IllegalArgumentException e) {
+                tell(sender, "Import stopped: " + e.getMessage());
+            } catch (SQLException | IOException e) {
+                plugin.getLogger().severe("Item " + action + " failed: " + e.getMessage());
+                tell(sender, "Item " + action + " failed: " + e.getMessage());
+            } finally {
+                transferRunning.set(false);
+            }
+        });
+        return true;
+    }
+
+    // เขียนลงไฟล์ชั่วคราวก่อน ไฟล์ปลายทางจะไม่มีวันครึ่ง ๆ กลาง ๆ
+    private long export(ItemTransfer transfer, ItemTransfer.Format format, Path file, ItemTransfer.Progress progress) throws SQLException, IOException {
+        Files.createDirectories(file.getParent());
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        long items;
+        try (Writer out = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            items = transfer.exportItems(format, out, progress);
+        } catch (SQLException | IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        return items;
+    }
+
+    private long importFile(ItemTransfer transfer, ItemTransfer.Format format, Path file, ItemTransfer.Progress progress) throws SQLException, IOException {
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return transfer.importItems(format, in, progress);
+        }
+    }
+
+    private void tell(CommandSender sender, String message) {
+        if (plugin.isEnabled()) {
+            plugin.getServer().getScheduler().runTask(plugin, () -> sender.sendMessage(message));
+        }
+    }
 }
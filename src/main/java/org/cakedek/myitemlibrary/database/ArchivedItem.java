@@ -0,0 +1,21 @@
+package org.cakedek.myitemlibrary.database;
+
+/**
+ * A claimed item moved out of the live grant table by {@link ItemArchiver}.
+ */
+public class ArchivedItem extends ItemData {
+    private long claimedAt;
+    private long archivedAt;
+
+    public ArchivedItem(int id, int templateId, String itemName, String itemDisplay, String description, String player,
+                        String command, int used, long claimedAt, long archivedAt) {
+        super(id, templateId, itemName, itemDisplay, description, player, false, command, used);
+        this.claimedAt = claimedAt;
+        this.archivedAt = archivedAt;
+    }
+
+    public long getClaimedAt() { return claimedAt; }
+    public void setClaimedAt(long claimedAt) { this.claimedAt = claimedAt; }
+    public long getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(long archivedAt) { this.archivedAt = archivedAt; }
+}
@@ -0,0 +1,75 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Change counters behind the API's ETags: one for the whole store and one per player, bumped
+ * after every write that changes what a listing would return. A player's version is the
+ * global version at their last change, so it only ever goes up.
+ *
+ * <p>Versions live in memory and start over on restart; {@link #getEpoch()} tells the two
+ * runs apart. Writes made by another server sharing the same MySQL database aren't seen.
+ */
+public class ChangeVersions {
+    private static final int MAX_PLAYERS = 10000;
+
+    private final long epoch = System.currentTimeMillis();
+    private final AtomicLong global = new AtomicLong();
+    // ชื่อผู้เล่น (ตัวพิมพ์เล็ก) -> version ล่าสุด
+    private final Map<String, Long> players = new ConcurrentHashMap<>();
+    // ผู้เล่นที่ไม่มีใน map ใช้ค่านี้ ต้องไม่น้อยกว่า version ที่เคยถูกลบออกไป
+    private volatile long floor;
+
+    /**
+     * Call after a write to {@code player}'s items has been committed.
+     */
+    public void playerChanged(String player) {
+        if (player == null) {
+            allChanged();
+            return;
+        }
+        long version = global.incrementAndGet();
+        if (players.size() >= MAX_PLAYERS) {
+            trim();
+        }
+        players.merge(player.toLowerCase(Locale.ROOT), version, Math::max);
+    }
+
+    /**
+     * Call after a write that may have touched any player, or whose owners aren't known.
+     */
+    public void allChanged() {
+        long version = global.incrementAndGet();
+        synchronized (this) {
+            floor = Math.max(floor, version);
+        }
+    }
+
+    private synchronized void trim() {
+        if (players.size() < MAX_PLAYERS) {
+            return;
+        }
+        // ลบทั้งหมดแล้วยก floor ขึ้นแทน ผู้เล่นที่ถูกลบได้ version ใหม่กว่าเดิมเสมอ
+        floor = Math.max(floor, global.get());
+        players.clear();
+    }
+
+    public long getVersion() {
+        return global.get();
+    }
+
+    public long getVersion(String player) {
+        Long version = player == null ? null : players.get(player.toLowerCase(Locale.ROOT));
+        return version == null ? floor : Math.max(version, floor);
+    }
+
+    /**
+     * @return when this set of versions started counting
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,211 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind queue for item claims. A claim on an item held in the library cache is
+ * applied to the cache at once and written to the database later, in batches, on a
+ * fixed interval or once {@code batchSize} claims are waiting. Items that are not
+ * cached, and every claim made while the queue is full, go straight to the database.
+ * <p>
+ * Claims are only checked against this server's memory before the reward is given,
+ * so this mode must not be used when several servers share one database.
+ */
+public class ClaimQueue {
+    private final ItemStore database;
+    private final Logger logger;
+    private final int batchSize;
+    private final int maxQueueSize;
+    private final ScheduledExecutorService flusher;
+
+    // item id -> เวลาที่เข้าคิว (เคลมซ้ำ id เดิมจะถูกรวมเป็นรายการเดียว)
+    private final LinkedHashMap<Integer, Long> queued = new LinkedHashMap<>();
+    // id ที่กำลังเคลมตรงกับฐานข้อมูล กันไม่ให้เคลมซ้อนกันระหว่างรอผล
+    private final Set<Integer> inFlight = new HashSet<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedClaims = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong backpressureFallbacks = new AtomicLong();
+    private final AtomicLong totalFlushMs = new AtomicLong();
+    private volatile long lastFlushMs;
+    private volatile long maxFlushMs;
+
+    public ClaimQueue(ItemStore database, Logger logger, long flushIntervalMs, int batchSize, int maxQueueSize) {
+        this.database = database;
+        this.logger = logger;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxQueueSize = Math.max(this.batchSize, maxQueueSize);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-ClaimFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(50, flushIntervalMs);
+        flusher.scheduleWithFixedDelay(this::flushSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Claims an item. Returns {@code true} if the caller may give the reward.
+     */
+    public boolean claim(int id) throws SQLException {
+        synchronized (this) {
+            if (queued.containsKey(id) || !inFlight.add(id)) {
+                return false;
+            }
+            if (queued.size() < maxQueueSize) {
+                if (database.claimCachedItem(id)) {
+                    inFlight.remove(id);
+                    queued.put(id, System.currentTimeMillis());
+                    if (queued.size() >= batchSize) {
+                        requestFlush();
+                    }
+                    return true;
+                }
+            } else {
+                backpressureFallbacks.incrementAndGet();
+                requestFlush();
+            }
+        }
+
+        // ไม่มีในแคชหรือคิวเต็ม เคลมตรงกับฐานข้อมูลแทน
+        try {
+            return database.claimItem(id);
+        } finally {
+            synchronized (this) {
+                inFlight.remove(id);
+            }
+        }
+    }
+
+    public synchronized boolean isPending(int id) {
+        return queued.containsKey(id) || inFlight.contains(id);
+    }
+
+    private void requestFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushSafely);
+            } catch (RuntimeException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    private void flushSafely() {
+        flushScheduled.set(false);
+        try {
+            while (flush() >= batchSize) {
+                // ยังมีค้างอยู่อีกเต็มชุด เขียนต่อเลยไม่ต้องรอรอบถัดไป
+            }
+        } catch (SQLException e) {
+            failedFlushes.incrementAndGet();
+            logger.log(Level.WARNING, "Failed to write queued item claims, will retry.", e);
+        }
+    }
+
+    /**
+     * Writes up to one batch of queued claims in a single transaction.
+     *
+     * @return number of claims written
+     */
+    public int flush() throws SQLException {
+        synchronized (flushLock) {
+            List<Integer> batch = new ArrayList<>();
+            synchronized (this) {
+                for (Integer id : queued.keySet()) {
+                    batch.add(id);
+                    if (batch.size() == batchSize) {
+                        break;
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+
+            long start = System.nanoTime();
+            List<Integer> notApplied = database.applyClaims(batch);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            synchronized (this) {
+                for (Integer id : batch) {
+                    queued.remove(id);
+                }
+            }
+            for (Integer id : notApplied) {
+                logger.warning("Queued claim for item " + id + " found the item already claimed or deleted.");
+            }
+
+            flushes.incrementAndGet();
+            flushedClaims.addAndGet(batch.size());
+            conflicts.addAndGet(notApplied.size());
+            totalFlushMs.addAndGet(elapsedMs);
+            lastFlushMs = elapsedMs;
+            if (elapsedMs > maxFlushMs) {
+                maxFlushMs = elapsedMs;
+            }
+            return batch.size();
+        }
+    }
+
+    /**
+     * Stops the timer and writes everything still queued.
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flusher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            while (flush() > 0) {
+                // เขียนให้หมดก่อนปิดฐานข้อมูล
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to write " + getQueueDepth() + " queued item claims on shutdown.", e);
+        }
+    }
+
+    // Stats
+    public synchronized int getQueueDepth() { return queued.size(); }
+    public synchronized long getOldestQueuedAgeMs() {
+        for (Map.Entry<Integer, Long> entry : queued.entrySet()) {
+            return System.currentTimeMillis() - entry.getValue();
+        }
+        return 0;
+    }
+    public int getMaxQueueSize() { return maxQueueSize; }
+    public long getFlushes() { return flushes.get(); }
+    public long getFlushedClaims() { return flushedClaims.get(); }
+    public long getConflicts() { return conflicts.get(); }
+    public long getFailedFlushes() { return failedFlushes.get(); }
+    public long getBackpressureFallbacks() { return backpressureFallbacks.get(); }
+    public long getLastFlushMs() { return lastFlushMs; }
+    public long getMaxFlushMs() { return maxFlushMs; }
+    public double getAverageFlushMs() {
+        long count = flushes.get();
+        return count > 0 ? (double) totalFlushMs.get() / count : 0.0;
+    }
+}
@@ -4,11 +4,33 @@ import org.cakedek.myitemlibrary.MyItemLibrary;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @SuppressWarnings("CallToPrintStackTrace")
-public class CoDatabase {
+public class CoDatabase implements ItemStore {
+    private static final int BULK_CHUNK_SIZE = 500;
+    // ไอเทมหนึ่งชิ้น = แถวใน co_item_grant ที่ชี้ไปยังนิยามใน co_item_template และผู้เล่นใน co_player
+    private static final String ITEM_COLUMNS = "g.id, g.template_id, t.item_name, t.item_display, t.description, p.name AS player, g.enable, t.command, g.used";
+    private static final String ITEM_SELECT = "SELECT " + ITEM_COLUMNS + " FROM co_item_grant g "
+            + "JOIN co_item_template t ON t.id = g.template_id LEFT JOIN co_player p ON p.id = g.player_id";
+    private static final String GRANT_INSERT = "INSERT INTO co_item_grant (template_id, player_id, enable, used) VALUES (?, ?, ?, ?)";
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
     private final MyItemLibrary plugin;
     private final String databaseMode;
     private final String host;
@@ -16,7 +38,30 @@ public class CoDatabase {
     private final String username;
     private final String password;
     private final String databaseName;
-    private Connection connection;
+    private ConnectionPool pool;
+    // โหมด Local: การเขียนทั้งหมดผ่าน thread เดียว ส่วน pool ใช้อ่านอย่างเดียว
+    private SqliteWriter writer;
+    // MySQL เท่านั้น: ส่งการอ่านหนัก ๆ ไปที่ replica
+    private volatile ReplicaRouter replicaRouter;
+    private final ItemSearchIndex searchIndex = new ItemSearchIndex();
+    private volatile SearchBackend searchBackend = SearchBackend.MEMORY;
+    private final LibraryCache libraryCache;
+    private final ChangeVersions changeVersions = new ChangeVersions();
+    private final PlayerIdCache playerIds = new PlayerIdCache();
+    // content hash -> template id ถูกล้างทุกครั้งที่มีการแก้ไข template
+    private final Map<String, Integer> templateIds = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_CACHED_TEMPLATES;
+        }
+    });
+
+    public enum SearchBackend { FTS5, FULLTEXT, MEMORY }
+
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
 
 
     // Constructor for MySQL mode (existing constructor)
@@ -28,6 +73,7 @@ public class CoDatabase {
         this.username = username;
         this.password = password;
         this.databaseName = databaseName;
+        this.libraryCache = new LibraryCache(100000, 5000, 300000);
     }
 
     public CoDatabase(MyItemLibrary plugin) {
@@ -38,83 +84,290 @@ public class CoDatabase {
         this.username = plugin.getConfig().getString("c-database.username", "");
         this.password = plugin.getConfig().getString("c-database.password", "");
         this.databaseName = plugin.getConfig().getString("c-database.database", "myitemlibrary");
+        this.libraryCache = plugin.getConfig().getBoolean("c-library-cache.enabled", true)
+                ? new LibraryCache(
+                        plugin.getConfig().getInt("c-library-cache.max-items", 100000),
+                        plugin.getConfig().getInt("c-library-cache.max-items-per-player", 5000),
+                        plugin.getConfig().getLong("c-library-cache.ttl-seconds", 300) * 1000L)
+                : null;
     }
 
     public boolean connect() {
         try {
+            String url;
+            int minSize = getPoolSetting("min-size", 2);
+            int maxSize = getPoolSetting("max-size", 10);
+            List<String> connectionInitSql = Collections.emptyList();
             if ("MySQL".equalsIgnoreCase(databaseMode)) {
-                String url = "jdbc:mysql://" + host + ":" + port + "/" + databaseName
-                        + "?useUnicode=true&characterEncoding=utf8&useSSL=false&autoReconnect=true";
-                connection = DriverManager.getConnection(url, username, password);
+                url = "jdbc:mysql://" + host + ":" + port + "/" + databaseName
+                        + "?useUnicode=true&characterEncoding=utf8&useSSL=false&rewriteBatchedStatements=true";
             } else if ("Local".equalsIgnoreCase(databaseMode)) {
                 if (plugin == null) {
                     throw new IllegalStateException("Plugin instance is required for Local database mode");
                 }
-                String url = "jdbc:sqlite:" + new File(plugin.getDataFolder(), "database.db").getAbsolutePath();
-                connection = DriverManager.getConnection(url);
+                url = "jdbc:sqlite:" + new File(plugin.getDataFolder(), "database.db").getAbsolutePath();
+                // SQLite เขียนได้ทีละ connection เดียว จึงให้ pool อ่านอย่างเดียว ส่วนการเขียนไปที่ SqliteWriter
+                minSize = 1;
+                maxSize = getSqliteSetting("read-pool-size", 4);
+                connectionInitSql = getSqlitePragmas(false);
             } else {
                 if (plugin != null) {
                     plugin.getLogger().severe("Invalid database mode specified in config: " + databaseMode);
                 }
                 return false;
             }
+
+            close();
+            if (!isMySql()) {
+                // writer ต้องเปิดก่อน เพราะเป็นตัวเปลี่ยนไฟล์ฐานข้อมูลเป็นโหมด WAL
+                writer = new SqliteWriter(url, getSqlitePragmas(true), getSqliteSetting("max-group-commit", 64), getLogger());
+                writer.start();
+            }
+            pool = new ConnectionPool(url, username, password, minSize, maxSize,
+                    getPoolSetting("connection-timeout-ms", 5000),
+                    getPoolSetting("idle-timeout-ms", 600000),
+                    getPoolSetting("leak-detection-threshold-ms", 10000),
+                    getPoolSetting("validation-timeout-seconds", 2),
+                    getLogger());
+            pool.setConnectionInitSql(connectionInitSql);
+            pool.start();
+            if (isMySql() && plugin != null && plugin.getConfig().getBoolean("c-database.replicas.enabled", false)) {
+                replicaRouter = createReplicaRouter();
+            }
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
+            close();
             return false;
         }
     }
 
-
-    public void close() {
-        if (connection != null) {
+    /**
+     * Opens one pool per {@code c-database.replicas.hosts} entry, with the primary's credentials and database.
+     * Pools start empty, so a replica that is down now only falls back until it comes up.
+     */
+    private ReplicaRouter createReplicaRouter() {
+        Map<String, ConnectionPool> replicas = new LinkedHashMap<>();
+        int connectTimeoutMs = plugin.getConfig().getInt("c-database.replicas.connection-timeout-ms", 1000);
+        for (String replica : plugin.getConfig().getStringList("c-database.replicas.hosts")) {
+            String address = replica.contains(":") ? replica : replica + ":" + port;
+            String url = "jdbc:mysql://" + address + "/" + databaseName
+                    + "?useUnicode=true&characterEncoding=utf8&useSSL=false&connectTimeout=" + connectTimeoutMs;
+            ConnectionPool replicaPool = new ConnectionPool(url, username, password, 0,
+                    plugin.getConfig().getInt("c-database.replicas.pool-max-size", 5),
+                    connectTimeoutMs,
+                    getPoolSetting("idle-timeout-ms", 600000),
+                    getPoolSetting("leak-detection-threshold-ms", 10000),
+                    getPoolSetting("validation-timeout-seconds", 2),
+                    getLogger());
+            replicaPool.setConnectionInitSql(Collections.singletonList("SET SESSION TRANSACTION READ ONLY"));
             try {
-                connection.close();
+                replicaPool.start();
             } catch (SQLException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    public Connection getConnection() {
-        return connection;
-    }
-
-    public void createTableIfNotExists() {
-        String createTableSQL;
-        if ("MySQL".equalsIgnoreCase(databaseMode)) {
-            createTableSQL = "CREATE TABLE IF NOT EXISTS co_list_item ("
-                    + "id INT AUTO_INCREMENT PRIMARY KEY, "
-                    + "item_name VARCHAR(255), "
-                    + "item_display VARCHAR(255), "
-                    + "description TEXT, "
-                    + "player VARCHAR(255), "
-                    + "enable BOOLEAN, "
-                    + "command TEXT, "
-                    + "used INT"
-                    + ")";
-        } else {
-            createTableSQL = "CREATE TABLE IF NOT EXISTS co_list_item ("
-                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
-                    + "item_name TEXT, "
-                    + "item_display TEXT, "
-                    + "description TEXT, "
-                    + "player TEXT, "
-                    + "enable INTEGER, "
-                    + "command TEXT, "
-                    + "used INTEGER"
-                    + ")";
-        }
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createTableSQL);
+                // min-size 0 ไม่ได้เปิด connection ตอนเริ่ม จึงไม่ควรเกิดขึ้น
+                getLogger().warning("Could not start read replica pool for " + address + ": " + e.getMessage());
+                replicaPool.close();
+                continue;
+            }
+            replicas.put(address, replicaPool);
+        }
+        if (replicas.isEmpty()) {
+            getLogger().warning("c-database.replicas is enabled but no hosts are configured; all reads use the primary.");
+            return null;
+        }
+        getLogger().info("Routing reads to " + replicas.size() + " read replica(s): " + String.join(", ", replicas.keySet()));
+        return new ReplicaRouter(() -> pool, replicas,
+                plugin.getConfig().getLong("c-database.replicas.read-your-writes-ms", 5000),
+                plugin.getConfig().getLong("c-database.replicas.retry-after-ms", 30000),
+                getLogger());
+    }
+
+    private int getSqliteSetting(String key, int defaultValue) {
+        return plugin.getConfig().getInt("c-database-sqlite." + key, defaultValue);
+    }
+
+    /**
+     * Pragmas for the Local mode writer connection, or for the read-only pool connections.
+     */
+    private List<String> getSqlitePragmas(boolean forWriter) {
+        List<String> pragmas = new ArrayList<>();
+        if (forWriter) {
+            String synchronous = plugin.getConfig().getString("c-database-sqlite.synchronous", "NORMAL").toUpperCase(Locale.ROOT);
+            if (!Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA").contains(synchronous)) {
+                getLogger().warning("Invalid c-database-sqlite.synchronous value " + synchronous + ", using NORMAL");
+                synchronous = "NORMAL";
+            }
+            pragmas.add("PRAGMA journal_mode = WAL");
+            pragmas.add("PRAGMA synchronous = " + synchronous);
+        }
+        pragmas.add("PRAGMA busy_timeout = " + getSqliteSetting("busy-timeout-ms", 5000));
+        pragmas.add("PRAGMA cache_size = -" + getSqliteSetting("cache-size-kb", 65536));
+        pragmas.add("PRAGMA mmap_size = " + getSqliteSetting("mmap-size-mb", 256) * 1024L * 1024L);
+        pragmas.add("PRAGMA temp_store = MEMORY");
+        if (!forWriter) {
+            pragmas.add("PRAGMA query_only = ON");
+        }
+        return pragmas;
+    }
+
+    private int getPoolSetting(String key, int defaultValue) {
+        if (plugin == null) {
+            return defaultValue;
+        }
+        return plugin.getConfig().getInt("c-database.pool." + key, defaultValue);
+    }
+
+
+    public void close() {
+        if (replicaRouter != null) {
+            replicaRouter.close();
+            replicaRouter = null;
+        }
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool. Callers must close it to hand it back.
+     * In Local mode these connections are read-only; use {@link #write} for changes.
+     */
+    public Connection getConnection() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            throw new SQLException("Database is not connected");
+        }
+        return current.borrow();
+    }
+
+    /**
+     * Runs a read-only query, on a read replica when they are configured and {@code player}
+     * hasn't written recently, on the primary otherwise.
+     *
+     * @param player whose data is read, or {@code null} for reads that aren't about one player
+     */
+    private <T> T read(String player, SqlWork<T> work) throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            return router.read(player, work);
+        }
+        try (Connection connection = getConnection()) {
+            return work.run(connection);
+        }
+    }
+
+    /**
+     * Like {@link #read}, for work that passes rows on while it reads; a replica that fails
+     * partway isn't retried on the primary.
+     */
+    private <T> T stream(String player, SqlWork<T> work) throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            return router.stream(player, work);
+        }
+        try (Connection connection = getConnection()) {
+            return work.run(connection);
+        }
+    }
+
+    /**
+     * @return the read replica router, or {@code null} if reads all go to the primary
+     */
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    public SqliteWriter getSqliteWriter() {
+        return writer;
+    }
+
+    /**
+     * Runs a short write. In Local mode it runs on the SQLite writer thread and may be
+     * committed together with other writes, so it must not commit or roll back itself.
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        return write(work, true);
+    }
+
+    /**
+     * Runs a write that manages its own transaction, on its own.
+     */
+    public <T> T writeExclusive(SqlWork<T> work) throws SQLException {
+        return write(work, false);
+    }
+
+    private <T> T write(SqlWork<T> work, boolean grouped) throws SQLException {
+        SqliteWriter current = writer;
+        if (current == null) {
+            try (Connection connection = getConnection()) {
+                return work.run(connection);
+            }
+        }
+        try {
+            return current.submit(work, grouped);
+        } catch (SQLException | RuntimeException e) {
+            // ถ้า commit ทั้งกลุ่มล้มเหลว id ที่เพิ่งถูกแคชไว้อาจไม่มีอยู่จริง
+            playerIds.clear();
+            templateIds.clear();
+            throw e;
+        }
+    }
+
+    public boolean migrateSchema() {
+        try {
+            new SchemaMigrator(this, isMySql(), getLogger()).migrate();
+            searchBackend = detectSearchBackend();
+            getLogger().info("Library search backend: " + searchBackend);
+            return true;
         } catch (SQLException e) {
-            e.printStackTrace();
+            getLogger().log(Level.SEVERE, "Failed to migrate the database schema.", e);
+            return false;
         }
     }
 
+    private SearchBackend detectSearchBackend() throws SQLException {
+        try (Connection connection = getConnection()) {
+            if (isMySql()) {
+                return SchemaMigrator.indexExists(connection, "co_item_template", "ft_co_item_template_search")
+                        ? SearchBackend.FULLTEXT : SearchBackend.MEMORY;
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+                pstmt.setString(1, "co_item_template_fts");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? SearchBackend.FTS5 : SearchBackend.MEMORY;
+                }
+            }
+        }
+    }
+
+    public SearchBackend getSearchBackend() {
+        return searchBackend;
+    }
+
+    public boolean isMySql() {
+        return "MySQL".equalsIgnoreCase(databaseMode);
+    }
+
+    private Logger getLogger() {
+        return plugin != null ? plugin.getLogger() : Logger.getLogger(CoDatabase.class.getName());
+    }
+
     public boolean isConnectionValid() {
-        try {
-            return connection != null && connection.isValid(2);
+        if (pool == null) {
+            return false;
+        }
+        try (Connection connection = getConnection()) {
+            return connection.isValid(2);
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -124,48 +377,697 @@ public class CoDatabase {
     ///////////////////////////////////////////////////////////////////////
 
     public void addItem(String itemName, String itemDisplay, String description, String player, boolean enable, String command, int used) throws SQLException {
-        String insertSQL = "INSERT INTO co_list_item (item_name, item_display, description, player, enable, command, used) VALUES (?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
-            pstmt.setString(1, itemName);
-            pstmt.setString(2, itemDisplay);
-            pstmt.setString(3, description);
-            pstmt.setString(4, player);
-            pstmt.setBoolean(5, enable);
-            pstmt.setString(6, command);
-            pstmt.setInt(7, used);
-            pstmt.executeUpdate();
+        int playerId = getOrCreatePlayerId(player);
+        int templateId = getOrCreateTemplateId(itemName, itemDisplay, description, command);
+        int id = 0;
+        try {
+            id = write(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(GRANT_INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                    pstmt.setInt(1, templateId);
+                    pstmt.setInt(2, playerId);
+                    pstmt.setBoolean(3, enable);
+                    pstmt.setInt(4, used);
+                    pstmt.executeUpdate();
+                    try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                        return keys.next() ? keys.getInt(1) : 0;
+                    }
+                }
+            });
+        } finally {
+            if (id > 0 && enable) {
+                itemAdded(new ItemData(id, templateId, itemName, itemDisplay, description, player, true, command, used));
+            } else {
+                playerItemsChanged(player);
+            }
         }
     }
 
-    public List<ItemData> getAllItems() throws SQLException {
-        List<ItemData> items = new ArrayList<>();
-        String query = "SELECT * FROM co_list_item";
-        try (Statement stmt = connection.createStatement();
+    /**
+     * Inserts items that each carry their own definition and owner, committing every
+     * {@value #BULK_CHUNK_SIZE} rows. Ids in {@code items} are ignored.
+     *
+     * @return number of items inserted
+     */
+    public int addItems(List<ItemData> items) throws SQLException {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        Set<String> players = new LinkedHashSet<>();
+        for (ItemData item : items) {
+            players.add(item.getPlayer());
+        }
+        return writeExclusive(connection -> {
+            int inserted = 0;
+            Map<String, Integer> playerIds = getOrCreatePlayerIds(connection, players);
+            int[] templateIds = getOrCreateTemplateIds(connection, items);
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(GRANT_INSERT)) {
+                int pending = 0;
+                for (int i = 0; i < items.size(); i++) {
+                    ItemData item = items.get(i);
+                    pstmt.setInt(1, templateIds[i]);
+                    pstmt.setInt(2, playerIds.get(item.getPlayer()));
+                    pstmt.setBoolean(3, item.isEnable());
+                    pstmt.setInt(4, item.getUsed());
+                    pstmt.addBatch();
+
+                    if (++pending == BULK_CHUNK_SIZE) {
+                        pstmt.executeBatch();
+                        connection.commit();
+                        inserted += pending;
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    pstmt.executeBatch();
+                    connection.commit();
+                    inserted += pending;
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                for (String player : players) {
+                    playerItemsChanged(player);
+                }
+            }
+            return inserted;
+        });
+    }
+
+    /**
+     * Inserts every item in one transaction. MySQL sends them as one JDBC batch and reads all the
+     * generated ids back; SQLite inserts row by row, since its driver only reports the last id of
+     * a batch, which costs little without a network round trip.
+     *
+     * @return the new item ids, in the order of {@code items}
+     */
+    public List<Integer> addItemBatch(List<ItemData> items) throws SQLException {
+        List<Integer> ids = new ArrayList<>(items.size());
+        if (items.isEmpty()) {
+            return ids;
+        }
+        Set<String> players = new LinkedHashSet<>();
+        for (ItemData item : items) {
+            players.add(item.getPlayer());
+        }
+        int[] templateIds = writeExclusive(connection -> {
+            // ผู้เล่นและแม่แบบสร้างก่อนเริ่ม transaction เพราะ id แม่แบบถูกจำไว้ในแคช
+            Map<String, Integer> playerIds = getOrCreatePlayerIds(connection, players);
+            int[] resolved = getOrCreateTemplateIds(connection, items);
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(GRANT_INSERT, Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < items.size(); i++) {
+                    ItemData item = items.get(i);
+                    pstmt.setInt(1, resolved[i]);
+                    pstmt.setInt(2, playerIds.get(item.getPlayer()));
+                    pstmt.setBoolean(3, item.isEnable());
+                    pstmt.setInt(4, item.getUsed());
+                    if (isMySql()) {
+                        pstmt.addBatch();
+                    } else {
+                        pstmt.executeUpdate();
+                        readGeneratedIds(pstmt, ids);
+                    }
+                }
+                if (isMySql()) {
+                    pstmt.executeBatch();
+                    readGeneratedIds(pstmt, ids);
+                }
+                if (ids.size() != items.size()) {
+                    throw new SQLException("Expected " + items.size() + " generated ids, got " + ids.size());
+                }
+                connection.commit();
+                return resolved;
+            } catch (SQLException e) {
+                ids.clear();
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+        for (int i = 0; i < items.size(); i++) {
+            ItemData item = items.get(i);
+            if (item.isEnable()) {
+                itemAdded(new ItemData(ids.get(i), templateIds[i], item.getItemName(), item.getItemDisplay(),
+                        item.getDescription(), item.getPlayer(), true, item.getCommand(), item.getUsed()));
+            } else {
+                playerItemsChanged(item.getPlayer());
+            }
+        }
+        return ids;
+    }
+
+    public int getMaxBatchSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    private static void readGeneratedIds(PreparedStatement pstmt, List<Integer> ids) throws SQLException {
+        try (ResultSet keys = pstmt.getGeneratedKeys()) {
+            while (keys.next()) {
+                ids.add(keys.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * @return the template id of each item, creating templates as needed
+     */
+    private int[] getOrCreateTemplateIds(Connection connection, List<ItemData> items) throws SQLException {
+        // ไฟล์นำเข้ามักมีนิยามซ้ำกันมาก จำ id ไว้ต่อ content hash
+        Map<String, Integer> templateIdsByHash = new HashMap<>();
+        int[] templateIds = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            ItemData item = items.get(i);
+            String hash = ItemTemplate.contentHash(item.getItemName(), item.getItemDisplay(), item.getDescription(), item.getCommand());
+            Integer templateId = templateIdsByHash.get(hash);
+            if (templateId == null) {
+                templateId = getOrCreateTemplateId(connection, item.getItemName(), item.getItemDisplay(), item.getDescription(), item.getCommand());
+                templateIdsByHash.put(hash, templateId);
+            }
+            templateIds[i] = templateId;
+        }
+        return templateIds;
+    }
+
+    /**
+     * Grants a template to every known player in a single {@code INSERT ... SELECT}
+     * over {@code co_player}.
+     *
+     * @return number of grants inserted
+     */
+    public int grantTemplateToAllPlayers(int templateId, boolean enable, int used) throws SQLException {
+        String insertSQL = "INSERT INTO co_item_grant (template_id, player_id, enable, used) "
+                + "SELECT ?, p.id, ?, ? FROM co_player p WHERE p.name IS NOT NULL";
+        try {
+            return write(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
+                    pstmt.setInt(1, templateId);
+                    pstmt.setBoolean(2, enable);
+                    pstmt.setInt(3, used);
+                    return pstmt.executeUpdate();
+                }
+            });
+        } finally {
+            allItemsChanged();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // นิยามไอเทม (co_item_template)
+
+    /**
+     * Returns the id of the template with exactly this definition, creating it if needed.
+     */
+    public int getOrCreateTemplateId(String itemName, String itemDisplay, String description, String command) throws SQLException {
+        Integer cached = templateIds.get(ItemTemplate.contentHash(itemName, itemDisplay, description, command));
+        if (cached != null) {
+            return cached;
+        }
+        return write(connection -> getOrCreateTemplateId(connection, itemName, itemDisplay, description, command));
+    }
+
+    private int getOrCreateTemplateId(Connection connection, String itemName, String itemDisplay, String description, String command) throws SQLException {
+        String hash = ItemTemplate.contentHash(itemName, itemDisplay, description, command);
+        Integer cached = templateIds.get(hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        int id = 0;
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT id FROM co_item_template WHERE content_hash = ? ORDER BY id LIMIT 1")) {
+            pstmt.setString(1, hash);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    id = rs.getInt(1);
+                }
+            }
+        }
+        if (id == 0) {
+            // ถ้าสอง thread สร้าง template เดียวกันพร้อมกันจะได้สองแถว ซึ่งไม่เป็นปัญหา
+            String insertSQL = "INSERT INTO co_item_template (content_hash, item_name, item_display, description, command, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement pstmt = connection.prepareStatement(insertSQL, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setString(1, hash);
+                pstmt.setString(2, itemName);
+                pstmt.setString(3, itemDisplay);
+                pstmt.setString(4, description);
+                pstmt.setString(5, command);
+                pstmt.setLong(6, System.currentTimeMillis());
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("No id returned for new item template");
+                    }
+                    id = keys.getInt(1);
+                }
+            }
+        }
+        templateIds.put(hash, id);
+        return id;
+    }
+
+    public ItemTemplate getTemplate(int id) throws SQLException {
+        String query = "SELECT id, item_name, item_display, description, command FROM co_item_template WHERE id = ?";
+        try (Connection connection = getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new ItemTemplate(
+                            rs.getInt("id"),
+                            rs.getString("item_name"),
+                            rs.getString("item_display"),
+                            rs.getString("description"),
+                            rs.getString("command")
+                    );
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Changes a template's definition, which every grant of it picks up at once.
+     *
+     * @return {@code false} if the template does not exist
+     */
+    public boolean updateTemplate(ItemTemplate template) throws SQLException {
+        String updateSQL = "UPDATE co_item_template SET content_hash = ?, item_name = ?, item_display = ?, description = ?, command = ? WHERE id = ?";
+        try {
+            return write(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                    pstmt.setString(1, ItemTemplate.contentHash(template.getItemName(), template.getItemDisplay(), template.getDescription(), template.getCommand()));
+                    pstmt.setString(2, template.getItemName());
+                    pstmt.setString(3, template.getItemDisplay());
+                    pstmt.setString(4, template.getDescription());
+                    pstmt.setString(5, template.getCommand());
+                    pstmt.setInt(6, template.getId());
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
+        } finally {
+            templateIds.clear();
+            allItemsChanged();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // งานแจกไอเทมแบบเบื้องหลัง (co_grant_job)
+
+    public void insertGrantJob(GrantJob job) throws SQLException {
+        String insertSQL = "INSERT INTO co_grant_job (id, type, status, item_name, item_display, description, command, used, "
+                + "players, last_player, total, processed, created_at, started_at, finished_at, error) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
+                pstmt.setString(1, job.getId());
+                pstmt.setString(2, job.getType().name());
+                pstmt.setString(3, job.getStatus().name());
+                pstmt.setString(4, job.getItemName());
+                pstmt.setString(5, job.getItemDisplay());
+                pstmt.setString(6, job.getDescription());
+                pstmt.setString(7, job.getCommand());
+                pstmt.setInt(8, job.getUsed());
+                pstmt.setString(9, job.getType() == GrantJob.Type.ONLINE ? String.join("\n", job.getPlayers()) : null);
+                pstmt.setString(10, job.getLastPlayer());
+                pstmt.setInt(11, job.getTotal());
+                pstmt.setInt(12, job.getProcessed());
+                pstmt.setLong(13, job.getCreatedAt());
+                pstmt.setLong(14, job.getStartedAt());
+                pstmt.setLong(15, job.getFinishedAt());
+                pstmt.setString(16, job.getError());
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    public void updateGrantJobState(GrantJob job) throws SQLException {
+        String updateSQL = "UPDATE co_grant_job SET status = ?, total = ?, started_at = ?, finished_at = ?, error = ? WHERE id = ?";
+        write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                pstmt.setString(1, job.getStatus().name());
+                pstmt.setInt(2, job.getTotal());
+                pstmt.setLong(3, job.getStartedAt());
+                pstmt.setLong(4, job.getFinishedAt());
+                pstmt.setString(5, job.getError());
+                pstmt.setString(6, job.getId());
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    public GrantJob getGrantJob(String id) throws SQLException {
+        String query = "SELECT * FROM co_grant_job WHERE id = ?";
+        try (Connection connection = getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
+            pstmt.setString(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return createGrantJobFromResultSet(rs);
+                }
+            }
+        }
+        return null;
+    }
+
+    public List<GrantJob> getUnfinishedGrantJobs() throws SQLException {
+        List<GrantJob> jobs = new ArrayList<>();
+        String query = "SELECT * FROM co_grant_job WHERE status IN ('QUEUED', 'RUNNING') ORDER BY created_at";
+        try (Connection connection = getConnection();
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
             while (rs.next()) {
-                items.add(createItemDataFromResultSet(rs));
+                jobs.add(createGrantJobFromResultSet(rs));
             }
         }
-        return items;
+        return jobs;
     }
 
-    public List<ItemData> getItemsByPlayer(String playerName) throws SQLException {
-        List<ItemData> items = new ArrayList<>();
-        String query = "SELECT * FROM co_list_item WHERE player = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setString(1, playerName);
-            try (ResultSet rs = pstmt.executeQuery()) {
+    /**
+     * Inserts one chunk of a grant job and advances the job's progress in the same
+     * transaction, so a job resumed after a restart never grants a player twice.
+     */
+    public void applyGrantJobChunk(GrantJob job, List<String> players) throws SQLException {
+        if (players.isEmpty()) {
+            return;
+        }
+
+        String progressSQL = "UPDATE co_grant_job SET processed = processed + ?, last_player = ? WHERE id = ?";
+        String lastPlayer = players.get(players.size() - 1);
+        writeExclusive(connection -> {
+            Map<String, Integer> playerIds = getOrCreatePlayerIds(connection, players);
+            int templateId = getOrCreateTemplateId(connection, job.getItemName(), job.getItemDisplay(), job.getDescription(), job.getCommand());
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(GRANT_INSERT);
+                 PreparedStatement progress = connection.prepareStatement(progressSQL)) {
+                for (String player : players) {
+                    insert.setInt(1, templateId);
+                    insert.setInt(2, playerIds.get(player));
+                    insert.setBoolean(3, true);
+                    insert.setInt(4, job.getUsed());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+
+                progress.setInt(1, players.size());
+                progress.setString(2, lastPlayer);
+                progress.setString(3, job.getId());
+                progress.executeUpdate();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                for (String player : players) {
+                    playerItemsChanged(player);
+                }
+            }
+            return null;
+        });
+        job.setProcessed(job.getProcessed() + players.size());
+        job.setLastPlayer(lastPlayer);
+    }
+
+    public int countPlayers() throws SQLException {
+        String query = "SELECT COUNT(*) FROM co_player WHERE name IS NOT NULL";
+        return read(null, connection -> {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * Keyset page over the known player names, ordered by name.
+     */
+    public List<String> getPlayersAfter(String afterPlayer, int limit) throws SQLException {
+        String query = "SELECT name FROM co_player WHERE name > ? ORDER BY name LIMIT ?";
+        return read(null, connection -> {
+            List<String> players = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                pstmt.setString(1, afterPlayer == null ? "" : afterPlayer);
+                pstmt.setInt(2, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        players.add(rs.getString("name"));
+                    }
+                }
+            }
+            return players;
+        });
+    }
+
+    private GrantJob createGrantJobFromResultSet(ResultSet rs) throws SQLException {
+        String playerList = rs.getString("players");
+        List<String> players = playerList == null || playerList.isEmpty()
+                ? new ArrayList<>()
+                : Arrays.asList(playerList.split("\n"));
+        GrantJob job = new GrantJob(
+                rs.getString("id"),
+                GrantJob.Type.valueOf(rs.getString("type")),
+                rs.getString("item_name"),
+                rs.getString("item_display"),
+                rs.getString("description"),
+                rs.getString("command"),
+                rs.getInt("used"),
+                players,
+                rs.getLong("created_at")
+        );
+        job.setStatus(GrantJob.Status.valueOf(rs.getString("status")));
+        job.setLastPlayer(rs.getString("last_player"));
+        job.setTotal(rs.getInt("total"));
+        job.setProcessed(rs.getInt("processed"));
+        job.setStartedAt(rs.getLong("started_at"));
+        job.setFinishedAt(rs.getLong("finished_at"));
+        job.setError(rs.getString("error"));
+        return job;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Idempotency-Key ของ API (co_idempotency_key)
+
+    public IdempotencyRecord insertIdempotencyKey(IdempotencyRecord record) throws SQLException {
+        String insertSQL = (isMySql() ? "INSERT IGNORE" : "INSERT OR IGNORE")
+                + " INTO co_idempotency_key (idem_key, request_hash, created_at, status, content_type, body) VALUES (?, ?, ?, ?, ?, ?)";
+        String selectSQL = "SELECT * FROM co_idempotency_key WHERE idem_key = ?";
+        // ต้องอ่านจาก primary เสมอ replica อาจยังไม่เห็นคีย์ที่เพิ่งจองไป
+        return write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
+                pstmt.setString(1, record.getKey());
+                pstmt.setString(2, record.getRequestHash());
+                pstmt.setLong(3, record.getCreatedAt());
+                pstmt.setInt(4, record.getStatus());
+                pstmt.setString(5, record.getContentType());
+                pstmt.setString(6, record.getBody());
+                if (pstmt.executeUpdate() > 0) {
+                    return null;
+                }
+            }
+            try (PreparedStatement pstmt = connection.prepareStatement(selectSQL)) {
+                pstmt.setString(1, record.getKey());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Idempotency key " + record.getKey() + " was neither inserted nor found");
+                    }
+                    return new IdempotencyRecord(rs.getString("idem_key"), rs.getString("request_hash"),
+                            rs.getLong("created_at"), rs.getInt("status"), rs.getString("content_type"), rs.getString("body"));
+                }
+            }
+        });
+    }
+
+    public void completeIdempotencyKey(IdempotencyRecord record) throws SQLException {
+        String updateSQL = "UPDATE co_idempotency_key SET status = ?, content_type = ?, body = ? WHERE idem_key = ? AND created_at = ?";
+        write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                pstmt.setInt(1, record.getStatus());
+                pstmt.setString(2, record.getContentType());
+                pstmt.setString(3, record.getBody());
+                pstmt.setString(4, record.getKey());
+                pstmt.setLong(5, record.getCreatedAt());
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    public void deleteIdempotencyKey(String key, long createdAt) throws SQLException {
+        String deleteSQL = "DELETE FROM co_idempotency_key WHERE idem_key = ? AND created_at = ?";
+        write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(deleteSQL)) {
+                pstmt.setString(1, key);
+                pstmt.setLong(2, createdAt);
+                pstmt.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    public int deleteIdempotencyKeysBefore(long createdBefore) throws SQLException {
+        String deleteSQL = "DELETE FROM co_idempotency_key WHERE created_at < ?";
+        return write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(deleteSQL)) {
+                pstmt.setLong(1, createdBefore);
+                return pstmt.executeUpdate();
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    public List<ItemData> getAllItems() throws SQLException {
+        return read(null, connection -> {
+            List<ItemData> items = new ArrayList<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(ITEM_SELECT)) {
                 while (rs.next()) {
                     items.add(createItemDataFromResultSet(rs));
                 }
             }
+            return items;
+        });
+    }
+
+    /**
+     * Page over every item ordered by id, starting after {@code afterId}.
+     */
+    public List<ItemData> getItemsAfter(int afterId, int limit) throws SQLException {
+        String query = ITEM_SELECT + " WHERE g.id > ? ORDER BY g.id LIMIT ?";
+        return read(null, connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                pstmt.setInt(1, afterId);
+                pstmt.setInt(2, limit);
+                return readItems(pstmt);
+            }
+        });
+    }
+
+    /**
+     * Keyset page of items matching {@code query}, ordered by id. Player and enabled filters use
+     * the {@code (player_id, id)} and {@code (enable, id)} indexes; name and search filters are
+     * checked on the rows the index walk visits.
+     */
+    public List<ItemData> findItems(ItemQuery query) throws SQLException {
+        StringBuilder sql = new StringBuilder(ITEM_SELECT).append(" WHERE g.id > ?");
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(query.getAfterId());
+        if (query.getPlayer() != null) {
+            int playerId = getPlayerId(query.getPlayer());
+            if (playerId == 0) {
+                return new ArrayList<>();
+            }
+            sql.append(" AND g.player_id = ?");
+            parameters.add(playerId);
+        }
+        if (query.getEnabled() != null) {
+            sql.append(" AND g.enable = ?");
+            parameters.add(query.getEnabled());
+        }
+        if (query.getItemName() != null) {
+            sql.append(" AND LOWER(t.item_name) = LOWER(?)");
+            parameters.add(query.getItemName());
+        }
+        if (query.getSearch() != null) {
+            // q เป็นการค้นหาข้อความตรงตัวเหมือน ItemQuery.matches ของ store อื่น ไม่ใช่ wildcard ของ LIKE
+            sql.append(" AND (t.item_name LIKE ? ESCAPE '!' OR t.description LIKE ? ESCAPE '!')");
+            parameters.add(containsPattern(query.getSearch()));
+            parameters.add(containsPattern(query.getSearch()));
+        }
+        sql.append(" ORDER BY g.id LIMIT ?");
+        parameters.add(query.getLimit());
+
+        return read(query.getPlayer(), connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    Object parameter = parameters.get(i);
+                    if (parameter instanceof Boolean) {
+                        pstmt.setBoolean(i + 1, (Boolean) parameter);
+                    } else if (parameter instanceof Integer) {
+                        pstmt.setInt(i + 1, (Integer) parameter);
+                    } else {
+                        pstmt.setString(i + 1, (String) parameter);
+                    }
+                }
+                return readItems(pstmt);
+            }
+        });
+    }
+
+    /**
+     * LIKE pattern matching {@code term} anywhere, with {@code %} and {@code _} taken literally.
+     * Uses {@code !} as the escape character, because a backslash needs different quoting in
+     * MySQL and SQLite.
+     */
+    static String containsPattern(String term) {
+        return "%" + term.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    public List<ItemData> getItemsByPlayer(String playerName) throws SQLException {
+        int playerId = getPlayerId(playerName);
+        if (playerId == 0) {
+            return new ArrayList<>();
+        }
+        String query = ITEM_SELECT + " WHERE g.player_id = ?";
+        return read(playerName, connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                pstmt.setInt(1, playerId);
+                return readItems(pstmt);
+            }
+        });
+    }
+
+    /**
+     * Reads items straight off the {@code ResultSet} into {@code consumer}. MySQL is asked to
+     * stream rows instead of buffering the whole result in the driver; SQLite steps through
+     * rows as they are read anyway. The connection stays borrowed until the consumer is done.
+     */
+    public void streamItems(String playerName, ItemConsumer consumer) throws SQLException, IOException {
+        int playerId = 0;
+        String query = ITEM_SELECT;
+        if (playerName != null) {
+            playerId = getPlayerId(playerName);
+            if (playerId == 0) {
+                return;
+            }
+            query += " WHERE g.player_id = ?";
+        }
+        String sql = query + " ORDER BY g.id";
+        int ownerId = playerId;
+        try {
+            stream(playerName, connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    if (isMySql()) {
+                        // Connector/J ส่งแถวทีละแถวเมื่อ fetch size เป็น Integer.MIN_VALUE
+                        pstmt.setFetchSize(Integer.MIN_VALUE);
+                    }
+                    if (ownerId != 0) {
+                        pstmt.setInt(1, ownerId);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            consumer.accept(createItemDataFromResultSet(rs));
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
-        return items;
     }
 
     public ItemData getItem(int id) throws SQLException {
-        String query = "SELECT * FROM co_list_item WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+        String query = ITEM_SELECT + " WHERE g.id = ?";
+        try (Connection connection = getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
             pstmt.setInt(1, id);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
@@ -177,29 +1079,50 @@ public class CoDatabase {
     }
 
     public boolean deleteItem(int id) throws SQLException {
-        String query = "DELETE FROM co_list_item WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            pstmt.setInt(1, id);
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
+        String query = "DELETE FROM co_item_grant WHERE id = ?";
+        Set<String> owners = pinItemOwners(Collections.singletonList(id));
+        try {
+            return write(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                    pstmt.setInt(1, id);
+                    int affectedRows = pstmt.executeUpdate();
+                    return affectedRows > 0;
+                }
+            });
+        } finally {
+            itemRemoved(id);
+            itemOwnersChanged(owners);
         }
     }
 
     public List<String> getAllPlayersEverJoined() throws SQLException {
-        List<String> players = new ArrayList<>();
-        String query = "SELECT DISTINCT player FROM co_list_item";
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+        String query = "SELECT name FROM co_player WHERE name IS NOT NULL";
+        return read(null, connection -> {
+            List<String> players = new ArrayList<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(query)) {
+                while (rs.next()) {
+                    players.add(rs.getString("name"));
+                }
+            }
+            return players;
+        });
+    }
+
+    private List<ItemData> readItems(PreparedStatement pstmt) throws SQLException {
+        List<ItemData> items = new ArrayList<>();
+        try (ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
-                players.add(rs.getString("player"));
+                items.add(createItemDataFromResultSet(rs));
             }
         }
-        return players;
+        return items;
     }
 
     private ItemData createItemDataFromResultSet(ResultSet rs) throws SQLException {
         return new ItemData(
                 rs.getInt("id"),
+                rs.getInt("template_id"),
                 rs.getString("item_name"),
                 rs.getString("item_display"),
                 rs.getString("description"),
@@ -210,38 +1133,694 @@ public class CoDatabase {
         );
     }
 
-    //  สำหรับค้นหาไอเทม
-    public ResultSet getListItemsByPlayerAndEnabledAndSearch(String player, String searchTerm) throws SQLException {
-        String querySQL = "SELECT * FROM co_list_item WHERE player = ? AND enable = 1 AND (item_name LIKE ? OR description LIKE ?)";
-        PreparedStatement pstmt = connection.prepareStatement(querySQL);
-        pstmt.setString(1, player);
-        pstmt.setString(2, "%" + searchTerm + "%");
-        pstmt.setString(3, "%" + searchTerm + "%");
-        return pstmt.executeQuery();
+    /**
+     * Keyset page of a player's enabled items ordered by id, starting after {@code afterId}.
+     */
+    public List<ItemData> getListItemsPage(String player, int afterId, int limit) throws SQLException {
+        List<ItemData> cached = getCachedLibrary(player);
+        if (cached != null) {
+            int from = 0;
+            while (from < cached.size() && cached.get(from).getId() <= afterId) {
+                from++;
+            }
+            return new ArrayList<>(cached.subList(from, Math.min(from + limit, cached.size())));
+        }
+
+        int playerId = getPlayerId(player);
+        if (playerId == 0) {
+            return new ArrayList<>();
+        }
+        String querySQL = ITEM_SELECT + " WHERE g.player_id = ? AND g.enable = 1 AND g.id > ? ORDER BY g.id LIMIT ?";
+        return read(player, connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setInt(1, playerId);
+                pstmt.setInt(2, afterId);
+                pstmt.setInt(3, limit);
+                return readItems(pstmt);
+            }
+        });
+    }
+
+    /**
+     * Ranked search over a player's enabled items, matching every term as a prefix.
+     * Uses FTS5 in Local mode, a FULLTEXT index on MySQL and the in-memory index otherwise.
+     */
+    public List<ItemData> searchItems(String player, String query, int offset, int limit) throws SQLException {
+        List<String> terms = ItemSearchIndex.tokenize(query);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        int playerId = getPlayerId(player);
+        if (playerId == 0) {
+            return new ArrayList<>();
+        }
+
+        if (searchBackend == SearchBackend.FTS5) {
+            StringBuilder match = new StringBuilder();
+            for (String term : terms) {
+                match.append(match.length() > 0 ? " " : "").append('"').append(term).append("\"*");
+            }
+            String querySQL = "SELECT " + ITEM_COLUMNS + " FROM co_item_template_fts "
+                    + "JOIN co_item_template t ON t.id = co_item_template_fts.rowid "
+                    + "JOIN co_item_grant g ON g.template_id = t.id LEFT JOIN co_player p ON p.id = g.player_id "
+                    + "WHERE co_item_template_fts MATCH ? AND g.player_id = ? AND g.enable = 1 "
+                    + "ORDER BY bm25(co_item_template_fts, 2.0, 1.0), g.id LIMIT ? OFFSET ?";
+            return read(player, connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                    pstmt.setString(1, match.toString());
+                    pstmt.setInt(2, playerId);
+                    pstmt.setInt(3, limit);
+                    pstmt.setInt(4, offset);
+                    return readItems(pstmt);
+                }
+            });
+        }
+
+        if (searchBackend == SearchBackend.FULLTEXT) {
+            // InnoDB ไม่ทำดัชนีคำที่สั้นกว่า 3 ตัวอักษร (innodb_ft_min_token_size)
+            StringBuilder match = new StringBuilder();
+            boolean indexable = true;
+            for (String term : terms) {
+                if (term.length() < 3) {
+                    indexable = false;
+                    break;
+                }
+                match.append(match.length() > 0 ? " " : "").append('+').append(term).append('*');
+            }
+            if (indexable) {
+                String querySQL = ITEM_SELECT + " WHERE g.player_id = ? AND g.enable = 1 "
+                        + "AND MATCH(t.item_name, t.description) AGAINST (? IN BOOLEAN MODE) "
+                        + "ORDER BY MATCH(t.item_name, t.description) AGAINST (? IN BOOLEAN MODE) DESC, g.id LIMIT ? OFFSET ?";
+                String against = match.toString();
+                return read(player, connection -> {
+                    try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                        pstmt.setInt(1, playerId);
+                        pstmt.setString(2, against);
+                        pstmt.setString(3, against);
+                        pstmt.setInt(4, limit);
+                        pstmt.setInt(5, offset);
+                        return readItems(pstmt);
+                    }
+                });
+            }
+        }
+
+        return searchIndex.search(player, query, offset, limit, this::getListItemsByPlayerAndEnabled);
+    }
+
+    public int countListItems(String player) throws SQLException {
+        List<ItemData> cached = getCachedLibrary(player);
+        if (cached != null) {
+            return cached.size();
+        }
+
+        int playerId = getPlayerId(player);
+        if (playerId == 0) {
+            return 0;
+        }
+        String querySQL = "SELECT COUNT(*) FROM co_item_grant WHERE player_id = ? AND enable = 1";
+        return read(player, connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setInt(1, playerId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        });
     }
 
     ///////////////////////////////////////////////////////////////////////
 
 
-    public ResultSet getListItemsByPlayerAndEnabled(String player) throws SQLException {
-        String querySQL = "SELECT * FROM co_list_item WHERE player = ? AND enable = 1";
-        PreparedStatement pstmt = connection.prepareStatement(querySQL);
-        pstmt.setString(1, player);
-        return pstmt.executeQuery();
+    ///////////////////////////////////////////////////////////////////////
+    // ผู้เล่น (co_player)
+
+    private static final class PlayerRow {
+        private final int id;
+        private final String uuid;
+        private final String name;
+
+        private PlayerRow(int id, String uuid, String name) {
+            this.id = id;
+            this.uuid = uuid;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Returns the {@code co_player} id for {@code player}, or 0 if the name is unknown.
+     */
+    public int getPlayerId(String player) throws SQLException {
+        if (player == null) {
+            return 0;
+        }
+        Integer cached = playerIds.get(player);
+        if (cached != null) {
+            return cached;
+        }
+        try (Connection connection = getConnection()) {
+            return findPlayerId(connection, player);
+        }
+    }
+
+    public int getOrCreatePlayerId(String player) throws SQLException {
+        int id = getPlayerId(player);
+        if (id > 0) {
+            return id;
+        }
+        return write(connection -> getOrCreatePlayerId(connection, player));
+    }
+
+    /**
+     * Resolves every name to a player id, creating rows for unknown names. Must run outside
+     * a transaction so a rolled-back insert can't leave a stale id in the cache.
+     */
+    private Map<String, Integer> getOrCreatePlayerIds(Connection connection, Collection<String> players) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        for (String player : players) {
+            if (!ids.containsKey(player)) {
+                Integer cached = playerIds.get(player);
+                ids.put(player, cached != null ? cached : getOrCreatePlayerId(connection, player));
+            }
+        }
+        return ids;
+    }
+
+    private int getOrCreatePlayerId(Connection connection, String player) throws SQLException {
+        if (player == null) {
+            throw new SQLException("Player name is required");
+        }
+        int id = findPlayerId(connection, player);
+        if (id > 0) {
+            return id;
+        }
+        // ถ้า thread อื่นเพิ่มชื่อนี้ไปก่อน INSERT จะถูกข้าม แล้วอ่าน id ที่มีอยู่แทน
+        String insertSQL = (isMySql() ? "INSERT IGNORE" : "INSERT OR IGNORE") + " INTO co_player (name) VALUES (?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(insertSQL)) {
+            pstmt.setString(1, player);
+            pstmt.executeUpdate();
+        }
+        id = findPlayerId(connection, player);
+        if (id == 0) {
+            throw new SQLException("Failed to register player " + player);
+        }
+        return id;
+    }
+
+    private int findPlayerId(Connection connection, String player) throws SQLException {
+        PlayerRow row = findPlayer(connection, "name", player);
+        if (row == null) {
+            return 0;
+        }
+        playerIds.put(player, row.id);
+        return row.id;
+    }
+
+    private PlayerRow findPlayer(Connection connection, String column, String value) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("SELECT id, uuid, name FROM co_player WHERE " + column + " = ?")) {
+            pstmt.setString(1, value);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new PlayerRow(rs.getInt("id"), rs.getString("uuid"), rs.getString("name")) : null;
+            }
+        }
+    }
+
+    /**
+     * Records a joining player's UUID and current name. Items granted to the name before
+     * the player ever joined are moved to the player's row, and a name now used by someone
+     * else is released from its previous owner, so renames no longer orphan items.
+     */
+    public void registerPlayer(UUID uuid, String name) throws SQLException {
+        String uuidText = uuid.toString();
+        List<String> changedNames = writeExclusive(connection -> {
+            List<String> changed = new ArrayList<>();
+            connection.setAutoCommit(false);
+            try {
+                PlayerRow byUuid = findPlayer(connection, "uuid", uuidText);
+                PlayerRow byName = findPlayer(connection, "name", name);
+
+                if (byUuid == null && byName != null && byName.uuid == null) {
+                    // ชื่อนี้เคยได้รับไอเทมก่อนผู้เล่นจะเข้าเซิร์ฟครั้งแรก
+                    updatePlayer(connection, byName.id, uuidText, name);
+                    if (!name.equals(byName.name)) {
+                        changed.add(name);
+                    }
+                } else {
+                    if (byName != null && (byUuid == null || byName.id != byUuid.id)) {
+                        if (byUuid != null && byName.uuid == null) {
+                            for (String table : new String[]{"co_item_grant", "co_item_grant_archive"}) {
+                                try (PreparedStatement pstmt = connection.prepareStatement("UPDATE " + table + " SET player_id = ? WHERE player_id = ?")) {
+                                    pstmt.setInt(1, byUuid.id);
+                                    pstmt.setInt(2, byName.id);
+                                    pstmt.executeUpdate();
+                                }
+                            }
+                            try (PreparedStatement pstmt = connection.prepareStatement("DELETE FROM co_player WHERE id = ?")) {
+                                pstmt.setInt(1, byName.id);
+                                pstmt.executeUpdate();
+                            }
+                        } else {
+                            try (PreparedStatement pstmt = connection.prepareStatement("UPDATE co_player SET name = NULL WHERE id = ?")) {
+                                pstmt.setInt(1, byName.id);
+                                pstmt.executeUpdate();
+                            }
+                        }
+                        changed.add(name);
+                    }
+
+                    if (byUuid == null) {
+                        try (PreparedStatement pstmt = connection.prepareStatement("INSERT INTO co_player (uuid, name, last_seen) VALUES (?, ?, ?)")) {
+                            pstmt.setString(1, uuidText);
+                            pstmt.setString(2, name);
+                            pstmt.setLong(3, System.currentTimeMillis());
+                            pstmt.executeUpdate();
+                        }
+                    } else {
+                        updatePlayer(connection, byUuid.id, uuidText, name);
+                        if (!name.equals(byUuid.name)) {
+                            changed.add(name);
+                            if (byUuid.name != null) {
+                                changed.add(byUuid.name);
+                            }
+                        }
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return changed;
+        });
+
+        for (String changedName : changedNames) {
+            playerIds.remove(changedName);
+            playerItemsChanged(changedName);
+        }
+    }
+
+    private void updatePlayer(Connection connection, int id, String uuid, String name) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement("UPDATE co_player SET uuid = ?, name = ?, last_seen = ? WHERE id = ?")) {
+            pstmt.setString(1, uuid);
+            pstmt.setString(2, name);
+            pstmt.setLong(3, System.currentTimeMillis());
+            pstmt.setInt(4, id);
+            pstmt.executeUpdate();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+
+    ///////////////////////////////////////////////////////////////////////
+    // แคชคลังไอเทมของผู้เล่นที่ออนไลน์
+
+    /**
+     * Returns the player's enabled items from the library cache, loading them on a miss.
+     * Returns {@code null} when the cache is disabled or the player has too many items to cache.
+     */
+    public List<ItemData> getCachedLibrary(String player) throws SQLException {
+        if (libraryCache == null) {
+            return null;
+        }
+        LibraryCache.CachedLibrary cached = libraryCache.get(player);
+        if (cached == null) {
+            Object token = libraryCache.beginLoad(player);
+            int playerId = getPlayerId(player);
+            List<ItemData> items = new ArrayList<>();
+            if (playerId > 0) {
+                String querySQL = ITEM_SELECT + " WHERE g.player_id = ? AND g.enable = 1 ORDER BY g.id LIMIT ?";
+                items = read(player, connection -> {
+                    try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                        pstmt.setInt(1, playerId);
+                        // โหลดเกินขีดจำกัดหนึ่งแถว เพื่อรู้ว่าผู้เล่นคนนี้มีไอเทมมากเกินจะเก็บในแคช
+                        pstmt.setInt(2, libraryCache.getMaxItemsPerPlayer() + 1);
+                        return readItems(pstmt);
+                    }
+                });
+            }
+            cached = libraryCache.put(player, items, token);
+        }
+        return cached.isOversized() ? null : cached.getItems();
+    }
+
+    public void warmLibraryCache(String player) throws SQLException {
+        getCachedLibrary(player);
+    }
+
+    public void evictLibraryCache(String player) {
+        if (libraryCache != null) {
+            libraryCache.invalidate(player);
+        }
+    }
+
+    public LibraryCache getLibraryCache() {
+        return libraryCache;
+    }
+
+    public ChangeVersions getChangeVersions() {
+        return changeVersions;
+    }
+
+    private void itemAdded(ItemData item) {
+        pinToPrimary(item.getPlayer());
+        changeVersions.playerChanged(item.getPlayer());
+        searchIndex.invalidatePlayer(item.getPlayer());
+        if (libraryCache != null) {
+            libraryCache.addItem(item);
+        }
+    }
+
+    private void itemRemoved(int id) {
+        searchIndex.removeItem(id);
+        if (libraryCache != null) {
+            libraryCache.removeItem(id);
+        }
+    }
+
+    private void playerItemsChanged(String player) {
+        pinToPrimary(player);
+        changeVersions.playerChanged(player);
+        searchIndex.invalidatePlayer(player);
+        if (libraryCache != null) {
+            libraryCache.invalidate(player);
+        }
+    }
+
+    private void allItemsChanged() {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            router.pinAll();
+        }
+        changeVersions.allChanged();
+        searchIndex.clear();
+        if (libraryCache != null) {
+            libraryCache.clear();
+        }
+    }
+
+    private void pinToPrimary(String player) {
+        ReplicaRouter router = replicaRouter;
+        if (router != null) {
+            router.pinPlayer(player);
+        }
+    }
+
+    /**
+     * Keeps the owners of {@code ids} reading from the primary, for writes that only know item ids.
+     * Owners come from the library cache when it holds the item; the rest are looked up on the
+     * primary only when replicas are configured.
+     *
+     * @return the owners for {@link #itemOwnersChanged}, or {@code null} if some weren't looked up
+     */
+    private Set<String> pinItemOwners(Collection<Integer> ids) throws SQLException {
+        ReplicaRouter router = replicaRouter;
+        Set<String> owners = new LinkedHashSet<>();
+        List<Integer> unknown = new ArrayList<>();
+        for (Integer id : ids) {
+            String owner = libraryCache == null ? null : libraryCache.getOwner(id);
+            if (owner != null) {
+                owners.add(owner);
+                if (router != null) {
+                    router.pinPlayer(owner);
+                }
+            } else {
+                unknown.add(id);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return owners;
+        }
+        if (router == null) {
+            return null;
+        }
+        String query = "SELECT DISTINCT p.name FROM co_item_grant g JOIN co_player p ON p.id = g.player_id WHERE g.id IN ("
+                + String.join(", ", Collections.nCopies(unknown.size(), "?")) + ")";
+        try (Connection connection = getConnection();
+             PreparedStatement pstmt = connection.prepareStatement(query)) {
+            for (int i = 0; i < unknown.size(); i++) {
+                pstmt.setInt(i + 1, unknown.get(i));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    owners.add(rs.getString(1));
+                    router.pinPlayer(rs.getString(1));
+                }
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Bumps the change versions after a write to items owned by {@code owners}, or every
+     * version if the owners weren't known.
+     */
+    private void itemOwnersChanged(Set<String> owners) {
+        if (owners == null) {
+            changeVersions.allChanged();
+            return;
+        }
+        for (String owner : owners) {
+            changeVersions.playerChanged(owner);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    public List<ItemData> getListItemsByPlayerAndEnabled(String player) throws SQLException {
+        int playerId = getPlayerId(player);
+        if (playerId == 0) {
+            return new ArrayList<>();
+        }
+        String querySQL = ITEM_SELECT + " WHERE g.player_id = ? AND g.enable = 1";
+        return read(player, connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+                pstmt.setInt(1, playerId);
+                return readItems(pstmt);
+            }
+        });
+    }
+
+    /**
+     * Claims an item in one conditional update: it is disabled and its use count
+     * decremented only if it is still enabled.
+     *
+     * @return {@code true} if this call claimed the item, {@code false} if it was already claimed or deleted
+     */
+    public boolean claimItem(int id) throws SQLException {
+        String updateSQL = "UPDATE co_item_grant SET enable = 0, used = used - 1, claimed_at = ? WHERE id = ? AND enable = 1";
+        Set<String> owners = pinItemOwners(Collections.singletonList(id));
+        int updated = write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                pstmt.setLong(1, System.currentTimeMillis());
+                pstmt.setInt(2, id);
+                return pstmt.executeUpdate();
+            }
+        });
+        if (updated == 1) {
+            itemRemoved(id);
+            itemOwnersChanged(owners);
+        }
+        return updated == 1;
+    }
+
+    /**
+     * Takes an item out of the library cache for a queued claim.
+     *
+     * @return {@code false} if the item is not cached, in which case the claim must go to the database
+     */
+    public boolean claimCachedItem(int id) {
+        if (libraryCache == null || !libraryCache.removeItem(id)) {
+            return false;
+        }
+        searchIndex.removeItem(id);
+        return true;
+    }
+
+    /**
+     * Applies queued claims in one transaction with the same conditional update as {@link #claimItem}.
+     *
+     * @return ids whose row was already claimed or deleted
+     */
+    public List<Integer> applyClaims(List<Integer> ids) throws SQLException {
+        List<Integer> notApplied = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return notApplied;
+        }
+
+        String updateSQL = "UPDATE co_item_grant SET enable = 0, used = used - 1, claimed_at = ? WHERE id = ? AND enable = 1";
+        long claimedAt = System.currentTimeMillis();
+        Set<String> owners = pinItemOwners(ids);
+        writeExclusive(connection -> {
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                for (Integer id : ids) {
+                    pstmt.setLong(1, claimedAt);
+                    pstmt.setInt(2, id);
+                    pstmt.addBatch();
+                }
+                int[] results = pstmt.executeBatch();
+                connection.commit();
+                for (int i = 0; i < results.length; i++) {
+                    // SUCCESS_NO_INFO ถือว่าสำเร็จ
+                    if (results[i] == 0) {
+                        notApplied.add(ids.get(i));
+                    }
+                }
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            return null;
+        });
+        // แคชอาจโหลดแถวเหล่านี้กลับมาระหว่างรอเขียน
+        for (Integer id : ids) {
+            itemRemoved(id);
+        }
+        itemOwnersChanged(owners);
+        return notApplied;
     }
 
     public void updateItemEnabled(int id, boolean enabled) throws SQLException {
-        String updateSQL = "UPDATE co_list_item SET enable = " + (enabled ? 1 : 0) + " WHERE id = " + id;
-        try (Statement stmt = connection.createStatement()) {
-            stmt.executeUpdate(updateSQL);
+        // ไอเทมที่ถูกปิดนับเป็นไอเทมที่ใช้แล้ว และจะถูกย้ายไปเก็บถาวรเหมือนกัน
+        String updateSQL = "UPDATE co_item_grant SET enable = ?, claimed_at = ? WHERE id = ?";
+        Set<String> owners = pinItemOwners(Collections.singletonList(id));
+        try {
+            write(connection -> {
+                try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                    pstmt.setBoolean(1, enabled);
+                    pstmt.setObject(2, enabled ? null : System.currentTimeMillis(), Types.BIGINT);
+                    pstmt.setInt(3, id);
+                    return pstmt.executeUpdate();
+                }
+            });
+        } finally {
+            itemRemoved(id);
+            itemOwnersChanged(owners);
+        }
+        if (enabled) {
+            ItemData item = getItem(id);
+            if (item != null) {
+                playerItemsChanged(item.getPlayer());
+            }
         }
     }
 
     public void updateItemused(int id) throws SQLException {
-        String updateSQL = "UPDATE co_list_item SET used = used - 1 WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
+        String updateSQL = "UPDATE co_item_grant SET used = used - 1 WHERE id = ?";
+        Set<String> owners = pinItemOwners(Collections.singletonList(id));
+        write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(updateSQL)) {
+                pstmt.setInt(1, id);
+                return pstmt.executeUpdate();
+            }
+        });
+        if (libraryCache != null) {
+            libraryCache.decrementUsed(id);
+        }
+        itemOwnersChanged(owners);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    /**
+     * Moves up to {@code limit} items claimed before {@code claimedBefore} into
+     * {@code co_item_grant_archive} in one short transaction.
+     *
+     * @return number of items archived
+     */
+    public int archiveClaimedItems(long claimedBefore, int limit) throws SQLException {
+        // MySQL: ล็อกแถวที่เลือกไว้ กันเซิร์ฟอื่นเปิดไอเทมกลับระหว่างย้าย
+        String selectSQL = "SELECT id, template_id, player_id, used, claimed_at FROM co_item_grant "
+                + "WHERE enable = 0 AND claimed_at < ? ORDER BY claimed_at LIMIT ?" + (isMySql() ? " FOR UPDATE" : "");
+        String insertSQL = (isMySql() ? "INSERT IGNORE" : "INSERT OR IGNORE")
+                + " INTO co_item_grant_archive (id, template_id, player_id, used, claimed_at, archived_at) VALUES (?, ?, ?, ?, ?, ?)";
+        String deleteSQL = "DELETE FROM co_item_grant WHERE id = ?";
+        long archivedAt = System.currentTimeMillis();
+        int archived = writeExclusive(connection -> {
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement(selectSQL);
+                 PreparedStatement insert = connection.prepareStatement(insertSQL);
+                 PreparedStatement delete = connection.prepareStatement(deleteSQL)) {
+                select.setLong(1, claimedBefore);
+                select.setInt(2, limit);
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt("id");
+                        insert.setInt(1, id);
+                        insert.setInt(2, rs.getInt("template_id"));
+                        insert.setObject(3, rs.getObject("player_id") == null ? null : rs.getInt("player_id"), Types.INTEGER);
+                        insert.setInt(4, rs.getInt("used"));
+                        insert.setLong(5, rs.getLong("claimed_at"));
+                        insert.setLong(6, archivedAt);
+                        insert.addBatch();
+                        delete.setInt(1, id);
+                        delete.addBatch();
+                        rows++;
+                    }
+                }
+                if (rows > 0) {
+                    insert.executeBatch();
+                    delete.executeBatch();
+                }
+                connection.commit();
+                return rows;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+        if (archived > 0) {
+            // แถวที่ย้ายออกหายไปจากรายการ /items
+            changeVersions.allChanged();
+        }
+        return archived;
+    }
+
+    /**
+     * Keyset page of a player's archived items ordered by id, starting after {@code afterId}.
+     */
+    public List<ArchivedItem> getArchivedItems(String player, int afterId, int limit) throws SQLException {
+        int playerId = getPlayerId(player);
+        if (playerId == 0) {
+            return new ArrayList<>();
         }
+        String query = "SELECT a.id, a.template_id, t.item_name, t.item_display, t.description, p.name AS player, t.command, "
+                + "a.used, a.claimed_at, a.archived_at FROM co_item_grant_archive a "
+                + "JOIN co_item_template t ON t.id = a.template_id LEFT JOIN co_player p ON p.id = a.player_id "
+                + "WHERE a.player_id = ? AND a.id > ? ORDER BY a.id LIMIT ?";
+        return read(player, connection -> {
+            List<ArchivedItem> items = new ArrayList<>();
+            try (PreparedStatement pstmt = connection.prepareStatement(query)) {
+                pstmt.setInt(1, playerId);
+                pstmt.setInt(2, afterId);
+                pstmt.setInt(3, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        items.add(new ArchivedItem(
+                                rs.getInt("id"),
+                                rs.getInt("template_id"),
+                                rs.getString("item_name"),
+                                rs.getString("item_display"),
+                                rs.getString("description"),
+                                rs.getString("player"),
+                                rs.getString("command"),
+                                rs.getInt("used"),
+                                rs.getLong("claimed_at"),
+                                rs.getLong("archived_at")
+                        ));
+                    }
+                }
+            }
+            return items;
+        });
     }
 }
@@ -0,0 +1,314 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small JDBC connection pool used by {@link CoDatabase}.
+ * Connections handed out by {@link #borrow()} go back to the pool when closed.
+ */
+public class ConnectionPool {
+    // ข้ามการตรวจสอบ connection ที่เพิ่งถูกใช้งาน เพื่อลด round trip
+    private static final long VALIDATION_BYPASS_MS = 500;
+    private static final long HOUSEKEEPING_INTERVAL_MS = 30000;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long connectionTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long leakDetectionThresholdMs;
+    private final int validationTimeoutSeconds;
+    private final Logger logger;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile List<String> connectionInitSql = Collections.emptyList();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long connectionTimeoutMs, long idleTimeoutMs, long leakDetectionThresholdMs,
+                          int validationTimeoutSeconds, Logger logger) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.connectionTimeoutMs = connectionTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leakDetectionThresholdMs = leakDetectionThresholdMs;
+        this.validationTimeoutSeconds = Math.max(1, validationTimeoutSeconds);
+        this.logger = logger;
+        this.permits = new Semaphore(this.maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-PoolHousekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Statements run once on every new connection, e.g. SQLite pragmas. Must be set before {@link #start()}.
+     */
+    public void setConnectionInitSql(List<String> connectionInitSql) {
+        this.connectionInitSql = connectionInitSql;
+    }
+
+    public void start() throws SQLException {
+        for (int i = 0; i < minSize; i++) {
+            idle.offerLast(new PooledConnection(openRawConnection()));
+        }
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_INTERVAL_MS,
+                HOUSEKEEPING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(connectionTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("Timed out after " + connectionTimeoutMs
+                        + "ms waiting for a database connection (active=" + borrowed.size() + ", max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                closeQuietly(pooled.raw);
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(openRawConnection());
+            }
+
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowTrace = leakDetectionThresholdMs > 0 ? new Exception("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastReturnedAt < VALIDATION_BYPASS_MS) {
+            return true;
+        }
+        try {
+            return pooled.raw.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled, boolean autoCommitChanged) {
+        if (!borrowed.remove(pooled)) {
+            return;
+        }
+
+        try {
+            boolean reusable = !closed && !pooled.raw.isClosed();
+            if (reusable && autoCommitChanged) {
+                try {
+                    if (!pooled.raw.getAutoCommit()) {
+                        pooled.raw.rollback();
+                        pooled.raw.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    reusable = false;
+                }
+            }
+
+            if (reusable) {
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                closeQuietly(pooled.raw);
+            }
+        } catch (SQLException e) {
+            closeQuietly(pooled.raw);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // ปิด connection ที่ว่างนานเกินไป แต่คงจำนวนขั้นต่ำไว้
+            Iterator<PooledConnection> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && idle.size() + borrowed.size() > minSize) {
+                PooledConnection pooled = iterator.next();
+                if (idleTimeoutMs > 0 && now - pooled.lastReturnedAt > idleTimeoutMs && idle.remove(pooled)) {
+                    closeQuietly(pooled.raw);
+                }
+            }
+
+            while (!closed && idle.size() + borrowed.size() < minSize) {
+                idle.offerLast(new PooledConnection(openRawConnection()));
+            }
+
+            if (leakDetectionThresholdMs > 0) {
+                for (PooledConnection pooled : borrowed) {
+                    if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionThresholdMs) {
+                        pooled.leakReported = true;
+                        logger.log(Level.WARNING, "Possible connection leak: a database connection has been held for "
+                                + (now - pooled.borrowedAt) + "ms", pooled.borrowTrace);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Connection pool housekeeping failed: " + e.getMessage());
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Connection pool housekeeping failed", e);
+        }
+    }
+
+    private Connection openRawConnection() throws SQLException {
+        Connection connection = username == null || username.isEmpty()
+                ? DriverManager.getConnection(url)
+                : DriverManager.getConnection(url, username, password);
+        if (!connectionInitSql.isEmpty()) {
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : connectionInitSql) {
+                    stmt.execute(sql);
+                }
+            } catch (SQLException e) {
+                closeQuietly(connection);
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled.raw);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private final class PooledConnection {
+        private final Connection raw;
+        private volatile long borrowedAt;
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+        private volatile Exception borrowTrace;
+        private volatile boolean leakReported;
+
+        private PooledConnection(Connection raw) {
+            this.raw = raw;
+        }
+
+        private Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    // ตัวห่อ Connection ที่คืน connection กลับเข้า pool เมื่อเรียก close()
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+        private boolean autoCommitChanged;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled, autoCommitChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.raw + "]";
+                case "setAutoCommit":
+                    autoCommitChanged = true;
+                    break;
+                default:
+                    break;
+            }
+
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            try {
+                return method.invoke(pooled.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
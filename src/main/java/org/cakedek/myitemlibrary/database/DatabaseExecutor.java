@@ -0,0 +1,92 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.bukkit.Bukkit;
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Runs database work off the server thread and hands results back to it.
+ */
+public class DatabaseExecutor {
+    private final MyItemLibrary plugin;
+    private final ExecutorService executor;
+
+    @FunctionalInterface
+    public interface SqlTask<T> {
+        T call() throws SQLException;
+    }
+
+    public DatabaseExecutor(MyItemLibrary plugin, int threads) {
+        this.plugin = plugin;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-DB-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs {@code task} on a database thread, then calls {@code onSuccess} or {@code onError}
+     * on the main server thread.
+     */
+    public <T> void submit(SqlTask<T> task, Consumer<T> onSuccess, Consumer<Exception> onError) {
+        try {
+            executor.execute(() -> {
+                try {
+                    T result = task.call();
+                    runOnMainThread(() -> onSuccess.accept(result));
+                } catch (Exception e) {
+                    runOnMainThread(() -> onError.accept(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            onError.accept(e);
+        }
+    }
+
+    /**
+     * Runs {@code task} on a database thread without handing anything back; failures are logged.
+     */
+    public void execute(SqlTask<?> task, String failureMessage) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.WARNING, failureMessage, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            plugin.getLogger().warning(failureMessage + " (executor is shut down)");
+        }
+    }
+
+    private void runOnMainThread(Runnable runnable) {
+        if (plugin.isEnabled()) {
+            Bukkit.getScheduler().runTask(plugin, runnable);
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Database tasks did not finish in time, forcing shutdown.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            plugin.getLogger().log(Level.WARNING, "Interrupted while waiting for database tasks.", e);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
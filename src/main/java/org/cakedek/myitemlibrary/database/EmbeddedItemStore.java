@@ -0,0 +1,2046 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Single-server item store kept in append-only, memory-mapped segment files ({@link SegmentLog}).
+ *
+ * <p>Every change appends a record; players, grants, jobs and idempotency keys are indexed in memory, while
+ * template text is read back from the mapped segments. A snapshot of the index is written
+ * periodically and on shutdown, so startup only replays records written after it. Writes
+ * that must apply together (bulk grants, job chunks, claim batches) are appended as one
+ * checksummed batch record. A background task rewrites sealed segments that are mostly
+ * dead records, such as superseded claims and deletions, and then removes them.
+ */
+public class EmbeddedItemStore implements ItemStore {
+    private static final byte PLAYER = 1;
+    private static final byte PLAYER_DELETE = 2;
+    private static final byte TEMPLATE = 3;
+    private static final byte GRANT = 4;
+    private static final byte GRANT_DELETE = 5;
+    private static final byte JOB = 6;
+    private static final byte BATCH = 7;
+    private static final byte IDEMPOTENCY = 8;
+    // สถานะของคีย์ที่ถูกปล่อยคืน เก็บไว้ใน index แทนระเบียนลบ จนกว่าจะหมดอายุไปพร้อมระเบียนเดิม
+    private static final int RELEASED = -1;
+    // ระเบียนใน log เก็บถาวร
+    private static final byte ARCHIVE_ITEM = 1;
+    private static final byte ARCHIVE_MOVE = 2;
+
+    private static final int MAX_BATCH_RECORDS = 4096;
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final int SNAPSHOT_MAGIC = 0x4D494C53;
+    private static final int SNAPSHOT_VERSION = 3;
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+
+    private final File directory;
+    private final int segmentSize;
+    private final long fsyncIntervalMs;
+    private final long compactionIntervalMs;
+    private final double compactionThreshold;
+    private final long snapshotIntervalMs;
+    private final Logger logger;
+
+    // การเขียนถือ write lock ส่วนการอ่านถือ read lock ข้อมูลด้านล่างทั้งหมดใช้ lock นี้
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private SegmentLog log;
+    // ไอเทมที่ย้ายไปเก็บถาวรอยู่ใน log แยก (embedded/archive) ซึ่งไม่ถูก compact
+    private SegmentLog archive;
+    private ScheduledExecutorService maintenance;
+    private final ItemSearchIndex searchIndex = new ItemSearchIndex();
+    private final ChangeVersions changeVersions = new ChangeVersions();
+
+    private final Map<Integer, PlayerEntry> players = new HashMap<>();
+    private final TreeMap<String, PlayerEntry> playersByName = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, PlayerEntry> playersByUuid = new HashMap<>();
+    private final Map<Integer, TemplateEntry> templates = new HashMap<>();
+    private final Map<String, Integer> templateIds = new HashMap<>();
+    private final TreeMap<Integer, GrantEntry> grants = new TreeMap<>();
+    private final Map<String, JobEntry> jobs = new HashMap<>();
+    private final Map<String, IdempotencyEntry> idempotencyKeys = new HashMap<>();
+    private final Map<Long, Tombstone> tombstones = new HashMap<>();
+    // ขนาดข้อมูลที่ยังใช้อยู่ในแต่ละ segment ใช้ตัดสินว่าควร compact หรือไม่
+    private final Map<Integer, Long> liveBytes = new HashMap<>();
+    // จำนวนรายการที่ยังชี้ไปยัง batch record แต่ละอัน
+    private final Map<Long, Integer> batchRefs = new HashMap<>();
+    // player id -> (item id -> ตำแหน่งใน log เก็บถาวร) สร้างใหม่ทุกครั้งที่เปิด
+    private final Map<Integer, TreeMap<Integer, Long>> archiveIndex = new HashMap<>();
+    private int nextPlayerId;
+    private int nextTemplateId;
+    private int nextGrantId;
+    private boolean unsynced;
+    private boolean changedSinceSnapshot;
+
+    private static final class PlayerEntry {
+        private final int id;
+        private String uuid;
+        private String name;
+        private long lastSeen;
+        private long location;
+        private int firstSegment;
+        private final GrantList items = new GrantList();
+
+        private PlayerEntry(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class TemplateEntry {
+        private final int id;
+        private String hash;
+        private long location;
+        private int firstSegment;
+
+        private TemplateEntry(int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class GrantEntry {
+        private final int id;
+        private int templateId;
+        private int playerId;
+        private boolean enable;
+        private int used;
+        private long claimedAt;
+        private long location;
+        private int firstSegment;
+
+        private GrantEntry(int id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * A player's grants ordered by id. A new grant always has the highest id yet, so adding one
+     * is an append; a TreeMap per player made bulk grants spend most of their time in inserts.
+     */
+    private static final class GrantList {
+        private GrantEntry[] entries = new GrantEntry[8];
+        private int size;
+
+        /**
+         * @return the index of {@code id}, or {@code -(insertion point) - 1} if it isn't here
+         */
+        private int indexOf(int id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midId = entries[mid].id;
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void put(GrantEntry grant) {
+            int index = size == 0 || entries[size - 1].id < grant.id ? -(size + 1) : indexOf(grant.id);
+            if (index >= 0) {
+                entries[index] = grant;
+                return;
+            }
+            index = -(index + 1);
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            System.arraycopy(entries, index, entries, index + 1, size - index);
+            entries[index] = grant;
+            size++;
+        }
+
+        private void remove(int id) {
+            int index = indexOf(id);
+            if (index >= 0) {
+                System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+                entries[--size] = null;
+            }
+        }
+
+        private List<GrantEntry> values() {
+            return Arrays.asList(entries).subList(0, size);
+        }
+
+        /**
+         * Grants with an id above {@code afterId}, in id order.
+         */
+        private List<GrantEntry> after(int afterId) {
+            int index = indexOf(afterId);
+            return Arrays.asList(entries).subList(index >= 0 ? index + 1 : -(index + 1), size);
+        }
+    }
+
+    private static final class JobEntry {
+        private GrantJob job;
+        private long location;
+        private int firstSegment;
+    }
+
+    private static final class IdempotencyEntry {
+        private long createdAt;
+        private int status;
+        private long location;
+        private int firstSegment;
+    }
+
+    // ระเบียนลบต้องอยู่จนกว่า segment ที่อาจมีข้อมูลเก่าของรายการนั้นจะหายไปหมด
+    private static final class Tombstone {
+        private long location;
+        private final int firstSegment;
+
+        private Tombstone(long location, int firstSegment) {
+            this.location = location;
+            this.firstSegment = firstSegment;
+        }
+    }
+
+    public EmbeddedItemStore(MyItemLibrary plugin) {
+        this(new File(plugin.getDataFolder(), "embedded"),
+                plugin.getConfig().getInt("c-database-embedded.segment-size-mb", 64) * 1024 * 1024,
+                plugin.getConfig().getLong("c-database-embedded.fsync-interval-ms", 1000),
+                plugin.getConfig().getLong("c-database-embedded.compaction-interval-seconds", 60) * 1000L,
+                plugin.getConfig().getDouble("c-database-embedded.compaction-threshold", 0.5),
+                plugin.getConfig().getLong("c-database-embedded.snapshot-interval-seconds", 300) * 1000L,
+                plugin.getLogger());
+    }
+
+    public EmbeddedItemStore(File directory, int segmentSize, long fsyncIntervalMs, long compactionIntervalMs,
+                             double compactionThreshold, long snapshotIntervalMs, Logger logger) {
+        this.directory = directory;
+        this.segmentSize = Math.max(1024 * 1024, segmentSize);
+        this.fsyncIntervalMs = Math.max(0, fsyncIntervalMs);
+        this.compactionIntervalMs = compactionIntervalMs;
+        this.compactionThreshold = compactionThreshold;
+        this.snapshotIntervalMs = snapshotIntervalMs;
+        this.logger = logger;
+    }
+
+    @Override
+    public boolean connect() {
+        close();
+        lock.writeLock().lock();
+        try {
+            log = new SegmentLog(directory, segmentSize, logger);
+            log.open();
+            long start = System.currentTimeMillis();
+            long replayFrom = loadSnapshot();
+            log.replay(replayFrom, (location, type, payload) -> {
+                applyRecord(location, type, payload);
+                changedSinceSnapshot = true;
+            });
+            attachGrants();
+
+            archiveIndex.clear();
+            archive = new SegmentLog(new File(directory, "archive"), segmentSize, logger);
+            archive.open();
+            archive.replay(SegmentLog.location(0, 0), this::indexArchiveRecord);
+            logger.info("Embedded store loaded " + grants.size() + " items for " + players.size() + " players in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.SEVERE, "Failed to open the embedded store in " + directory, e);
+            // ปล่อย mapping และ lock ของ log ที่เปิดไปแล้ว ไม่งั้นเปิดใหม่ไม่ได้จนกว่าจะรีสตาร์ท
+            if (log != null) {
+                log.close();
+                log = null;
+            }
+            if (archive != null) {
+                archive.close();
+                archive = null;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-EmbeddedMaintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncIntervalMs > 0) {
+            maintenance.scheduleWithFixedDelay(this::sync, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (compactionIntervalMs > 0) {
+            maintenance.scheduleWithFixedDelay(this::compact, compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (snapshotIntervalMs > 0) {
+            maintenance.scheduleWithFixedDelay(this::snapshotIfChanged, snapshotIntervalMs, snapshotIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean migrateSchema() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionValid() {
+        return log != null;
+    }
+
+    @Override
+    public void close() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            try {
+                maintenance.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            maintenance = null;
+        }
+        lock.writeLock().lock();
+        try {
+            if (log == null) {
+                return;
+            }
+            log.force();
+            try {
+                writeSnapshot();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to write the embedded store snapshot, the log will be replayed on the next start.", e);
+            }
+            log.close();
+            log = null;
+            if (archive != null) {
+                archive.close();
+                archive = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void addItem(String itemName, String itemDisplay, String description, String player, boolean enable, String command, int used) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            int playerId = getOrCreatePlayerLocked(player);
+            int templateId = getOrCreateTemplateLocked(itemName, itemDisplay, description, command);
+            appendGrant(nextGrantId + 1, templateId, playerId, enable, used, 0);
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        searchIndex.invalidatePlayer(player);
+        changeVersions.playerChanged(player);
+    }
+
+    @Override
+    public int addItems(List<ItemData> items) throws SQLException {
+        Set<String> players = new LinkedHashSet<>();
+        lock.writeLock().lock();
+        try {
+            for (int from = 0; from < items.size(); from += MAX_BATCH_RECORDS) {
+                List<byte[]> records = new ArrayList<>();
+                int id = nextGrantId;
+                for (ItemData item : items.subList(from, Math.min(from + MAX_BATCH_RECORDS, items.size()))) {
+                    int templateId = getOrCreateTemplateLocked(item.getItemName(), item.getItemDisplay(), item.getDescription(), item.getCommand());
+                    int playerId = getOrCreatePlayerLocked(item.getPlayer());
+                    records.add(record(GRANT, grantRecord(++id, templateId, playerId, item.isEnable(), item.getUsed(), 0)));
+                    players.add(item.getPlayer());
+                }
+                appendBatch(records);
+            }
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+            for (String player : players) {
+                searchIndex.invalidatePlayer(player);
+                changeVersions.playerChanged(player);
+            }
+        }
+        return items.size();
+    }
+
+    /**
+     * All grants go into one batch record, so after a crash either all of them are replayed or none.
+     */
+    @Override
+    public List<Integer> addItemBatch(List<ItemData> items) throws SQLException {
+        if (items.size() > MAX_BATCH_RECORDS) {
+            throw new SQLException("At most " + MAX_BATCH_RECORDS + " items can be added in one batch");
+        }
+        List<Integer> ids = new ArrayList<>(items.size());
+        Set<String> players = new LinkedHashSet<>();
+        lock.writeLock().lock();
+        try {
+            List<byte[]> records = new ArrayList<>(items.size());
+            int id = nextGrantId;
+            for (ItemData item : items) {
+                int templateId = getOrCreateTemplateLocked(item.getItemName(), item.getItemDisplay(), item.getDescription(), item.getCommand());
+                int playerId = getOrCreatePlayerLocked(item.getPlayer());
+                records.add(record(GRANT, grantRecord(++id, templateId, playerId, item.isEnable(), item.getUsed(), 0)));
+                ids.add(id);
+                players.add(item.getPlayer());
+            }
+            appendBatch(records);
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+            for (String player : players) {
+                searchIndex.invalidatePlayer(player);
+                changeVersions.playerChanged(player);
+            }
+        }
+        return ids;
+    }
+
+    // batch ต้องลงในระเบียนเดียวถึงจะ atomic
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_RECORDS;
+    }
+
+    @Override
+    public int grantTemplateToAllPlayers(int templateId, boolean enable, int used) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!templates.containsKey(templateId)) {
+                throw new SQLException("Unknown item template " + templateId);
+            }
+            List<Integer> playerIds = new ArrayList<>(playersByName.size());
+            for (PlayerEntry player : playersByName.values()) {
+                playerIds.add(player.id);
+            }
+            grantInBatches(templateId, playerIds, enable, used);
+            commit();
+            return playerIds.size();
+        } finally {
+            lock.writeLock().unlock();
+            searchIndex.clear();
+            changeVersions.allChanged();
+        }
+    }
+
+    private void grantInBatches(int templateId, List<Integer> playerIds, boolean enable, int used) throws SQLException {
+        for (int from = 0; from < playerIds.size(); from += MAX_BATCH_RECORDS) {
+            List<byte[]> records = new ArrayList<>();
+            int id = nextGrantId;
+            for (Integer playerId : playerIds.subList(from, Math.min(from + MAX_BATCH_RECORDS, playerIds.size()))) {
+                records.add(record(GRANT, grantRecord(++id, templateId, playerId, enable, used, 0)));
+            }
+            appendBatch(records);
+        }
+    }
+
+    @Override
+    public ItemData getItem(int id) {
+        lock.readLock().lock();
+        try {
+            GrantEntry grant = grants.get(id);
+            return grant == null ? null : toItemData(grant);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ItemData> getAllItems() {
+        lock.readLock().lock();
+        try {
+            List<ItemData> items = new ArrayList<>(grants.size());
+            for (GrantEntry grant : grants.values()) {
+                items.add(toItemData(grant));
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ItemData> getItemsAfter(int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<ItemData> items = new ArrayList<>(Math.min(limit, grants.size()));
+            for (GrantEntry grant : grants.tailMap(afterId, false).values()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+                items.add(toItemData(grant));
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ItemData> findItems(ItemQuery query) {
+        lock.readLock().lock();
+        try {
+            List<ItemData> items = new ArrayList<>();
+            Collection<GrantEntry> source;
+            if (query.getPlayer() != null) {
+                PlayerEntry player = playersByName.get(query.getPlayer());
+                if (player == null) {
+                    return items;
+                }
+                source = player.items.after(query.getAfterId());
+            } else {
+                source = grants.tailMap(query.getAfterId(), false).values();
+            }
+            for (GrantEntry grant : source) {
+                if (items.size() >= query.getLimit()) {
+                    break;
+                }
+                // ตัดด้วย enable ก่อน จะได้ไม่ต้องอ่าน template จากดิสก์
+                if (query.getEnabled() != null && query.getEnabled() != grant.enable) {
+                    continue;
+                }
+                ItemData item = toItemData(grant);
+                if (query.matches(item.getItemName(), item.getDescription(), item.isEnable())) {
+                    items.add(item);
+                }
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ItemData> getItemsByPlayer(String playerName) {
+        lock.readLock().lock();
+        try {
+            List<ItemData> items = new ArrayList<>();
+            PlayerEntry player = playerName == null ? null : playersByName.get(playerName);
+            if (player != null) {
+                for (GrantEntry grant : player.items.values()) {
+                    items.add(toItemData(grant));
+                }
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void streamItems(String playerName, ItemConsumer consumer) throws IOException {
+        // อ่านทีละชุดแล้วปล่อย read lock ก่อนเขียน การเขียนจะได้ไม่ต้องรอ client ที่ช้า
+        int afterId = 0;
+        while (true) {
+            List<ItemData> batch = findItems(new ItemQuery(playerName, null, null, null, afterId, STREAM_BATCH_SIZE));
+            for (ItemData item : batch) {
+                consumer.accept(item);
+            }
+            if (batch.size() < STREAM_BATCH_SIZE) {
+                return;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+    }
+
+    @Override
+    public List<ItemData> getListItemsPage(String player, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<ItemData> items = new ArrayList<>();
+            PlayerEntry owner = player == null ? null : playersByName.get(player);
+            if (owner == null) {
+                return items;
+            }
+            for (GrantEntry grant : owner.items.after(afterId)) {
+                if (items.size() >= limit) {
+                    break;
+                }
+                if (grant.enable) {
+                    items.add(toItemData(grant));
+                }
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countListItems(String player) {
+        lock.readLock().lock();
+        try {
+            PlayerEntry owner = player == null ? null : playersByName.get(player);
+            if (owner == null) {
+                return 0;
+            }
+            int count = 0;
+            for (GrantEntry grant : owner.items.values()) {
+                if (grant.enable) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ItemData> searchItems(String player, String query, int offset, int limit) throws SQLException {
+        return searchIndex.search(player, query, offset, limit, name -> getListItemsPage(name, 0, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public boolean deleteItem(int id) throws SQLException {
+        String player;
+        lock.writeLock().lock();
+        try {
+            GrantEntry grant = grants.get(id);
+            if (grant == null) {
+                return false;
+            }
+            player = playerName(grant.playerId);
+            long location = append(GRANT_DELETE, new RecordWriter().putInt(id).toBytes());
+            applyRecord(location, GRANT_DELETE, log.readPayload(location));
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        searchIndex.removeItem(id);
+        changeVersions.playerChanged(player);
+        return true;
+    }
+
+    @Override
+    public void updateItemEnabled(int id, boolean enabled) throws SQLException {
+        String player;
+        lock.writeLock().lock();
+        try {
+            GrantEntry grant = grants.get(id);
+            if (grant == null) {
+                return;
+            }
+            appendGrant(grant.id, grant.templateId, grant.playerId, enabled, grant.used, enabled ? 0 : System.currentTimeMillis());
+            commit();
+            player = playerName(grant.playerId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        searchIndex.removeItem(id);
+        if (player != null) {
+            searchIndex.invalidatePlayer(player);
+        }
+        changeVersions.playerChanged(player);
+    }
+
+    @Override
+    public boolean claimItem(int id) throws SQLException {
+        String player;
+        lock.writeLock().lock();
+        try {
+            GrantEntry grant = grants.get(id);
+            if (grant == null || !grant.enable) {
+                return false;
+            }
+            appendGrant(grant.id, grant.templateId, grant.playerId, false, grant.used - 1, System.currentTimeMillis());
+            commit();
+            player = playerName(grant.playerId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        searchIndex.removeItem(id);
+        changeVersions.playerChanged(player);
+        return true;
+    }
+
+    // การรับไอเทมเขียนลง log ได้ทันทีอยู่แล้ว ไม่ต้องผ่านคิว
+    @Override
+    public boolean claimCachedItem(int id) {
+        return false;
+    }
+
+    @Override
+    public List<Integer> applyClaims(List<Integer> ids) throws SQLException {
+        List<Integer> notApplied = new ArrayList<>();
+        Set<String> players = new LinkedHashSet<>();
+        long claimedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            List<byte[]> records = new ArrayList<>();
+            for (Integer id : ids) {
+                GrantEntry grant = grants.get(id);
+                if (grant == null || !grant.enable) {
+                    notApplied.add(id);
+                } else {
+                    records.add(record(GRANT, grantRecord(grant.id, grant.templateId, grant.playerId, false, grant.used - 1, claimedAt)));
+                    players.add(playerName(grant.playerId));
+                }
+                if (records.size() == MAX_BATCH_RECORDS) {
+                    appendBatch(records);
+                    records.clear();
+                }
+            }
+            appendBatch(records);
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Integer id : ids) {
+            searchIndex.removeItem(id);
+        }
+        for (String player : players) {
+            changeVersions.playerChanged(player);
+        }
+        return notApplied;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int archiveClaimedItems(long claimedBefore, int limit) throws SQLException {
+        List<Integer> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (GrantEntry grant : grants.values()) {
+                if (candidates.size() >= limit) {
+                    break;
+                }
+                if (isArchivable(grant, claimedBefore)) {
+                    candidates.add(grant.id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        long archivedAt = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            List<byte[]> deletes = new ArrayList<>();
+            for (Integer id : candidates) {
+                GrantEntry grant = grants.get(id);
+                if (grant == null || !isArchivable(grant, claimedBefore)) {
+                    continue;
+                }
+                long location = appendArchive(ARCHIVE_ITEM, new RecordWriter().putInt(grant.id).putInt(grant.templateId)
+                        .putInt(grant.playerId).putInt(grant.used).putLong(grant.claimedAt).putLong(archivedAt).toBytes());
+                archiveIndex.computeIfAbsent(grant.playerId, k -> new TreeMap<>()).put(grant.id, location);
+                deletes.add(record(GRANT_DELETE, new RecordWriter().putInt(grant.id).toBytes()));
+            }
+            if (deletes.isEmpty()) {
+                return 0;
+            }
+            // สำเนาในไฟล์เก็บถาวรต้องลงดิสก์ก่อนลบออกจาก log หลัก ถ้าล่มระหว่างนี้จะถูกย้ายซ้ำในรอบหน้า
+            archive.force();
+            appendBatch(deletes);
+            commit();
+            changeVersions.allChanged();
+            return deletes.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean isArchivable(GrantEntry grant, long claimedBefore) {
+        return !grant.enable && grant.claimedAt != 0 && grant.claimedAt < claimedBefore;
+    }
+
+    @Override
+    public List<ArchivedItem> getArchivedItems(String player, int afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<ArchivedItem> items = new ArrayList<>();
+            PlayerEntry owner = player == null ? null : playersByName.get(player);
+            TreeMap<Integer, Long> index = owner == null ? null : archiveIndex.get(owner.id);
+            if (index == null) {
+                return items;
+            }
+            for (Long location : index.tailMap(afterId, false).values()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+                ByteBuffer payload = archive.readPayload(location);
+                int id = payload.getInt();
+                int templateId = payload.getInt();
+                payload.getInt();
+                int used = payload.getInt();
+                long claimedAt = payload.getLong();
+                long archivedAt = payload.getLong();
+                ItemTemplate template = readTemplate(templateId);
+                items.add(new ArchivedItem(id, templateId, template.getItemName(), template.getItemDisplay(),
+                        template.getDescription(), owner.name, template.getCommand(), used, claimedAt, archivedAt));
+            }
+            return items;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long appendArchive(byte type, byte[] payload) throws SQLException {
+        try {
+            return archive.append(type, payload);
+        } catch (IOException e) {
+            throw new SQLException("Failed to write to the embedded store archive", e);
+        }
+    }
+
+    private void indexArchiveRecord(long location, byte type, ByteBuffer payload) {
+        if (type == ARCHIVE_ITEM) {
+            int id = payload.getInt();
+            payload.getInt();
+            archiveIndex.computeIfAbsent(payload.getInt(), k -> new TreeMap<>()).put(id, location);
+        } else if (type == ARCHIVE_MOVE) {
+            moveArchive(payload.getInt(), payload.getInt());
+        }
+    }
+
+    // ผู้เล่นที่ถูกรวมกัน ประวัติที่เก็บถาวรย้ายตามไปด้วย
+    private void moveArchive(int fromPlayerId, int toPlayerId) {
+        TreeMap<Integer, Long> moved = archiveIndex.remove(fromPlayerId);
+        if (moved != null) {
+            archiveIndex.computeIfAbsent(toPlayerId, k -> new TreeMap<>()).putAll(moved);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getOrCreateTemplateId(String itemName, String itemDisplay, String description, String command) throws SQLException {
+        String hash = ItemTemplate.contentHash(itemName, itemDisplay, description, command);
+        lock.readLock().lock();
+        try {
+            Integer id = templateIds.get(hash);
+            if (id != null) {
+                return id;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            int id = getOrCreateTemplateLocked(itemName, itemDisplay, description, command);
+            commit();
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int getOrCreateTemplateLocked(String itemName, String itemDisplay, String description, String command) throws SQLException {
+        String hash = ItemTemplate.contentHash(itemName, itemDisplay, description, command);
+        Integer existing = templateIds.get(hash);
+        if (existing != null) {
+            return existing;
+        }
+        int id = nextTemplateId + 1;
+        appendTemplate(id, hash, itemName, itemDisplay, description, command);
+        return id;
+    }
+
+    @Override
+    public ItemTemplate getTemplate(int id) {
+        lock.readLock().lock();
+        try {
+            return templates.containsKey(id) ? readTemplate(id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateTemplate(ItemTemplate template) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            if (!templates.containsKey(template.getId())) {
+                return false;
+            }
+            appendTemplate(template.getId(), ItemTemplate.contentHash(template.getItemName(), template.getItemDisplay(),
+                            template.getDescription(), template.getCommand()),
+                    template.getItemName(), template.getItemDisplay(), template.getDescription(), template.getCommand());
+            commit();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+            searchIndex.clear();
+            changeVersions.allChanged();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void registerPlayer(UUID uuid, String name) throws SQLException {
+        String uuidText = uuid.toString();
+        long now = System.currentTimeMillis();
+        List<String> changed = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            PlayerEntry byUuid = playersByUuid.get(uuidText);
+            PlayerEntry byName = playersByName.get(name);
+
+            if (byUuid == null && byName != null && byName.uuid == null) {
+                // ชื่อนี้เคยได้รับไอเทมก่อนผู้เล่นจะเข้าเซิร์ฟครั้งแรก
+                if (!name.equals(byName.name)) {
+                    changed.add(name);
+                }
+                appendPlayer(byName.id, uuidText, name, now);
+            } else {
+                if (byName != null && byName != byUuid) {
+                    if (byUuid != null && byName.uuid == null) {
+                        if (archiveIndex.containsKey(byName.id)) {
+                            appendArchive(ARCHIVE_MOVE, new RecordWriter().putInt(byName.id).putInt(byUuid.id).toBytes());
+                            archive.force();
+                            moveArchive(byName.id, byUuid.id);
+                        }
+                        List<byte[]> records = new ArrayList<>();
+                        for (GrantEntry grant : byName.items.values()) {
+                            records.add(record(GRANT, grantRecord(grant.id, grant.templateId, byUuid.id, grant.enable, grant.used, grant.claimedAt)));
+                        }
+                        records.add(record(PLAYER_DELETE, new RecordWriter().putInt(byName.id).toBytes()));
+                        appendBatch(records);
+                    } else {
+                        appendPlayer(byName.id, byName.uuid, null, byName.lastSeen);
+                    }
+                    changed.add(name);
+                }
+
+                if (byUuid == null) {
+                    appendPlayer(nextPlayerId + 1, uuidText, name, now);
+                } else {
+                    if (!name.equals(byUuid.name)) {
+                        changed.add(name);
+                        if (byUuid.name != null) {
+                            changed.add(byUuid.name);
+                        }
+                    }
+                    appendPlayer(byUuid.id, uuidText, name, now);
+                }
+            }
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (String changedName : changed) {
+            searchIndex.invalidatePlayer(changedName);
+            changeVersions.playerChanged(changedName);
+        }
+    }
+
+    private int getOrCreatePlayerLocked(String name) throws SQLException {
+        if (name == null) {
+            throw new SQLException("Player name is required");
+        }
+        PlayerEntry player = playersByName.get(name);
+        if (player != null) {
+            return player.id;
+        }
+        int id = nextPlayerId + 1;
+        appendPlayer(id, null, name, 0);
+        return id;
+    }
+
+    private String playerName(int playerId) {
+        PlayerEntry player = players.get(playerId);
+        return player == null ? null : player.name;
+    }
+
+    @Override
+    public int countPlayers() {
+        lock.readLock().lock();
+        try {
+            return playersByName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getPlayersAfter(String afterPlayer, int limit) {
+        lock.readLock().lock();
+        try {
+            List<String> names = new ArrayList<>();
+            for (PlayerEntry player : playersByName.tailMap(afterPlayer == null ? "" : afterPlayer, false).values()) {
+                if (names.size() >= limit) {
+                    break;
+                }
+                names.add(player.name);
+            }
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getAllPlayersEverJoined() {
+        lock.readLock().lock();
+        try {
+            List<String> names = new ArrayList<>(playersByName.size());
+            for (PlayerEntry player : playersByName.values()) {
+                names.add(player.name);
+            }
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void insertGrantJob(GrantJob job) throws SQLException {
+        writeJob(job);
+    }
+
+    @Override
+    public void updateGrantJobState(GrantJob job) throws SQLException {
+        writeJob(job);
+    }
+
+    private void writeJob(GrantJob job) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            long location = append(JOB, jobRecord(job));
+            applyRecord(location, JOB, log.readPayload(location));
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public GrantJob getGrantJob(String id) {
+        lock.readLock().lock();
+        try {
+            JobEntry entry = jobs.get(id);
+            return entry == null ? null : entry.job;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<GrantJob> getUnfinishedGrantJobs() {
+        lock.readLock().lock();
+        try {
+            List<GrantJob> unfinished = new ArrayList<>();
+            for (JobEntry entry : jobs.values()) {
+                if (entry.job.getStatus() == GrantJob.Status.QUEUED || entry.job.getStatus() == GrantJob.Status.RUNNING) {
+                    unfinished.add(entry.job);
+                }
+            }
+            unfinished.sort(Comparator.comparingLong(GrantJob::getCreatedAt));
+            return unfinished;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The chunk's grants and the job's new progress go into one batch record, so after a
+     * crash either both are replayed or neither is.
+     */
+    @Override
+    public void applyGrantJobChunk(GrantJob job, List<String> players) throws SQLException {
+        if (players.isEmpty()) {
+            return;
+        }
+        String lastPlayer = players.get(players.size() - 1);
+        lock.writeLock().lock();
+        try {
+            int templateId = getOrCreateTemplateLocked(job.getItemName(), job.getItemDisplay(), job.getDescription(), job.getCommand());
+            List<Integer> playerIds = new ArrayList<>(players.size());
+            for (String player : players) {
+                playerIds.add(getOrCreatePlayerLocked(player));
+            }
+
+            List<byte[]> records = new ArrayList<>(players.size() + 1);
+            int id = nextGrantId;
+            for (Integer playerId : playerIds) {
+                records.add(record(GRANT, grantRecord(++id, templateId, playerId, true, job.getUsed(), 0)));
+            }
+            int processed = job.getProcessed();
+            job.setProcessed(processed + players.size());
+            job.setLastPlayer(lastPlayer);
+            try {
+                records.add(record(JOB, jobRecord(job)));
+                appendBatch(records);
+            } catch (SQLException | RuntimeException e) {
+                job.setProcessed(processed);
+                throw e;
+            }
+            commit();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (String player : players) {
+            searchIndex.invalidatePlayer(player);
+            changeVersions.playerChanged(player);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void warmLibraryCache(String player) {
+    }
+
+    @Override
+    public void evictLibraryCache(String player) {
+    }
+
+    @Override
+    public LibraryCache getLibraryCache() {
+        return null;
+    }
+
+    @Override
+    public ChangeVersions getChangeVersions() {
+        return changeVersions;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public IdempotencyRecord insertIdempotencyKey(IdempotencyRecord record) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            IdempotencyEntry entry = idempotencyKeys.get(record.getKey());
+            if (entry != null && entry.status != RELEASED) {
+                return readIdempotency(entry);
+            }
+            writeIdempotency(record);
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void completeIdempotencyKey(IdempotencyRecord record) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            IdempotencyEntry entry = idempotencyKeys.get(record.getKey());
+            if (entry != null && entry.status != RELEASED && entry.createdAt == record.getCreatedAt()) {
+                writeIdempotency(record);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleteIdempotencyKey(String key, long createdAt) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            IdempotencyEntry entry = idempotencyKeys.get(key);
+            if (entry != null && entry.status != RELEASED && entry.createdAt == createdAt) {
+                writeIdempotency(new IdempotencyRecord(key, null, createdAt, RELEASED, null, null));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // คีย์ที่หมดอายุแล้วไม่ต้องมีระเบียนลบ ถ้า replay แล้วกลับมาก็ยังหมดอายุอยู่ดี
+    @Override
+    public int deleteIdempotencyKeysBefore(long createdBefore) {
+        lock.writeLock().lock();
+        try {
+            int removed = 0;
+            Iterator<IdempotencyEntry> entries = idempotencyKeys.values().iterator();
+            while (entries.hasNext()) {
+                IdempotencyEntry entry = entries.next();
+                if (entry.createdAt < createdBefore) {
+                    retire(entry.location);
+                    entries.remove();
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                changedSinceSnapshot = true;
+            }
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeIdempotency(IdempotencyRecord record) throws SQLException {
+        byte[] payload = new RecordWriter().putString(record.getKey()).putString(record.getRequestHash())
+                .putLong(record.getCreatedAt()).putInt(record.getStatus()).putString(record.getContentType())
+                .putString(record.getBody()).toBytes();
+        long location = append(IDEMPOTENCY, payload);
+        applyRecord(location, IDEMPOTENCY, log.readPayload(location));
+        commit();
+    }
+
+    private IdempotencyRecord readIdempotency(IdempotencyEntry entry) {
+        ByteBuffer payload = log.readPayload(entry.location);
+        return new IdempotencyRecord(getString(payload), getString(payload), payload.getLong(), payload.getInt(),
+                getString(payload), getString(payload));
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // การเขียนระเบียน (ต้องถือ write lock)
+
+    private long append(byte type, byte[] payload) throws SQLException {
+        if (log == null) {
+            throw new SQLException("Embedded store is closed");
+        }
+        try {
+            long location = log.append(type, payload);
+            unsynced = true;
+            changedSinceSnapshot = true;
+            return location;
+        } catch (IOException e) {
+            throw new SQLException("Failed to write to the embedded store", e);
+        }
+    }
+
+    private void appendPlayer(int id, String uuid, String name, long lastSeen) throws SQLException {
+        byte[] payload = new RecordWriter().putInt(id).putString(uuid).putString(name).putLong(lastSeen).toBytes();
+        long location = append(PLAYER, payload);
+        applyRecord(location, PLAYER, log.readPayload(location));
+    }
+
+    private void appendTemplate(int id, String hash, String itemName, String itemDisplay, String description, String command) throws SQLException {
+        byte[] payload = new RecordWriter().putInt(id).putString(hash).putString(itemName).putString(itemDisplay)
+                .putString(description).putString(command).toBytes();
+        long location = append(TEMPLATE, payload);
+        applyRecord(location, TEMPLATE, log.readPayload(location));
+    }
+
+    private void appendGrant(int id, int templateId, int playerId, boolean enable, int used, long claimedAt) throws SQLException {
+        long location = append(GRANT, grantRecord(id, templateId, playerId, enable, used, claimedAt));
+        applyRecord(location, GRANT, log.readPayload(location));
+    }
+
+    private void appendBatch(List<byte[]> records) throws SQLException {
+        if (records.isEmpty()) {
+            return;
+        }
+        RecordWriter writer = new RecordWriter().putInt(records.size());
+        for (byte[] record : records) {
+            writer.putBytes(record);
+        }
+        long location = append(BATCH, writer.toBytes());
+        applyRecord(location, BATCH, log.readPayload(location));
+    }
+
+    private static byte[] grantRecord(int id, int templateId, int playerId, boolean enable, int used, long claimedAt) {
+        return new RecordWriter().putInt(id).putInt(templateId).putInt(playerId).putBoolean(enable).putInt(used)
+                .putLong(claimedAt).toBytes();
+    }
+
+    private static byte[] jobRecord(GrantJob job) {
+        RecordWriter writer = new RecordWriter().putString(job.getId()).putString(job.getType().name())
+                .putString(job.getStatus().name()).putString(job.getItemName()).putString(job.getItemDisplay())
+                .putString(job.getDescription()).putString(job.getCommand()).putInt(job.getUsed())
+                .putInt(job.getPlayers().size());
+        for (String player : job.getPlayers()) {
+            writer.putString(player);
+        }
+        return writer.putString(job.getLastPlayer()).putInt(job.getTotal()).putInt(job.getProcessed())
+                .putLong(job.getCreatedAt()).putLong(job.getStartedAt()).putLong(job.getFinishedAt())
+                .putString(job.getError()).toBytes();
+    }
+
+    // ระเบียนย่อยใน batch: [type][length][payload]
+    private static byte[] record(byte type, byte[] payload) {
+        return new RecordWriter().putByte(type).putInt(payload.length).putBytes(payload).toBytes();
+    }
+
+    private void commit() {
+        if (fsyncIntervalMs == 0) {
+            log.force();
+            unsynced = false;
+        }
+    }
+
+    private void sync() {
+        lock.writeLock().lock();
+        try {
+            if (log != null && unsynced) {
+                log.force();
+                unsynced = false;
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to sync the embedded store.", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // นำระเบียนมาใช้กับ index ในหน่วยความจำ ใช้ทั้งตอนเขียนและตอน replay
+
+    private void applyRecord(long location, byte type, ByteBuffer payload) {
+        if (type == BATCH) {
+            int count = payload.getInt();
+            for (int i = 0; i < count; i++) {
+                byte subType = payload.get();
+                int length = payload.getInt();
+                ByteBuffer subPayload = payload.slice(payload.position(), length);
+                payload.position(payload.position() + length);
+                applyEntry(location, subType, subPayload);
+            }
+            addLive(location, count);
+        } else if (applyEntry(location, type, payload)) {
+            addLive(location, 1);
+        }
+    }
+
+    private boolean applyEntry(long location, byte type, ByteBuffer payload) {
+        int segment = SegmentLog.segmentId(location);
+        switch (type) {
+            case PLAYER: {
+                int id = payload.getInt();
+                PlayerEntry player = players.get(id);
+                if (player == null) {
+                    player = new PlayerEntry(id);
+                    player.firstSegment = segment;
+                    players.put(id, player);
+                } else {
+                    retire(player.location);
+                    if (player.name != null) {
+                        playersByName.remove(player.name, player);
+                    }
+                    if (player.uuid != null) {
+                        playersByUuid.remove(player.uuid, player);
+                    }
+                }
+                player.uuid = getString(payload);
+                player.name = getString(payload);
+                player.lastSeen = payload.getLong();
+                player.location = location;
+                if (player.name != null) {
+                    playersByName.put(player.name, player);
+                }
+                if (player.uuid != null) {
+                    playersByUuid.put(player.uuid, player);
+                }
+                nextPlayerId = Math.max(nextPlayerId, id);
+                return true;
+            }
+            case PLAYER_DELETE: {
+                int id = payload.getInt();
+                PlayerEntry player = players.remove(id);
+                if (player == null) {
+                    return false;
+                }
+                retire(player.location);
+                if (player.name != null) {
+                    playersByName.remove(player.name, player);
+                }
+                if (player.uuid != null) {
+                    playersByUuid.remove(player.uuid, player);
+                }
+                tombstones.put(tombstoneKey(PLAYER_DELETE, id), new Tombstone(location, player.firstSegment));
+                return true;
+            }
+            case TEMPLATE: {
+                int id = payload.getInt();
+                TemplateEntry template = templates.get(id);
+                if (template == null) {
+                    template = new TemplateEntry(id);
+                    template.firstSegment = segment;
+                    templates.put(id, template);
+                } else {
+                    retire(template.location);
+                    templateIds.remove(template.hash, id);
+                }
+                template.hash = getString(payload);
+                template.location = location;
+                templateIds.putIfAbsent(template.hash, id);
+                nextTemplateId = Math.max(nextTemplateId, id);
+                return true;
+            }
+            case GRANT: {
+                int id = payload.getInt();
+                // id ใหม่มากกว่าทุก id ที่เคยมี ไม่ต้องค้นใน grants ก่อน ช่วยให้แจกไอเทมจำนวนมากเร็วขึ้น
+                GrantEntry grant = id > nextGrantId ? null : grants.get(id);
+                int previousPlayerId = -1;
+                if (grant == null) {
+                    grant = new GrantEntry(id);
+                    grant.firstSegment = segment;
+                    grants.put(id, grant);
+                } else {
+                    retire(grant.location);
+                    previousPlayerId = grant.playerId;
+                }
+                grant.templateId = payload.getInt();
+                grant.playerId = payload.getInt();
+                // เจ้าของเดิมเก็บ grant นี้ไว้ ถ้าเจ้าของไม่เปลี่ยน put ด้านล่างจะแทนที่ตำแหน่งเดิม
+                if (previousPlayerId != -1 && previousPlayerId != grant.playerId) {
+                    PlayerEntry previous = players.get(previousPlayerId);
+                    if (previous != null) {
+                        previous.items.remove(id);
+                    }
+                }
+                grant.enable = payload.get() != 0;
+                grant.used = payload.getInt();
+                // ระเบียนที่เขียนก่อนมี claimed_at ไม่มีฟิลด์นี้
+                grant.claimedAt = payload.remaining() >= 8 ? payload.getLong() : 0;
+                grant.location = location;
+                PlayerEntry owner = players.get(grant.playerId);
+                if (owner != null) {
+                    owner.items.put(grant);
+                }
+                nextGrantId = Math.max(nextGrantId, id);
+                return true;
+            }
+            case GRANT_DELETE: {
+                int id = payload.getInt();
+                GrantEntry grant = grants.remove(id);
+                if (grant == null) {
+                    return false;
+                }
+                retire(grant.location);
+                PlayerEntry owner = players.get(grant.playerId);
+                if (owner != null) {
+                    owner.items.remove(id);
+                }
+                tombstones.put(tombstoneKey(GRANT_DELETE, id), new Tombstone(location, grant.firstSegment));
+                return true;
+            }
+            case JOB: {
+                GrantJob job = readJob(payload);
+                JobEntry entry = jobs.get(job.getId());
+                if (entry == null) {
+                    entry = new JobEntry();
+                    entry.firstSegment = segment;
+                    jobs.put(job.getId(), entry);
+                } else {
+                    retire(entry.location);
+                }
+                entry.job = job;
+                entry.location = location;
+                return true;
+            }
+            case IDEMPOTENCY: {
+                String key = getString(payload);
+                getString(payload);
+                IdempotencyEntry entry = idempotencyKeys.get(key);
+                if (entry == null) {
+                    entry = new IdempotencyEntry();
+                    entry.firstSegment = segment;
+                    idempotencyKeys.put(key, entry);
+                } else {
+                    retire(entry.location);
+                }
+                entry.createdAt = payload.getLong();
+                entry.status = payload.getInt();
+                entry.location = location;
+                return true;
+            }
+            default:
+                logger.warning("Skipping unknown embedded store record type " + type);
+                return false;
+        }
+    }
+
+    private void addLive(long location, int references) {
+        liveBytes.merge(SegmentLog.segmentId(location), (long) log.recordSize(location), Long::sum);
+        if (references > 1) {
+            batchRefs.put(location, references);
+        }
+    }
+
+    private void retire(long location) {
+        Integer references = batchRefs.get(location);
+        if (references != null && references > 1) {
+            batchRefs.put(location, references - 1);
+            return;
+        }
+        batchRefs.remove(location);
+        if (log.hasSegment(SegmentLog.segmentId(location))) {
+            liveBytes.merge(SegmentLog.segmentId(location), (long) -log.recordSize(location), Long::sum);
+        }
+    }
+
+    private static long tombstoneKey(byte type, int id) {
+        return ((long) type << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // การอ่าน (ต้องถือ read lock)
+
+    private ItemTemplate readTemplate(int id) {
+        ByteBuffer payload = log.readPayload(templates.get(id).location);
+        payload.getInt();
+        getString(payload);
+        return new ItemTemplate(id, getString(payload), getString(payload), getString(payload), getString(payload));
+    }
+
+    private ItemData toItemData(GrantEntry grant) {
+        ItemTemplate template = readTemplate(grant.templateId);
+        return new ItemData(grant.id, grant.templateId, template.getItemName(), template.getItemDisplay(),
+                template.getDescription(), playerName(grant.playerId), grant.enable, template.getCommand(), grant.used);
+    }
+
+    private static GrantJob readJob(ByteBuffer payload) {
+        String id = getString(payload);
+        GrantJob.Type type = GrantJob.Type.valueOf(getString(payload));
+        GrantJob.Status status = GrantJob.Status.valueOf(getString(payload));
+        String itemName = getString(payload);
+        String itemDisplay = getString(payload);
+        String description = getString(payload);
+        String command = getString(payload);
+        int used = payload.getInt();
+        int playerCount = payload.getInt();
+        List<String> players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            players.add(getString(payload));
+        }
+        String lastPlayer = getString(payload);
+        int total = payload.getInt();
+        int processed = payload.getInt();
+        long createdAt = payload.getLong();
+
+        GrantJob job = new GrantJob(id, type, itemName, itemDisplay, description, command, used, players, createdAt);
+        job.setStatus(status);
+        job.setLastPlayer(lastPlayer);
+        job.setTotal(total);
+        job.setProcessed(processed);
+        job.setStartedAt(payload.getLong());
+        job.setFinishedAt(payload.getLong());
+        job.setError(getString(payload));
+        return job;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Compaction
+
+    /**
+     * Copies the live records of mostly-dead sealed segments to the end of the log, writes a
+     * snapshot that no longer points into them, then deletes them.
+     */
+    private void compact() {
+        try {
+            List<Integer> candidates = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                if (log == null) {
+                    return;
+                }
+                Map<Integer, Integer> sizes = log.getSegmentSizes();
+                for (Integer segment : log.getSealedSegmentIds()) {
+                    long live = liveBytes.getOrDefault(segment, 0L);
+                    if (live < sizes.getOrDefault(segment, 0) * compactionThreshold) {
+                        candidates.add(segment);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (candidates.isEmpty()) {
+                return;
+            }
+
+            long reclaimed = 0;
+            for (Integer segment : candidates) {
+                // segment ที่ปิดแล้วไม่เปลี่ยนอีก อ่านนอก lock ได้ แต่ตรวจและคัดลอกแต่ละระเบียนภายใต้ write lock
+                log.forEachRecord(segment, (location, type, payload) -> {
+                    lock.writeLock().lock();
+                    try {
+                        if (type == BATCH) {
+                            int count = payload.getInt();
+                            for (int i = 0; i < count; i++) {
+                                byte subType = payload.get();
+                                int length = payload.getInt();
+                                ByteBuffer subPayload = payload.slice(payload.position(), length);
+                                payload.position(payload.position() + length);
+                                compactEntry(location, subType, subPayload);
+                            }
+                        } else {
+                            compactEntry(location, type, payload);
+                        }
+                    } catch (SQLException e) {
+                        throw new IOException(e);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                });
+                reclaimed += log.getSegmentSizes().getOrDefault(segment, 0);
+            }
+
+            lock.writeLock().lock();
+            try {
+                log.force();
+                unsynced = false;
+                writeSnapshot();
+                for (Integer segment : candidates) {
+                    liveBytes.remove(segment);
+                    log.deleteSegment(segment);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            logger.info("Compacted " + candidates.size() + " embedded store segment(s), reclaimed about " + (reclaimed / 1024) + " KB");
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Embedded store compaction failed.", e);
+        }
+    }
+
+    private void compactEntry(long source, byte type, ByteBuffer payload) throws SQLException {
+        ByteBuffer key = payload.duplicate();
+        switch (type) {
+            case PLAYER: {
+                PlayerEntry player = players.get(key.getInt());
+                if (player != null && player.location == source) {
+                    player.location = copyEntry(source, type, payload);
+                }
+                break;
+            }
+            case TEMPLATE: {
+                TemplateEntry template = templates.get(key.getInt());
+                if (template != null && template.location == source) {
+                    template.location = copyEntry(source, type, payload);
+                }
+                break;
+            }
+            case GRANT: {
+                GrantEntry grant = grants.get(key.getInt());
+                if (grant != null && grant.location == source) {
+                    grant.location = copyEntry(source, type, payload);
+                }
+                break;
+            }
+            case JOB: {
+                JobEntry entry = jobs.get(getString(key));
+                if (entry != null && entry.location == source) {
+                    entry.location = copyEntry(source, type, payload);
+                }
+                break;
+            }
+            case IDEMPOTENCY: {
+                IdempotencyEntry entry = idempotencyKeys.get(getString(key));
+                if (entry != null && entry.location == source) {
+                    entry.location = copyEntry(source, type, payload);
+                }
+                break;
+            }
+            case PLAYER_DELETE:
+            case GRANT_DELETE: {
+                long tombstoneKey = tombstoneKey(type, key.getInt());
+                Tombstone tombstone = tombstones.get(tombstoneKey);
+                if (tombstone == null || tombstone.location != source) {
+                    break;
+                }
+                // ยังมี segment เก่าที่อาจมีข้อมูลของรายการนี้ ต้องเก็บระเบียนลบไว้ต่อ
+                if (log.hasSegmentBetween(tombstone.firstSegment, SegmentLog.segmentId(source))) {
+                    tombstone.location = copyEntry(source, type, payload);
+                } else {
+                    tombstones.remove(tombstoneKey);
+                    retire(source);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private long copyEntry(long source, byte type, ByteBuffer payload) throws SQLException {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        long location = append(type, bytes);
+        retire(source);
+        addLive(location, 1);
+        return location;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+    // Snapshot ของ index
+
+    private void snapshotIfChanged() {
+        lock.writeLock().lock();
+        try {
+            if (log != null && changedSinceSnapshot) {
+                log.force();
+                unsynced = false;
+                writeSnapshot();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to write the embedded store snapshot.", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ต้องถือ write lock และ sync log แล้ว
+    private void writeSnapshot() throws IOException {
+        File target = new File(directory, SNAPSHOT_FILE);
+        File temp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(log.getEndLocation());
+            out.writeInt(nextPlayerId);
+            out.writeInt(nextTemplateId);
+            out.writeInt(nextGrantId);
+
+            out.writeInt(players.size());
+            for (PlayerEntry player : players.values()) {
+                out.writeInt(player.id);
+                writeString(out, player.uuid);
+                writeString(out, player.name);
+                out.writeLong(player.lastSeen);
+                out.writeLong(player.location);
+                out.writeInt(player.firstSegment);
+            }
+            out.writeInt(templates.size());
+            for (TemplateEntry template : templates.values()) {
+                out.writeInt(template.id);
+                writeString(out, template.hash);
+                out.writeLong(template.location);
+                out.writeInt(template.firstSegment);
+            }
+            out.writeInt(grants.size());
+            for (GrantEntry grant : grants.values()) {
+                out.writeInt(grant.id);
+                out.writeInt(grant.templateId);
+                out.writeInt(grant.playerId);
+                out.writeBoolean(grant.enable);
+                out.writeInt(grant.used);
+                out.writeLong(grant.claimedAt);
+                out.writeLong(grant.location);
+                out.writeInt(grant.firstSegment);
+            }
+            out.writeInt(jobs.size());
+            for (JobEntry entry : jobs.values()) {
+                out.writeLong(entry.location);
+                out.writeInt(entry.firstSegment);
+            }
+            out.writeInt(idempotencyKeys.size());
+            for (Map.Entry<String, IdempotencyEntry> entry : idempotencyKeys.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeLong(entry.getValue().createdAt);
+                out.writeInt(entry.getValue().status);
+                out.writeLong(entry.getValue().location);
+                out.writeInt(entry.getValue().firstSegment);
+            }
+            out.writeInt(tombstones.size());
+            for (Map.Entry<Long, Tombstone> entry : tombstones.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeLong(entry.getValue().location);
+                out.writeInt(entry.getValue().firstSegment);
+            }
+            out.writeInt(batchRefs.size());
+            for (Map.Entry<Long, Integer> entry : batchRefs.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+            out.writeInt(liveBytes.size());
+            for (Map.Entry<Integer, Long> entry : liveBytes.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changedSinceSnapshot = false;
+    }
+
+    /**
+     * Loads the index snapshot if it is intact and matches the segments on disk.
+     *
+     * @return where to start replaying the log
+     */
+    private long loadSnapshot() {
+        File file = new File(directory, SNAPSHOT_FILE);
+        if (file.isFile()) {
+            try {
+                return readSnapshot(file);
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Ignoring the embedded store snapshot (" + e.getMessage() + "), replaying the whole log.");
+            }
+        }
+        clearIndex();
+        return SegmentLog.location(0, 0);
+    }
+
+    private long readSnapshot(File file) throws IOException {
+        clearIndex();
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("unknown snapshot format");
+            }
+            long replayFrom = in.readLong();
+            nextPlayerId = in.readInt();
+            nextTemplateId = in.readInt();
+            nextGrantId = in.readInt();
+            List<Long> locations = new ArrayList<>();
+            locations.add(replayFrom);
+
+            for (int i = in.readInt(); i > 0; i--) {
+                PlayerEntry player = new PlayerEntry(in.readInt());
+                player.uuid = readString(in);
+                player.name = readString(in);
+                player.lastSeen = in.readLong();
+                player.location = in.readLong();
+                player.firstSegment = in.readInt();
+                players.put(player.id, player);
+                if (player.name != null) {
+                    playersByName.put(player.name, player);
+                }
+                if (player.uuid != null) {
+                    playersByUuid.put(player.uuid, player);
+                }
+                locations.add(player.location);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                TemplateEntry template = new TemplateEntry(in.readInt());
+                template.hash = readString(in);
+                template.location = in.readLong();
+                template.firstSegment = in.readInt();
+                templates.put(template.id, template);
+                locations.add(template.location);
+            }
+            // templateIds ชี้ไปยัง template ที่ id ต่ำสุดของแต่ละ hash เหมือนตอน replay
+            templates.values().stream().sorted(Comparator.comparingInt(t -> t.id))
+                    .forEach(template -> templateIds.putIfAbsent(template.hash, template.id));
+            for (int i = in.readInt(); i > 0; i--) {
+                GrantEntry grant = new GrantEntry(in.readInt());
+                grant.templateId = in.readInt();
+                grant.playerId = in.readInt();
+                grant.enable = in.readBoolean();
+                grant.used = in.readInt();
+                grant.claimedAt = in.readLong();
+                grant.location = in.readLong();
+                grant.firstSegment = in.readInt();
+                grants.put(grant.id, grant);
+                PlayerEntry owner = players.get(grant.playerId);
+                if (owner != null) {
+                    owner.items.put(grant);
+                }
+                locations.add(grant.location);
+            }
+            List<JobEntry> jobEntries = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                JobEntry entry = new JobEntry();
+                entry.location = in.readLong();
+                entry.firstSegment = in.readInt();
+                jobEntries.add(entry);
+                locations.add(entry.location);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String key = readString(in);
+                IdempotencyEntry entry = new IdempotencyEntry();
+                entry.createdAt = in.readLong();
+                entry.status = in.readInt();
+                entry.location = in.readLong();
+                entry.firstSegment = in.readInt();
+                idempotencyKeys.put(key, entry);
+                locations.add(entry.location);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                long key = in.readLong();
+                Tombstone tombstone = new Tombstone(in.readLong(), in.readInt());
+                tombstones.put(key, tombstone);
+                locations.add(tombstone.location);
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                batchRefs.put(in.readLong(), in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                liveBytes.put(in.readInt(), in.readLong());
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("checksum mismatch");
+            }
+
+            for (Long location : locations) {
+                if (!log.hasSegment(SegmentLog.segmentId(location))) {
+                    throw new IOException("segment " + SegmentLog.segmentId(location) + " is missing");
+                }
+            }
+            for (JobEntry entry : jobEntries) {
+                ByteBuffer payload = log.readPayload(entry.location);
+                if (log.readType(entry.location) == BATCH) {
+                    payload = findInBatch(payload, JOB);
+                }
+                entry.job = readJob(payload);
+                jobs.put(entry.job.getId(), entry);
+            }
+            return replayFrom;
+        } catch (EOFException e) {
+            throw new IOException("snapshot is truncated", e);
+        }
+    }
+
+    // job ที่บันทึกร่วมกับ chunk อยู่ใน batch เดียวกัน และมีได้อย่างมากหนึ่งรายการต่อ batch
+    private static ByteBuffer findInBatch(ByteBuffer payload, byte wanted) throws IOException {
+        int count = payload.getInt();
+        for (int i = 0; i < count; i++) {
+            byte type = payload.get();
+            int length = payload.getInt();
+            if (type == wanted) {
+                return payload.slice(payload.position(), length);
+            }
+            payload.position(payload.position() + length);
+        }
+        throw new IOException("batch record has no entry of type " + wanted);
+    }
+
+    // compaction ย้ายระเบียนไปท้าย log ตอน replay ไอเทมจึงอาจมาก่อนระเบียนของผู้เล่นเจ้าของ
+    private void attachGrants() {
+        for (GrantEntry grant : grants.values()) {
+            PlayerEntry owner = players.get(grant.playerId);
+            if (owner != null) {
+                owner.items.put(grant);
+            }
+        }
+    }
+
+    private void clearIndex() {
+        players.clear();
+        playersByName.clear();
+        playersByUuid.clear();
+        templates.clear();
+        templateIds.clear();
+        grants.clear();
+        jobs.clear();
+        idempotencyKeys.clear();
+        tombstones.clear();
+        liveBytes.clear();
+        batchRefs.clear();
+        nextPlayerId = 0;
+        nextTemplateId = 0;
+        nextGrantId = 0;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Growable buffer for encoding record payloads.
+     */
+    private static final class RecordWriter {
+        private ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        private RecordWriter putByte(byte value) {
+            ensure(1);
+            buffer.put(value);
+            return this;
+        }
+
+        private RecordWriter putBoolean(boolean value) {
+            return putByte((byte) (value ? 1 : 0));
+        }
+
+        private RecordWriter putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+            return this;
+        }
+
+        private RecordWriter putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+            return this;
+        }
+
+        private RecordWriter putString(String value) {
+            if (value == null) {
+                return putInt(-1);
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            return putBytes(bytes);
+        }
+
+        private RecordWriter putBytes(byte[] bytes) {
+            ensure(bytes.length);
+            buffer.put(bytes);
+            return this;
+        }
+
+        private byte[] toBytes() {
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class GrantJob {
+    public enum Type { ALL, ONLINE }
+
+    public enum Status { QUEUED, RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    private final String id;
+    private final Type type;
+    private final String itemName;
+    private final String itemDisplay;
+    private final String description;
+    private final String command;
+    private final int used;
+    // รายชื่อผู้เล่นที่เรียงแล้ว ใช้เฉพาะงานแบบ ONLINE
+    private final List<String> players;
+    private final long createdAt;
+    private volatile Status status;
+    private volatile String lastPlayer;
+    private volatile int total;
+    private volatile int processed;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+    private volatile boolean cancelRequested;
+
+    public GrantJob(String id, Type type, String itemName, String itemDisplay, String description, String command, int used, List<String> players, long createdAt) {
+        this.id = id;
+        this.type = type;
+        this.itemName = itemName;
+        this.itemDisplay = itemDisplay;
+        this.description = description;
+        this.command = command;
+        this.used = used;
+        this.createdAt = createdAt;
+        this.status = Status.QUEUED;
+        this.lastPlayer = "";
+
+        List<String> sorted = players == null ? new ArrayList<>() : new ArrayList<>(players);
+        Collections.sort(sorted);
+        this.players = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Returns up to {@code limit} snapshot players that sort after {@link #getLastPlayer()}.
+     */
+    public List<String> nextPlayers(int limit) {
+        int index = Collections.binarySearch(players, lastPlayer);
+        int from = index >= 0 ? index + 1 : -index - 1;
+        return players.subList(from, Math.min(from + limit, players.size()));
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.CANCELLED || status == Status.FAILED;
+    }
+
+    // Getters and setters
+    public String getId() { return id; }
+    public Type getType() { return type; }
+    public String getItemName() { return itemName; }
+    public String getItemDisplay() { return itemDisplay; }
+    public String getDescription() { return description; }
+    public String getCommand() { return command; }
+    public int getUsed() { return used; }
+    public List<String> getPlayers() { return players; }
+    public long getCreatedAt() { return createdAt; }
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+    public String getLastPlayer() { return lastPlayer; }
+    public void setLastPlayer(String lastPlayer) { this.lastPlayer = lastPlayer == null ? "" : lastPlayer; }
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+    public int getProcessed() { return processed; }
+    public void setProcessed(int processed) { this.processed = processed; }
+    public long getStartedAt() { return startedAt; }
+    public void setStartedAt(long startedAt) { this.startedAt = startedAt; }
+    public long getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(long finishedAt) { this.finishedAt = finishedAt; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+    public boolean isCancelRequested() { return cancelRequested; }
+    public void requestCancel() { this.cancelRequested = true; }
+}
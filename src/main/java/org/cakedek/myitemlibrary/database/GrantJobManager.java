@@ -0,0 +1,133 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.cakedek.myitemlibrary.MyItemLibrary;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Runs mass grants as background jobs. Progress is stored in {@code co_grant_job}
+ * after every chunk, so unfinished jobs are picked up again on the next start.
+ */
+public class GrantJobManager {
+    private static final int CHUNK_SIZE = 500;
+
+    private final MyItemLibrary plugin;
+    private final ItemStore database;
+    private final ExecutorService workers;
+    private final Map<String, GrantJob> activeJobs = new ConcurrentHashMap<>();
+
+    public GrantJobManager(MyItemLibrary plugin, ItemStore database, int threads) {
+        this.plugin = plugin;
+        this.database = database;
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-GrantJob-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public GrantJob submit(GrantJob.Type type, String itemName, String itemDisplay, String description, String command, int used, List<String> players) throws SQLException {
+        GrantJob job = new GrantJob(UUID.randomUUID().toString(), type, itemName, itemDisplay, description, command, used,
+                players, System.currentTimeMillis());
+        job.setTotal(type == GrantJob.Type.ALL ? database.countPlayers() : job.getPlayers().size());
+        database.insertGrantJob(job);
+        schedule(job);
+        return job;
+    }
+
+    public void resumeUnfinishedJobs() {
+        try {
+            for (GrantJob job : database.getUnfinishedGrantJobs()) {
+                plugin.getLogger().info("Resuming grant job " + job.getId() + " (" + job.getProcessed() + "/" + job.getTotal() + ")");
+                schedule(job);
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to load unfinished grant jobs.", e);
+        }
+    }
+
+    public GrantJob getJob(String id) throws SQLException {
+        GrantJob job = activeJobs.get(id);
+        return job != null ? job : database.getGrantJob(id);
+    }
+
+    /**
+     * @return {@code false} if the job is unknown or already finished
+     */
+    public boolean cancel(String id) {
+        GrantJob job = activeJobs.get(id);
+        if (job == null || job.isFinished()) {
+            return false;
+        }
+        job.requestCancel();
+        return true;
+    }
+
+    private void schedule(GrantJob job) {
+        activeJobs.put(job.getId(), job);
+        workers.execute(() -> run(job));
+    }
+
+    private void run(GrantJob job) {
+        try {
+            if (!job.isCancelRequested()) {
+                job.setStatus(GrantJob.Status.RUNNING);
+                if (job.getStartedAt() == 0) {
+                    job.setStartedAt(System.currentTimeMillis());
+                }
+                database.updateGrantJobState(job);
+
+                while (!job.isCancelRequested() && !Thread.currentThread().isInterrupted()) {
+                    List<String> players = job.getType() == GrantJob.Type.ALL
+                            ? database.getPlayersAfter(job.getLastPlayer(), CHUNK_SIZE)
+                            : job.nextPlayers(CHUNK_SIZE);
+                    if (players.isEmpty()) {
+                        break;
+                    }
+                    database.applyGrantJobChunk(job, players);
+                }
+            }
+
+            if (Thread.currentThread().isInterrupted() && !job.isCancelRequested()) {
+                // ปลั๊กอินกำลังปิด ปล่อยสถานะ RUNNING ไว้เพื่อทำงานต่อเมื่อเปิดใหม่
+                return;
+            }
+
+            job.setStatus(job.isCancelRequested() ? GrantJob.Status.CANCELLED : GrantJob.Status.COMPLETED);
+            job.setFinishedAt(System.currentTimeMillis());
+            database.updateGrantJobState(job);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Grant job " + job.getId() + " failed.", e);
+            job.setStatus(GrantJob.Status.FAILED);
+            job.setError(e.getMessage());
+            job.setFinishedAt(System.currentTimeMillis());
+            try {
+                database.updateGrantJobState(job);
+            } catch (SQLException ignored) {
+            }
+        } finally {
+            activeJobs.remove(job.getId());
+        }
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Grant jobs did not stop in time; they will resume on next start.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
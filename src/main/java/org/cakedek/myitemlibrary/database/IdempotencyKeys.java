@@ -0,0 +1,230 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the response to each API request sent with an {@code Idempotency-Key}, so a retry
+ * gets the same answer instead of granting again. Keys are stored in the item store, which
+ * decides atomically who takes a key, and expire after {@code ttlMs}; a bounded LRU of
+ * finished responses answers most retries without a database round trip.
+ *
+ * <p>A key is taken before the request runs and its response saved afterwards. If the server
+ * stops in between, the key stays pending until it expires and retries are refused rather
+ * than risking a second grant.
+ */
+public class IdempotencyKeys {
+    // เท่ากับความยาวคอลัมน์ idem_key ของ MySQL
+    public static final int MAX_KEY_LENGTH = 191;
+
+    private final ItemStore database;
+    private final Logger logger;
+    private final long ttlMs;
+    private final int cacheSize;
+    private final Map<String, IdempotencyRecord> cache;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong taken = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong inProgress = new AtomicLong();
+    private final AtomicLong mismatched = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong purged = new AtomicLong();
+
+    /**
+     * Outcome of {@link #take}: either the caller now holds the key, or another request already does.
+     */
+    public static final class Claim {
+        private final IdempotencyRecord record;
+        private final boolean owner;
+
+        private Claim(IdempotencyRecord record, boolean owner) {
+            this.record = record;
+            this.owner = owner;
+        }
+
+        public IdempotencyRecord getRecord() { return record; }
+
+        /**
+         * @return {@code true} if the caller took the key and must {@link #complete} or {@link #release} it
+         */
+        public boolean isOwner() { return owner; }
+    }
+
+    public IdempotencyKeys(ItemStore database, Logger logger, long ttlMs, int cacheSize, long purgeIntervalMs) {
+        this.database = database;
+        this.logger = logger;
+        this.ttlMs = Math.max(1000, ttlMs);
+        this.cacheSize = Math.max(0, cacheSize);
+        // access order = LRU
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > IdempotencyKeys.this.cacheSize;
+            }
+        };
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-Idempotency");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, purgeIntervalMs);
+        scheduler.scheduleWithFixedDelay(this::purgeSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes {@code key} for a request whose method, path and body hash to {@code requestHash},
+     * or returns the record of the request that already holds it.
+     */
+    public Claim take(String key, String requestHash) throws SQLException {
+        long now = System.currentTimeMillis();
+        IdempotencyRecord cached = getCached(key, now);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return existing(cached, requestHash);
+        }
+
+        IdempotencyRecord record = new IdempotencyRecord(key, requestHash, now, IdempotencyRecord.PENDING, null, null);
+        IdempotencyRecord stored = database.insertIdempotencyKey(record);
+        if (stored != null && isExpired(stored, now)) {
+            // หมดอายุแล้วแต่ยังไม่ถูก purge ลบเฉพาะรายการเดิม เผื่อมีคำขออื่นเพิ่งจองคีย์นี้ไป
+            database.deleteIdempotencyKey(key, stored.getCreatedAt());
+            stored = database.insertIdempotencyKey(record);
+        }
+        if (stored == null) {
+            taken.incrementAndGet();
+            return new Claim(record, true);
+        }
+        if (!stored.isPending()) {
+            cache(stored);
+        }
+        return existing(stored, requestHash);
+    }
+
+    private Claim existing(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            mismatched.incrementAndGet();
+        } else if (record.isPending()) {
+            inProgress.incrementAndGet();
+        } else {
+            replayed.incrementAndGet();
+        }
+        return new Claim(record, false);
+    }
+
+    /**
+     * Saves the response of a request that took its key, for retries to replay.
+     */
+    public void complete(IdempotencyRecord record) throws SQLException {
+        database.completeIdempotencyKey(record);
+        cache(record);
+    }
+
+    /**
+     * Frees a key whose request failed without a response worth keeping, so a retry runs again.
+     */
+    public void release(IdempotencyRecord record) throws SQLException {
+        database.deleteIdempotencyKey(record.getKey(), record.getCreatedAt());
+        released.incrementAndGet();
+    }
+
+    private IdempotencyRecord getCached(String key, long now) {
+        synchronized (cache) {
+            IdempotencyRecord record = cache.get(key);
+            if (record != null && isExpired(record, now)) {
+                cache.remove(key);
+                return null;
+            }
+            return record;
+        }
+    }
+
+    private void cache(IdempotencyRecord record) {
+        if (cacheSize == 0) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(record.getKey(), record);
+        }
+    }
+
+    private boolean isExpired(IdempotencyRecord record, long now) {
+        return record.getCreatedAt() < now - ttlMs;
+    }
+
+    private void purgeSafely() {
+        try {
+            purge();
+        } catch (SQLException | RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to remove expired idempotency keys.", e);
+        }
+    }
+
+    /**
+     * @return number of expired keys removed from the store
+     */
+    public int purge() throws SQLException {
+        long createdBefore = System.currentTimeMillis() - ttlMs;
+        synchronized (cache) {
+            cache.values().removeIf(record -> record.getCreatedAt() < createdBefore);
+        }
+        int removed = database.deleteIdempotencyKeysBefore(createdBefore);
+        purged.addAndGet(removed);
+        return removed;
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * SHA-256 of what makes two requests the same one, so a key reused for a different
+     * request can be told apart from a retry.
+     */
+    public static String requestHash(String method, String path, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((method + " " + path + "\n").getBytes(StandardCharsets.UTF_8));
+            digest.update(body);
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Stats
+    public long getTtlMs() { return ttlMs; }
+    public int getCacheSize() { return cacheSize; }
+    public int getCachedEntries() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+    public long getTaken() { return taken.get(); }
+    public long getReplayed() { return replayed.get(); }
+    public long getCacheHits() { return cacheHits.get(); }
+    public long getInProgress() { return inProgress.get(); }
+    public long getMismatched() { return mismatched.get(); }
+    public long getReleased() { return released.get(); }
+    public long getPurged() { return purged.get(); }
+}
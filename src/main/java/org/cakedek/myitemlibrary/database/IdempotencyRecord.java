@@ -0,0 +1,45 @@
+package org.cakedek.myitemlibrary.database;
+
+/**
+ * An {@code Idempotency-Key} taken by an API request, with the response it got once it finished.
+ */
+public class IdempotencyRecord {
+    /**
+     * Status of a request that is still running, or that stopped without an answer to keep.
+     */
+    public static final int PENDING = 0;
+
+    private final String key;
+    private final String requestHash;
+    private final long createdAt;
+    private final int status;
+    private final String contentType;
+    private final String body;
+
+    public IdempotencyRecord(String key, String requestHash, long createdAt, int status, String contentType, String body) {
+        this.key = key;
+        this.requestHash = requestHash;
+        this.createdAt = createdAt;
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    /**
+     * @return this record with the response the request finished with
+     */
+    public IdempotencyRecord complete(int status, String contentType, String body) {
+        return new IdempotencyRecord(key, requestHash, createdAt, status, contentType, body);
+    }
+
+    public boolean isPending() {
+        return status == PENDING;
+    }
+
+    public String getKey() { return key; }
+    public String getRequestHash() { return requestHash; }
+    public long getCreatedAt() { return createdAt; }
+    public int getStatus() { return status; }
+    public String getContentType() { return contentType; }
+    public String getBody() { return body; }
+}
@@ -0,0 +1,704 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Item store that keeps everything in memory and loses it on shutdown, for running the
+ * GUI and API in tests and benchmarks without a database. Each player's items are guarded
+ * by one of {@value #STRIPES} locks picked by player id, so players never wait on each other.
+ */
+public class InMemoryItemStore implements ItemStore {
+    private static final int STRIPES = 64;
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final Object[] locks = new Object[STRIPES];
+    // การลงทะเบียนและเปลี่ยนชื่อผู้เล่นทำทีละคน
+    private final Object playersLock = new Object();
+    private final AtomicInteger nextPlayerId = new AtomicInteger();
+    private final AtomicInteger nextItemId = new AtomicInteger();
+    private final AtomicInteger nextTemplateId = new AtomicInteger();
+
+    // เทียบชื่อแบบไม่สนตัวพิมพ์เหมือนฐานข้อมูล
+    private final NavigableMap<String, PlayerEntry> playersByName = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<String, PlayerEntry> playersByUuid = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Grant> grants = new ConcurrentSkipListMap<>();
+    private final Map<Integer, ItemTemplate> templates = new ConcurrentHashMap<>();
+    private final Map<String, Integer> templateIds = new ConcurrentHashMap<>();
+    private final Map<String, GrantJob> grantJobs = new ConcurrentHashMap<>();
+    private final Map<String, IdempotencyRecord> idempotencyKeys = new ConcurrentHashMap<>();
+    private final ItemSearchIndex searchIndex = new ItemSearchIndex();
+    private final ChangeVersions changeVersions = new ChangeVersions();
+
+    private static final class PlayerEntry {
+        private final int id;
+        private volatile String uuid;
+        private volatile String name;
+        // ใช้ได้เมื่อถือ lock ของผู้เล่นคนนี้เท่านั้น
+        private final NavigableMap<Integer, Grant> items = new TreeMap<>();
+        private final NavigableMap<Integer, ArchivedItem> archive = new TreeMap<>();
+        private boolean removed;
+
+        private PlayerEntry(int id, String uuid, String name) {
+            this.id = id;
+            this.uuid = uuid;
+            this.name = name;
+        }
+    }
+
+    private static final class Grant {
+        private final int id;
+        private final int templateId;
+        private volatile PlayerEntry owner;
+        private boolean enable;
+        private int used;
+        private long claimedAt;
+
+        private Grant(int id, int templateId, PlayerEntry owner, boolean enable, int used) {
+            this.id = id;
+            this.templateId = templateId;
+            this.owner = owner;
+            this.enable = enable;
+            this.used = used;
+        }
+    }
+
+    public InMemoryItemStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public boolean connect() {
+        return true;
+    }
+
+    @Override
+    public boolean migrateSchema() {
+        return true;
+    }
+
+    @Override
+    public boolean isConnectionValid() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void addItem(String itemName, String itemDisplay, String description, String player, boolean enable, String command, int used) {
+        int templateId = getOrCreateTemplateId(itemName, itemDisplay, description, command);
+        addGrant(player, templateId, enable, used);
+        searchIndex.invalidatePlayer(player);
+        changeVersions.playerChanged(player);
+    }
+
+    @Override
+    public int addItems(List<ItemData> items) {
+        for (ItemData item : items) {
+            addItem(item.getItemName(), item.getItemDisplay(), item.getDescription(), item.getPlayer(), item.isEnable(),
+                    item.getCommand(), item.getUsed());
+        }
+        return items.size();
+    }
+
+    // ตรวจข้อมูลมาแล้ว เพิ่มในหน่วยความจำไม่มีทางล้มเหลวกลางคัน
+    @Override
+    public List<Integer> addItemBatch(List<ItemData> items) {
+        List<Integer> ids = new ArrayList<>(items.size());
+        for (ItemData item : items) {
+            int templateId = getOrCreateTemplateId(item.getItemName(), item.getItemDisplay(), item.getDescription(), item.getCommand());
+            ids.add(addGrant(item.getPlayer(), templateId, item.isEnable(), item.getUsed()));
+            searchIndex.invalidatePlayer(item.getPlayer());
+            changeVersions.playerChanged(item.getPlayer());
+        }
+        return ids;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int grantTemplateToAllPlayers(int templateId, boolean enable, int used) {
+        int granted = 0;
+        for (PlayerEntry owner : playersByName.values()) {
+            if (addGrant(owner, templateId, enable, used) != 0) {
+                granted++;
+            }
+        }
+        searchIndex.clear();
+        changeVersions.allChanged();
+        return granted;
+    }
+
+    /**
+     * @return the new item id
+     */
+    private int addGrant(String player, int templateId, boolean enable, int used) {
+        if (player == null) {
+            throw new IllegalArgumentException("Player name is required");
+        }
+        // ถ้าผู้เล่นถูกรวมเข้ากับคนอื่นระหว่างนี้ ให้หาผู้เล่นใหม่อีกรอบ
+        int id;
+        while ((id = addGrant(getOrCreatePlayer(player), templateId, enable, used)) == 0) {
+            Thread.onSpinWait();
+        }
+        return id;
+    }
+
+    /**
+     * @return the new item id, or 0 if {@code owner} was merged away meanwhile
+     */
+    private int addGrant(PlayerEntry owner, int templateId, boolean enable, int used) {
+        synchronized (lockFor(owner)) {
+            if (owner.removed) {
+                return 0;
+            }
+            Grant grant = new Grant(nextItemId.incrementAndGet(), templateId, owner, enable, used);
+            owner.items.put(grant.id, grant);
+            grants.put(grant.id, grant);
+            return grant.id;
+        }
+    }
+
+    @Override
+    public ItemData getItem(int id) {
+        Grant grant = grants.get(id);
+        return grant == null ? null : withOwner(grant, owner -> toItemData(grant, owner));
+    }
+
+    @Override
+    public List<ItemData> getAllItems() {
+        List<ItemData> items = new ArrayList<>();
+        for (Grant grant : grants.values()) {
+            items.add(withOwner(grant, owner -> toItemData(grant, owner)));
+        }
+        return items;
+    }
+
+    @Override
+    public List<ItemData> getItemsAfter(int afterId, int limit) {
+        List<ItemData> items = new ArrayList<>();
+        for (Grant grant : grants.tailMap(afterId, false).values()) {
+            if (items.size() >= limit) {
+                break;
+            }
+            items.add(withOwner(grant, owner -> toItemData(grant, owner)));
+        }
+        return items;
+    }
+
+    @Override
+    public List<ItemData> findItems(ItemQuery query) {
+        List<ItemData> items = new ArrayList<>();
+        if (query.getPlayer() != null) {
+            PlayerEntry owner = playersByName.get(query.getPlayer());
+            if (owner == null) {
+                return items;
+            }
+            synchronized (lockFor(owner)) {
+                for (Grant grant : owner.items.tailMap(query.getAfterId(), false).values()) {
+                    if (items.size() >= query.getLimit()) {
+                        break;
+                    }
+                    ItemTemplate template = templates.get(grant.templateId);
+                    if (query.matches(template.getItemName(), template.getDescription(), grant.enable)) {
+                        items.add(toItemData(grant, owner));
+                    }
+                }
+            }
+            return items;
+        }
+        for (Grant grant : grants.tailMap(query.getAfterId(), false).values()) {
+            if (items.size() >= query.getLimit()) {
+                break;
+            }
+            ItemData item = withOwner(grant, owner -> toItemData(grant, owner));
+            if (query.matches(item.getItemName(), item.getDescription(), item.isEnable())) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public List<ItemData> getItemsByPlayer(String playerName) {
+        List<ItemData> items = new ArrayList<>();
+        PlayerEntry owner = playerName == null ? null : playersByName.get(playerName);
+        if (owner == null) {
+            return items;
+        }
+        synchronized (lockFor(owner)) {
+            for (Grant grant : owner.items.values()) {
+                items.add(toItemData(grant, owner));
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public void streamItems(String playerName, ItemConsumer consumer) throws IOException {
+        // คัดลอกทีละชุดแล้วปล่อย lock ก่อนเขียน จะได้ไม่ถือ lock ระหว่างรอ client
+        int afterId = 0;
+        while (true) {
+            List<ItemData> batch = findItems(new ItemQuery(playerName, null, null, null, afterId, STREAM_BATCH_SIZE));
+            for (ItemData item : batch) {
+                consumer.accept(item);
+            }
+            if (batch.size() < STREAM_BATCH_SIZE) {
+                return;
+            }
+            afterId = batch.get(batch.size() - 1).getId();
+        }
+    }
+
+    @Override
+    public List<ItemData> getListItemsPage(String player, int afterId, int limit) {
+        List<ItemData> items = new ArrayList<>();
+        PlayerEntry owner = player == null ? null : playersByName.get(player);
+        if (owner == null) {
+            return items;
+        }
+        synchronized (lockFor(owner)) {
+            for (Grant grant : owner.items.tailMap(afterId, false).values()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+                if (grant.enable) {
+                    items.add(toItemData(grant, owner));
+                }
+            }
+        }
+        return items;
+    }
+
+    @Override
+    public int countListItems(String player) {
+        PlayerEntry owner = player == null ? null : playersByName.get(player);
+        if (owner == null) {
+            return 0;
+        }
+        int count = 0;
+        synchronized (lockFor(owner)) {
+            for (Grant grant : owner.items.values()) {
+                if (grant.enable) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<ItemData> searchItems(String player, String query, int offset, int limit) throws SQLException {
+        return searchIndex.search(player, query, offset, limit, name -> getListItemsPage(name, 0, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public boolean deleteItem(int id) {
+        Grant grant = grants.remove(id);
+        if (grant == null) {
+            return false;
+        }
+        String player = withOwner(grant, owner -> {
+            owner.items.remove(id);
+            return owner.name;
+        });
+        searchIndex.removeItem(id);
+        changeVersions.playerChanged(player);
+        return true;
+    }
+
+    @Override
+    public void updateItemEnabled(int id, boolean enabled) {
+        Grant grant = grants.get(id);
+        if (grant == null) {
+            return;
+        }
+        String player = withOwner(grant, owner -> {
+            grant.enable = enabled;
+            grant.claimedAt = enabled ? 0 : System.currentTimeMillis();
+            return owner.name;
+        });
+        searchIndex.removeItem(id);
+        if (player != null) {
+            searchIndex.invalidatePlayer(player);
+        }
+        changeVersions.playerChanged(player);
+    }
+
+    @Override
+    public boolean claimItem(int id) {
+        Grant grant = grants.get(id);
+        if (grant == null) {
+            return false;
+        }
+        boolean claimed = withOwner(grant, owner -> {
+            if (!grant.enable) {
+                return false;
+            }
+            grant.enable = false;
+            grant.used--;
+            grant.claimedAt = System.currentTimeMillis();
+            return true;
+        });
+        if (claimed) {
+            searchIndex.removeItem(id);
+            changeVersions.playerChanged(withOwner(grant, owner -> owner.name));
+        }
+        return claimed;
+    }
+
+    // ไม่มีแคชแยก การรับไอเทมเขียนลงหน่วยความจำได้ทันทีอยู่แล้ว
+    @Override
+    public boolean claimCachedItem(int id) {
+        return false;
+    }
+
+    @Override
+    public List<Integer> applyClaims(List<Integer> ids) {
+        List<Integer> notApplied = new ArrayList<>();
+        for (Integer id : ids) {
+            if (!claimItem(id)) {
+                notApplied.add(id);
+            }
+        }
+        return notApplied;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int archiveClaimedItems(long claimedBefore, int limit) {
+        long archivedAt = System.currentTimeMillis();
+        int archived = 0;
+        for (Grant grant : grants.values()) {
+            if (archived >= limit) {
+                break;
+            }
+            boolean moved = withOwner(grant, owner -> {
+                if (grant.enable || grant.claimedAt == 0 || grant.claimedAt >= claimedBefore || grants.remove(grant.id) == null) {
+                    return false;
+                }
+                owner.items.remove(grant.id);
+                ItemTemplate template = templates.get(grant.templateId);
+                owner.archive.put(grant.id, new ArchivedItem(grant.id, grant.templateId, template.getItemName(),
+                        template.getItemDisplay(), template.getDescription(), owner.name, template.getCommand(),
+                        grant.used, grant.claimedAt, archivedAt));
+                return true;
+            });
+            if (moved) {
+                archived++;
+            }
+        }
+        if (archived > 0) {
+            changeVersions.allChanged();
+        }
+        return archived;
+    }
+
+    @Override
+    public List<ArchivedItem> getArchivedItems(String player, int afterId, int limit) {
+        List<ArchivedItem> items = new ArrayList<>();
+        PlayerEntry owner = player == null ? null : playersByName.get(player);
+        if (owner == null) {
+            return items;
+        }
+        synchronized (lockFor(owner)) {
+            for (ArchivedItem item : owner.archive.tailMap(afterId, false).values()) {
+                if (items.size() >= limit) {
+                    break;
+                }
+                item.setPlayer(owner.name);
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getOrCreateTemplateId(String itemName, String itemDisplay, String description, String command) {
+        return templateIds.computeIfAbsent(ItemTemplate.contentHash(itemName, itemDisplay, description, command), hash -> {
+            int id = nextTemplateId.incrementAndGet();
+            templates.put(id, new ItemTemplate(id, itemName, itemDisplay, description, command));
+            return id;
+        });
+    }
+
+    @Override
+    public ItemTemplate getTemplate(int id) {
+        ItemTemplate template = templates.get(id);
+        return template == null ? null : copy(template);
+    }
+
+    @Override
+    public boolean updateTemplate(ItemTemplate template) {
+        int id = template.getId();
+        if (templates.computeIfPresent(id, (key, current) -> copy(template)) == null) {
+            return false;
+        }
+        templateIds.values().removeIf(templateId -> templateId == id);
+        templateIds.putIfAbsent(ItemTemplate.contentHash(template.getItemName(), template.getItemDisplay(),
+                template.getDescription(), template.getCommand()), id);
+        searchIndex.clear();
+        changeVersions.allChanged();
+        return true;
+    }
+
+    private static ItemTemplate copy(ItemTemplate template) {
+        return new ItemTemplate(template.getId(), template.getItemName(), template.getItemDisplay(),
+                template.getDescription(), template.getCommand());
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void registerPlayer(UUID uuid, String name) {
+        String uuidText = uuid.toString();
+        List<String> changed = new ArrayList<>();
+        synchronized (playersLock) {
+            PlayerEntry byUuid = playersByUuid.get(uuidText);
+            PlayerEntry byName = playersByName.get(name);
+
+            if (byUuid == null && byName != null && byName.uuid == null) {
+                byName.uuid = uuidText;
+                playersByUuid.put(uuidText, byName);
+                if (!name.equals(byName.name)) {
+                    rename(byName, name);
+                    changed.add(name);
+                }
+            } else {
+                if (byName != null && byName != byUuid) {
+                    if (byUuid != null && byName.uuid == null) {
+                        merge(byName, byUuid);
+                    } else {
+                        playersByName.remove(byName.name, byName);
+                        byName.name = null;
+                    }
+                    changed.add(name);
+                }
+
+                if (byUuid == null) {
+                    PlayerEntry player = new PlayerEntry(nextPlayerId.incrementAndGet(), uuidText, name);
+                    playersByUuid.put(uuidText, player);
+                    playersByName.put(name, player);
+                } else if (!name.equals(byUuid.name)) {
+                    changed.add(name);
+                    if (byUuid.name != null) {
+                        changed.add(byUuid.name);
+                    }
+                    rename(byUuid, name);
+                }
+            }
+        }
+
+        for (String changedName : changed) {
+            searchIndex.invalidatePlayer(changedName);
+            changeVersions.playerChanged(changedName);
+        }
+    }
+
+    private PlayerEntry getOrCreatePlayer(String name) {
+        PlayerEntry player = playersByName.get(name);
+        if (player != null) {
+            return player;
+        }
+        synchronized (playersLock) {
+            return playersByName.computeIfAbsent(name, key -> new PlayerEntry(nextPlayerId.incrementAndGet(), null, name));
+        }
+    }
+
+    private void rename(PlayerEntry player, String name) {
+        if (player.name != null) {
+            playersByName.remove(player.name, player);
+        }
+        player.name = name;
+        playersByName.put(name, player);
+    }
+
+    // ย้ายไอเทมที่ได้รับก่อนเข้าเซิร์ฟไปให้ผู้เล่นตัวจริง
+    private void merge(PlayerEntry from, PlayerEntry to) {
+        Object first = lockFor(from.id < to.id ? from : to);
+        Object second = lockFor(from.id < to.id ? to : from);
+        synchronized (first) {
+            synchronized (second) {
+                for (Grant grant : from.items.values()) {
+                    grant.owner = to;
+                    to.items.put(grant.id, grant);
+                }
+                from.items.clear();
+                to.archive.putAll(from.archive);
+                from.archive.clear();
+                from.removed = true;
+            }
+        }
+        playersByName.remove(from.name, from);
+        from.name = null;
+    }
+
+    @Override
+    public int countPlayers() {
+        return playersByName.size();
+    }
+
+    @Override
+    public List<String> getPlayersAfter(String afterPlayer, int limit) {
+        List<String> players = new ArrayList<>();
+        for (PlayerEntry player : playersByName.tailMap(afterPlayer == null ? "" : afterPlayer, false).values()) {
+            if (players.size() >= limit) {
+                break;
+            }
+            players.add(player.name);
+        }
+        return players;
+    }
+
+    @Override
+    public List<String> getAllPlayersEverJoined() {
+        List<String> players = new ArrayList<>();
+        for (PlayerEntry player : playersByName.values()) {
+            players.add(player.name);
+        }
+        return players;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void insertGrantJob(GrantJob job) {
+        grantJobs.put(job.getId(), job);
+    }
+
+    @Override
+    public void updateGrantJobState(GrantJob job) {
+        grantJobs.put(job.getId(), job);
+    }
+
+    @Override
+    public GrantJob getGrantJob(String id) {
+        return grantJobs.get(id);
+    }
+
+    @Override
+    public List<GrantJob> getUnfinishedGrantJobs() {
+        List<GrantJob> jobs = new ArrayList<>();
+        for (GrantJob job : grantJobs.values()) {
+            if (job.getStatus() == GrantJob.Status.QUEUED || job.getStatus() == GrantJob.Status.RUNNING) {
+                jobs.add(job);
+            }
+        }
+        jobs.sort(Comparator.comparingLong(GrantJob::getCreatedAt));
+        return jobs;
+    }
+
+    @Override
+    public void applyGrantJobChunk(GrantJob job, List<String> players) {
+        if (players.isEmpty()) {
+            return;
+        }
+        int templateId = getOrCreateTemplateId(job.getItemName(), job.getItemDisplay(), job.getDescription(), job.getCommand());
+        for (String player : players) {
+            addGrant(player, templateId, true, job.getUsed());
+            searchIndex.invalidatePlayer(player);
+            changeVersions.playerChanged(player);
+        }
+        job.setProcessed(job.getProcessed() + players.size());
+        job.setLastPlayer(players.get(players.size() - 1));
+        grantJobs.put(job.getId(), job);
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public IdempotencyRecord insertIdempotencyKey(IdempotencyRecord record) {
+        return idempotencyKeys.putIfAbsent(record.getKey(), record);
+    }
+
+    @Override
+    public void completeIdempotencyKey(IdempotencyRecord record) {
+        idempotencyKeys.computeIfPresent(record.getKey(),
+                (key, stored) -> stored.getCreatedAt() == record.getCreatedAt() ? record : stored);
+    }
+
+    @Override
+    public void deleteIdempotencyKey(String key, long createdAt) {
+        idempotencyKeys.computeIfPresent(key, (k, stored) -> stored.getCreatedAt() == createdAt ? null : stored);
+    }
+
+    @Override
+    public int deleteIdempotencyKeysBefore(long createdBefore) {
+        int removed = 0;
+        for (IdempotencyRecord record : idempotencyKeys.values()) {
+            if (record.getCreatedAt() < createdBefore && idempotencyKeys.remove(record.getKey(), record)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void warmLibraryCache(String player) {
+    }
+
+    @Override
+    public void evictLibraryCache(String player) {
+    }
+
+    @Override
+    public LibraryCache getLibraryCache() {
+        return null;
+    }
+
+    @Override
+    public ChangeVersions getChangeVersions() {
+        return changeVersions;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
+    private Object lockFor(PlayerEntry player) {
+        return locks[player.id % STRIPES];
+    }
+
+    /**
+     * Runs {@code action} while holding the lock of the grant's current owner.
+     */
+    private <T> T withOwner(Grant grant, Function<PlayerEntry, T> action) {
+        while (true) {
+            PlayerEntry owner = grant.owner;
+            synchronized (lockFor(owner)) {
+                if (grant.owner == owner) {
+                    return action.apply(owner);
+                }
+            }
+        }
+    }
+
+    private ItemData toItemData(Grant grant, PlayerEntry owner) {
+        ItemTemplate template = templates.get(grant.templateId);
+        return new ItemData(grant.id, grant.templateId, template.getItemName(), template.getItemDisplay(),
+                template.getDescription(), owner.name, grant.enable, template.getCommand(), grant.used);
+    }
+}
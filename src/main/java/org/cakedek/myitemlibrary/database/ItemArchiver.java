@@ -0,0 +1,106 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves items claimed more than {@code minAgeMs} ago out of the live data on a fixed
+ * interval. Each run archives small batches, one short transaction each, with a pause in
+ * between so claims and grants are never held up for long.
+ */
+public class ItemArchiver {
+    private final ItemStore database;
+    private final Logger logger;
+    private final long minAgeMs;
+    private final int batchSize;
+    private final long batchPauseMs;
+    private final int maxBatchesPerRun;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong archivedItems = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private volatile long lastRunAt;
+    private volatile long lastRunMs;
+    private volatile int lastRunArchived;
+
+    public ItemArchiver(ItemStore database, Logger logger, long intervalMs, long minAgeMs, int batchSize,
+                        long batchPauseMs, int maxBatchesPerRun) {
+        this.database = database;
+        this.logger = logger;
+        this.minAgeMs = Math.max(0, minAgeMs);
+        this.batchSize = Math.max(1, batchSize);
+        this.batchPauseMs = Math.max(0, batchPauseMs);
+        this.maxBatchesPerRun = Math.max(1, maxBatchesPerRun);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "MyItemLibrary-Archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, intervalMs);
+        scheduler.scheduleWithFixedDelay(this::runSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void runSafely() {
+        try {
+            run();
+        } catch (SQLException e) {
+            failedRuns.incrementAndGet();
+            logger.log(Level.WARNING, "Failed to archive claimed items.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return number of items archived
+     */
+    public int run() throws SQLException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long claimedBefore = start - minAgeMs;
+        int archived = 0;
+        for (int batch = 0; batch < maxBatchesPerRun && !Thread.currentThread().isInterrupted(); batch++) {
+            int moved = database.archiveClaimedItems(claimedBefore, batchSize);
+            archived += moved;
+            archivedItems.addAndGet(moved);
+            if (moved < batchSize) {
+                break;
+            }
+            if (batchPauseMs > 0) {
+                Thread.sleep(batchPauseMs);
+            }
+        }
+
+        runs.incrementAndGet();
+        lastRunAt = start;
+        lastRunMs = System.currentTimeMillis() - start;
+        lastRunArchived = archived;
+        if (archived > 0) {
+            logger.info("Archived " + archived + " claimed items in " + lastRunMs + "ms");
+        }
+        return archived;
+    }
+
+    public void shutdown() {
+        // งานที่ค้างอยู่หยุดได้ทุกเมื่อ แต่ละชุดถูก commit แยกกันแล้ว
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Stats
+    public long getRuns() { return runs.get(); }
+    public long getArchivedItems() { return archivedItems.get(); }
+    public long getFailedRuns() { return failedRuns.get(); }
+    public long getLastRunAt() { return lastRunAt; }
+    public long getLastRunMs() { return lastRunMs; }
+    public int getLastRunArchived() { return lastRunArchived; }
+}
@@ -2,6 +2,7 @@ package org.cakedek.myitemlibrary.database;
 
 public class ItemData {
     private int id;
+    private int templateId;
     private String itemName;
     private String itemDisplay;
     private String description;
@@ -10,8 +11,9 @@ public class ItemData {
     private String command;
     private int used;
 
-    public ItemData(int id, String itemName, String itemDisplay, String description, String player, boolean enable, String command, int used) {
+    public ItemData(int id, int templateId, String itemName, String itemDisplay, String description, String player, boolean enable, String command, int used) {
         this.id = id;
+        this.templateId = templateId;
         this.itemName = itemName;
         this.itemDisplay = itemDisplay;
         this.description = description;
@@ -24,6 +26,8 @@ public class ItemData {
     // Getters and setters
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
+    public int getTemplateId() { return templateId; }
+    public void setTemplateId(int templateId) { this.templateId = templateId; }
     public String getItemName() { return itemName; }
     public void setItemName(String itemName) { this.itemName = itemName; }
     public String getItemDisplay() { return itemDisplay; }
@@ -0,0 +1,57 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.util.Locale;
+
+/**
+ * Filters for {@link ItemStore#findItems}: one keyset page of items ordered by id.
+ * {@code null} filters match everything.
+ */
+public class ItemQuery {
+    private final String player;
+    private final Boolean enabled;
+    private final String itemName;
+    private final String search;
+    private final int afterId;
+    private final int limit;
+
+    /**
+     * @param itemName exact item name, ignoring case
+     * @param search   matched anywhere in the item name or description, ignoring case
+     */
+    public ItemQuery(String player, Boolean enabled, String itemName, String search, int afterId, int limit) {
+        this.player = player;
+        this.enabled = enabled;
+        this.itemName = itemName == null || itemName.isEmpty() ? null : itemName;
+        this.search = search == null || search.isEmpty() ? null : search;
+        this.afterId = Math.max(0, afterId);
+        this.limit = Math.max(1, limit);
+    }
+
+    public String getPlayer() { return player; }
+    public Boolean getEnabled() { return enabled; }
+    public String getItemName() { return itemName; }
+    public String getSearch() { return search; }
+    public int getAfterId() { return afterId; }
+    public int getLimit() { return limit; }
+
+    /**
+     * The filters other than player, for stores that scan items in memory.
+     */
+    public boolean matches(String name, String description, boolean enable) {
+        if (enabled != null && enabled != enable) {
+            return false;
+        }
+        if (itemName != null && !itemName.equalsIgnoreCase(name)) {
+            return false;
+        }
+        if (search != null) {
+            String term = search.toLowerCase(Locale.ROOT);
+            return contains(name, term) || contains(description, term);
+        }
+        return true;
+    }
+
+    private static boolean contains(String text, String lowerCaseTerm) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(lowerCaseTerm);
+    }
+}
@@ -0,0 +1,181 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-process search index used when the database has no full-text support.
+ * A player's enabled items are indexed on first search and the index is dropped
+ * whenever that player's items change.
+ */
+public class ItemSearchIndex {
+    private static final int MAX_INDEXED_PLAYERS = 256;
+    private static final double NAME_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    private static final double EXACT_BONUS = 0.5;
+
+    private final Map<String, PlayerIndex> players = new LinkedHashMap<String, PlayerIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PlayerIndex> eldest) {
+            return size() > MAX_INDEXED_PLAYERS;
+        }
+    };
+    private final Map<Integer, String> itemOwners = new HashMap<>();
+    // เพิ่มขึ้นทุกครั้งที่มีการล้าง index กันไม่ให้เก็บ index ที่โหลดมาก่อนข้อมูลเปลี่ยน
+    private long generation;
+
+    @FunctionalInterface
+    public interface Loader {
+        List<ItemData> load(String player) throws SQLException;
+    }
+
+    public List<ItemData> search(String player, String query, int offset, int limit, Loader loader) throws SQLException {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        PlayerIndex index;
+        long loadGeneration;
+        synchronized (this) {
+            index = players.get(player);
+            loadGeneration = generation;
+        }
+        if (index == null) {
+            index = new PlayerIndex(loader.load(player));
+            synchronized (this) {
+                if (loadGeneration == generation) {
+                    players.put(player, index);
+                    for (Integer id : index.items.keySet()) {
+                        itemOwners.put(id, player);
+                    }
+                }
+            }
+        }
+
+        List<ItemData> results = index.search(terms);
+        if (offset >= results.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(results.subList(offset, Math.min(offset + limit, results.size())));
+    }
+
+    public synchronized void invalidatePlayer(String player) {
+        generation++;
+        PlayerIndex removed = players.remove(player);
+        if (removed != null) {
+            itemOwners.keySet().removeAll(removed.items.keySet());
+        }
+    }
+
+    public synchronized void removeItem(int id) {
+        generation++;
+        String owner = itemOwners.remove(id);
+        if (owner != null) {
+            invalidatePlayer(owner);
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        players.clear();
+        itemOwners.clear();
+    }
+
+    /**
+     * Lower-cases the text, drops colour codes and splits it into letter/digit runs.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        String cleaned = text.replaceAll("[&§][0-9a-fk-orA-FK-OR]", " ").toLowerCase(Locale.ROOT);
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < cleaned.length(); i++) {
+            char c = cleaned.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                current.append(c);
+            } else if (current.length() > 0) {
+                tokens.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+
+    private static final class PlayerIndex {
+        private final Map<Integer, ItemData> items = new HashMap<>();
+        private final NavigableMap<String, Map<Integer, Double>> postings = new TreeMap<>();
+
+        private PlayerIndex(List<ItemData> rows) {
+            for (ItemData item : rows) {
+                items.put(item.getId(), item);
+                addPostings(item.getId(), item.getItemName(), NAME_WEIGHT);
+                addPostings(item.getId(), item.getDescription(), DESCRIPTION_WEIGHT);
+            }
+        }
+
+        private void addPostings(int id, String text, double weight) {
+            for (String token : tokenize(text)) {
+                postings.computeIfAbsent(token, t -> new HashMap<>()).merge(id, weight, Double::sum);
+            }
+        }
+
+        // ทุกคำค้นต้องตรง (AND) โดยเทียบแบบขึ้นต้นด้วยคำค้น
+        private List<ItemData> search(List<String> terms) {
+            Map<Integer, Double> scores = null;
+            for (String term : terms) {
+                Map<Integer, Double> termScores = new HashMap<>();
+                for (Map.Entry<String, Map<Integer, Double>> entry : postings.subMap(term, true, term + Character.MAX_VALUE, false).entrySet()) {
+                    double bonus = entry.getKey().equals(term) ? EXACT_BONUS : 0.0;
+                    for (Map.Entry<Integer, Double> posting : entry.getValue().entrySet()) {
+                        termScores.merge(posting.getKey(), posting.getValue() + bonus, Double::sum);
+                    }
+                }
+
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    Set<Integer> matched = new HashSet<>(scores.keySet());
+                    matched.retainAll(termScores.keySet());
+                    Map<Integer, Double> combined = new HashMap<>();
+                    for (Integer id : matched) {
+                        combined.put(id, scores.get(id) + termScores.get(id));
+                    }
+                    scores = combined;
+                }
+                if (scores.isEmpty()) {
+                    return Collections.emptyList();
+                }
+            }
+
+            Map<Integer, Double> finalScores = scores;
+            List<Integer> ids = new ArrayList<>(finalScores.keySet());
+            ids.sort((a, b) -> {
+                int byScore = Double.compare(finalScores.get(b), finalScores.get(a));
+                return byScore != 0 ? byScore : Integer.compare(a, b);
+            });
+
+            List<ItemData> results = new ArrayList<>(ids.size());
+            for (Integer id : ids) {
+                results.add(items.get(id));
+            }
+            return results;
+        }
+    }
+}
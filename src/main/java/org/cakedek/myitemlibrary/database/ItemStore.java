@@ -0,0 +1,218 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Storage engine behind the GUI, the API and background jobs. {@code c-database-mode}
+ * picks the implementation: {@link CoDatabase} for MySQL and Local (SQLite),
+ * {@link EmbeddedItemStore} for single-server log files, or {@link InMemoryItemStore}
+ * for tests and benchmarks.
+ */
+public interface ItemStore {
+
+    /**
+     * Receives items one at a time from {@link #streamItems}.
+     */
+    @FunctionalInterface
+    interface ItemConsumer {
+        void accept(ItemData item) throws IOException;
+    }
+
+    boolean connect();
+
+    /**
+     * Brings the storage up to date; called once after {@link #connect()}.
+     */
+    boolean migrateSchema();
+
+    boolean isConnectionValid();
+
+    void close();
+
+    // Items
+
+    void addItem(String itemName, String itemDisplay, String description, String player, boolean enable, String command, int used) throws SQLException;
+
+    /**
+     * @return number of items granted
+     */
+    int grantTemplateToAllPlayers(int templateId, boolean enable, int used) throws SQLException;
+
+    /**
+     * Inserts items that each carry their own definition and owner. Ids in {@code items} are ignored.
+     *
+     * @return number of items inserted
+     */
+    int addItems(List<ItemData> items) throws SQLException;
+
+    /**
+     * Inserts items that each carry their own definition and owner in one transaction: either
+     * all of them are added or none are. Ids in {@code items} are ignored.
+     *
+     * @return the new item ids, in the order of {@code items}
+     */
+    List<Integer> addItemBatch(List<ItemData> items) throws SQLException;
+
+    /**
+     * @return the most items {@link #addItemBatch} takes in one call
+     */
+    int getMaxBatchSize();
+
+    ItemData getItem(int id) throws SQLException;
+
+    List<ItemData> getAllItems() throws SQLException;
+
+    /**
+     * Page over every item ordered by id, starting after {@code afterId}.
+     */
+    List<ItemData> getItemsAfter(int afterId, int limit) throws SQLException;
+
+    /**
+     * Page of items matching {@code query}, ordered by id.
+     */
+    List<ItemData> findItems(ItemQuery query) throws SQLException;
+
+    List<ItemData> getItemsByPlayer(String playerName) throws SQLException;
+
+    /**
+     * Hands every item, or every item of {@code playerName}, to {@code consumer} in id order
+     * without collecting them into a list first. An {@link IOException} from the consumer stops
+     * the stream and is rethrown.
+     *
+     * @param playerName whose items to stream, or {@code null} for all items
+     */
+    void streamItems(String playerName, ItemConsumer consumer) throws SQLException, IOException;
+
+    /**
+     * Page of a player's enabled items ordered by id, starting after {@code afterId}.
+     */
+    List<ItemData> getListItemsPage(String player, int afterId, int limit) throws SQLException;
+
+    int countListItems(String player) throws SQLException;
+
+    /**
+     * Ranked search over a player's enabled items, matching every term as a prefix.
+     */
+    List<ItemData> searchItems(String player, String query, int offset, int limit) throws SQLException;
+
+    boolean deleteItem(int id) throws SQLException;
+
+    void updateItemEnabled(int id, boolean enabled) throws SQLException;
+
+    // Claims
+
+    /**
+     * @return {@code true} if this call claimed the item, {@code false} if it was already claimed or deleted
+     */
+    boolean claimItem(int id) throws SQLException;
+
+    /**
+     * Takes an item out of the in-memory view for a queued claim.
+     *
+     * @return {@code false} if the claim must go straight to {@link #claimItem}
+     */
+    boolean claimCachedItem(int id);
+
+    /**
+     * Applies queued claims.
+     *
+     * @return ids that were already claimed or deleted
+     */
+    List<Integer> applyClaims(List<Integer> ids) throws SQLException;
+
+    // Archive
+
+    /**
+     * Moves up to {@code limit} items claimed before {@code claimedBefore} out of the live data.
+     *
+     * @return number of items archived
+     */
+    int archiveClaimedItems(long claimedBefore, int limit) throws SQLException;
+
+    /**
+     * Page of a player's archived items ordered by id, starting after {@code afterId}.
+     */
+    List<ArchivedItem> getArchivedItems(String player, int afterId, int limit) throws SQLException;
+
+    // Templates
+
+    int getOrCreateTemplateId(String itemName, String itemDisplay, String description, String command) throws SQLException;
+
+    ItemTemplate getTemplate(int id) throws SQLException;
+
+    /**
+     * @return {@code false} if the template does not exist
+     */
+    boolean updateTemplate(ItemTemplate template) throws SQLException;
+
+    // Players
+
+    void registerPlayer(UUID uuid, String name) throws SQLException;
+
+    int countPlayers() throws SQLException;
+
+    /**
+     * Page over the known player names, ordered by name.
+     */
+    List<String> getPlayersAfter(String afterPlayer, int limit) throws SQLException;
+
+    List<String> getAllPlayersEverJoined() throws SQLException;
+
+    // Grant jobs
+
+    void insertGrantJob(GrantJob job) throws SQLException;
+
+    void updateGrantJobState(GrantJob job) throws SQLException;
+
+    GrantJob getGrantJob(String id) throws SQLException;
+
+    List<GrantJob> getUnfinishedGrantJobs() throws SQLException;
+
+    /**
+     * Grants one chunk of a job and records its progress together.
+     */
+    void applyGrantJobChunk(GrantJob job, List<String> players) throws SQLException;
+
+    // Idempotency keys
+
+    /**
+     * Stores {@code record} unless its key is already taken, as one atomic step.
+     *
+     * @return the record already stored under the key, or {@code null} if {@code record} was stored
+     */
+    IdempotencyRecord insertIdempotencyKey(IdempotencyRecord record) throws SQLException;
+
+    /**
+     * Saves the response of a request whose key was stored with {@link #insertIdempotencyKey}.
+     */
+    void completeIdempotencyKey(IdempotencyRecord record) throws SQLException;
+
+    /**
+     * Frees {@code key} if it is still the one taken at {@code createdAt}.
+     */
+    void deleteIdempotencyKey(String key, long createdAt) throws SQLException;
+
+    /**
+     * @return number of keys removed
+     */
+    int deleteIdempotencyKeysBefore(long createdBefore) throws SQLException;
+
+    // Library cache
+
+    void warmLibraryCache(String player) throws SQLException;
+
+    void evictLibraryCache(String player);
+
+    /**
+     * @return the library cache, or {@code null} if this store doesn't use one
+     */
+    LibraryCache getLibraryCache();
+
+    /**
+     * Versions bumped after every write that changes a listing, for the API's ETags.
+     */
+    ChangeVersions getChangeVersions();
+}
@@ -0,0 +1,58 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An item definition shared by every grant of the same item. Identical definitions
+ * are stored once and found again through {@link #contentHash}.
+ */
+public class ItemTemplate {
+    private int id;
+    private String itemName;
+    private String itemDisplay;
+    private String description;
+    private String command;
+
+    public ItemTemplate(int id, String itemName, String itemDisplay, String description, String command) {
+        this.id = id;
+        this.itemName = itemName;
+        this.itemDisplay = itemDisplay;
+        this.description = description;
+        this.command = command;
+    }
+
+    /**
+     * SHA-256 of the definition, used to look up an existing template with the same content.
+     */
+    public static String contentHash(String itemName, String itemDisplay, String description, String command) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String field : new String[]{itemName, itemDisplay, description, command}) {
+                // แยก null ออกจากสตริงว่าง และกันไม่ให้ฟิลด์ที่ติดกันชนกัน
+                digest.update(field == null ? new byte[]{0} : (field.length() + ":" + field).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Getters and setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+    public String getItemName() { return itemName; }
+    public void setItemName(String itemName) { this.itemName = itemName; }
+    public String getItemDisplay() { return itemDisplay; }
+    public void setItemDisplay(String itemDisplay) { this.itemDisplay = itemDisplay; }
+    public String getDescription() { return description; }
+    public void setDescription(String description) { this.description = description; }
+    public String getCommand() { return command; }
+    public void setCommand(String command) { this.command = command; }
+}
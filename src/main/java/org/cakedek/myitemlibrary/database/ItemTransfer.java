@@ -0,0 +1,413 @@
+package org.cakedek.myitemlibrary.database;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.cakedek.myitemlibrary.util.Input.isValidPlayerName;
+import static org.cakedek.myitemlibrary.util.Input.sanitizeInput;
+
+/**
+ * Streams items out of and into an {@link ItemStore} as NDJSON (one JSON object per line)
+ * or CSV (RFC 4180, header row first). Export reads the store {@code batchSize} items at a
+ * time by id; import parses one record at a time and inserts every {@code batchSize} records
+ * through {@link ItemStore#addItems}, so neither side holds the whole data set in memory.
+ *
+ * <p>Both formats use the same snake_case fields as the API. {@code id} and {@code template_id}
+ * are written on export and ignored on import; the store assigns new ones.
+ */
+public class ItemTransfer {
+    private static final String[] COLUMNS = {
+            "id", "template_id", "item_name", "item_display", "description", "player", "enable", "command", "used"
+    };
+    private static final int MAX_STRING_LENGTH = 255;
+
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @return the format, or {@code null} if {@code name} is not one
+         */
+        public static Format parse(String name) {
+            if (name == null) {
+                return null;
+            }
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Progress {
+        /**
+         * Called after each batch with the number of items written or inserted so far.
+         */
+        void update(long items);
+    }
+
+    private final ItemStore database;
+    private final Gson gson;
+    private final int batchSize;
+
+    public ItemTransfer(ItemStore database, Gson gson, int batchSize) {
+        this.database = database;
+        this.gson = gson;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Writes every item to {@code out}. The writer is flushed after each batch but not closed.
+     *
+     * @return number of items written
+     */
+    public long exportItems(Format format, Writer out, Progress progress) throws SQLException, IOException {
+        if (format == Format.CSV) {
+            writeCsvRow(out, COLUMNS);
+        }
+        long written = 0;
+        int afterId = 0;
+        while (true) {
+            List<ItemData> items = database.getItemsAfter(afterId, batchSize);
+            for (ItemData item : items) {
+                if (format == Format.NDJSON) {
+                    out.write(gson.toJson(toJson(item)));
+                    out.write('\n');
+                } else {
+                    writeCsvRow(out, new String[]{
+                            String.valueOf(item.getId()), String.valueOf(item.getTemplateId()), item.getItemName(),
+                            item.getItemDisplay(), item.getDescription(), item.getPlayer(),
+                            String.valueOf(item.isEnable()), item.getCommand(), String.valueOf(item.getUsed())
+                    });
+                }
+            }
+            written += items.size();
+            out.flush();
+            if (progress != null) {
+                progress.update(written);
+            }
+            if (items.size() < batchSize) {
+                return written;
+            }
+            afterId = items.get(items.size() - 1).getId();
+        }
+    }
+
+    /**
+     * Reads items from {@code in} and adds them in batches. Each batch is committed on its own:
+     * when a record is invalid, the batches before it stay imported and the exception message
+     * names the offending line.
+     *
+     * @return number of items imported
+     * @throws IllegalArgumentException if a record is malformed
+     */
+    public long importItems(Format format, Reader in, Progress progress) throws SQLException, IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        RecordSource source = format == Format.NDJSON ? new NdjsonSource(reader) : new CsvSource(reader);
+        List<ItemData> batch = new ArrayList<>(batchSize);
+        long imported = 0;
+        Map<String, String> record;
+        while ((record = source.next()) != null) {
+            try {
+                batch.add(toItem(record));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + source.line() + ": " + e.getMessage(), e);
+            }
+            if (batch.size() == batchSize) {
+                imported += database.addItems(batch);
+                batch.clear();
+                if (progress != null) {
+                    progress.update(imported);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            imported += database.addItems(batch);
+            if (progress != null) {
+                progress.update(imported);
+            }
+        }
+        return imported;
+    }
+
+    private static JsonObject toJson(ItemData item) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", item.getId());
+        json.addProperty("template_id", item.getTemplateId());
+        json.addProperty("item_name", item.getItemName());
+        json.addProperty("item_display", item.getItemDisplay());
+        json.addProperty("description", item.getDescription());
+        json.addProperty("player", item.getPlayer());
+        json.addProperty("enable", item.isEnable());
+        json.addProperty("command", item.getCommand());
+        json.addProperty("used", item.getUsed());
+        return json;
+    }
+
+    /**
+     * Validates one item object the same way {@code /import} does; {@code enable} and
+     * {@code used} are optional, ids are ignored.
+     *
+     * @throws IllegalArgumentException if a field is missing or malformed
+     */
+    public static ItemData parseItem(JsonObject json) {
+        return toItem(toRecord(json));
+    }
+
+    private static Map<String, String> toRecord(JsonObject json) {
+        Map<String, String> record = new HashMap<>();
+        for (Map.Entry<String, JsonElement> entry : json.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value.isJsonPrimitive()) {
+                record.put(entry.getKey(), value.getAsString());
+            } else if (!value.isJsonNull()) {
+                throw new IllegalArgumentException(entry.getKey() + " must be a string, number or boolean");
+            }
+        }
+        return record;
+    }
+
+    // ตรวจแบบเดียวกับ /add-item
+    private static ItemData toItem(Map<String, String> record) {
+        String itemName = sanitizeInput(required(record, "item_name"));
+        String itemDisplay = sanitizeInput(required(record, "item_display"));
+        String description = sanitizeInput(record.get("description"));
+        String player = required(record, "player");
+        String command = sanitizeInput(record.get("command"));
+        if (itemName.length() > MAX_STRING_LENGTH || itemDisplay.length() > MAX_STRING_LENGTH) {
+            throw new IllegalArgumentException("Input string too long");
+        }
+        if (!isValidPlayerName(player)) {
+            throw new IllegalArgumentException("Invalid player name: " + player);
+        }
+
+        String enableValue = record.get("enable");
+        boolean enable;
+        if (enableValue == null || enableValue.isEmpty() || enableValue.equalsIgnoreCase("true") || enableValue.equals("1")) {
+            enable = true;
+        } else if (enableValue.equalsIgnoreCase("false") || enableValue.equals("0")) {
+            enable = false;
+        } else {
+            throw new IllegalArgumentException("Invalid enable: " + enableValue);
+        }
+
+        String usedValue = record.get("used");
+        int used;
+        try {
+            used = usedValue == null || usedValue.isEmpty() ? 1 : Integer.parseInt(usedValue.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid used: " + usedValue);
+        }
+        if (used < 0) {
+            throw new IllegalArgumentException("Invalid used: " + usedValue);
+        }
+        return new ItemData(0, 0, itemName, itemDisplay, description, player, enable, command, used);
+    }
+
+    private static String required(Map<String, String> record, String field) {
+        String value = record.get(field);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        return value;
+    }
+
+    private static void writeCsvRow(Writer out, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = values[i];
+            if (value == null) {
+                continue;
+            }
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private interface RecordSource {
+        /**
+         * @return the next record keyed by field name, or {@code null} at the end of input
+         */
+        Map<String, String> next() throws IOException;
+
+        /**
+         * Line the last record started on, counting from 1.
+         */
+        long line();
+    }
+
+    private final class NdjsonSource implements RecordSource {
+        private final BufferedReader reader;
+        private long line;
+        private long recordLine;
+
+        private NdjsonSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, String> next() throws IOException {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+                recordLine = line;
+                JsonObject json;
+                try {
+                    json = gson.fromJson(text, JsonObject.class);
+                } catch (JsonParseException e) {
+                    throw new IllegalArgumentException("Line " + line + ": invalid JSON", e);
+                }
+                if (json == null) {
+                    throw new IllegalArgumentException("Line " + line + ": expected a JSON object");
+                }
+                try {
+                    return toRecord(json);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + line + ": " + e.getMessage(), e);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public long line() {
+            return recordLine;
+        }
+    }
+
+    private static final class CsvSource implements RecordSource {
+        private final BufferedReader reader;
+        private String[] header;
+        private long line = 1;
+        private long recordLine;
+
+        private CsvSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, String> next() throws IOException {
+            if (header == null) {
+                List<String> names = readRow();
+                if (names == null) {
+                    return null;
+                }
+                header = new String[names.size()];
+                for (int i = 0; i < header.length; i++) {
+                    // Excel ใส่ BOM ไว้หน้าคอลัมน์แรก
+                    header[i] = names.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+                }
+            }
+            List<String> values;
+            do {
+                values = readRow();
+                if (values == null) {
+                    return null;
+                }
+            } while (values.size() == 1 && values.get(0).isEmpty());
+
+            if (values.size() > header.length) {
+                throw new IllegalArgumentException("Line " + recordLine + ": expected " + header.length + " fields, found " + values.size());
+            }
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < values.size(); i++) {
+                record.put(header[i], values.get(i));
+            }
+            return record;
+        }
+
+        @Override
+        public long line() {
+            return recordLine;
+        }
+
+        // อ่านหนึ่งแถว ช่องที่อยู่ในเครื่องหมายคำพูดขึ้นบรรทัดใหม่ได้
+        private List<String> readRow() throws IOException {
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IllegalArgumentException("Line " + recordLine + ": unterminated quoted field");
+                    }
+                    if (c == '"') {
+                        reader.mark(1);
+                        int next = reader.read();
+                        if (next == '"') {
+                            value.append('"');
+                        } else {
+                            quoted = false;
+                            reader.reset();
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        value.append((char) c);
+                    }
+                } else if (c == -1 || c == '\n') {
+                    line++;
+                    values.add(value.toString());
+                    return values;
+                } else if (c == '\r') {
+                    // CRLF หรือ CR ท้ายแถว
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else if (c == '"' && value.length() == 0) {
+                    quoted = true;
+                } else {
+                    value.append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of each online player's enabled items, ordered by id.
+ * Entries expire after a TTL and the least recently used players are evicted once
+ * the total number of cached items goes over the limit. Cached lists are never
+ * modified in place; every change swaps in a new list.
+ */
+public class LibraryCache {
+    private final int maxItems;
+    private final int maxItemsPerPlayer;
+    private final long ttlMs;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, String> itemOwners = new HashMap<>();
+    // token ของการโหลดที่กำลังทำอยู่ ถ้าถูกล้างระหว่างโหลด ผลที่ได้จะไม่ถูกเก็บ
+    private final Map<String, Object> loadTokens = new HashMap<>();
+    // นับการแก้ไขไอเทมที่ไม่อยู่ในแคช ซึ่งไม่รู้ว่าเป็นของผู้เล่นคนไหน การโหลดที่เริ่มก่อนหน้านั้นอาจได้ข้อมูลเก่า
+    private long unownedWrites;
+    private int cachedItems;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    private static final class LoadToken {
+        private final long unownedWrites;
+
+        private LoadToken(long unownedWrites) {
+            this.unownedWrites = unownedWrites;
+        }
+    }
+
+    private static final class Entry {
+        private final String player;
+        private final List<ItemData> items;
+        private final long loadedAt;
+
+        private Entry(String player, List<ItemData> items, long loadedAt) {
+            this.player = player;
+            this.items = items;
+            this.loadedAt = loadedAt;
+        }
+
+        private int weight() {
+            return items == null ? 1 : Math.max(1, items.size());
+        }
+    }
+
+    /**
+     * Result of a cache lookup: {@link #isOversized()} means the player has too many
+     * items to cache and callers should query the database directly.
+     */
+    public static final class CachedLibrary {
+        private final List<ItemData> items;
+
+        private CachedLibrary(List<ItemData> items) {
+            this.items = items;
+        }
+
+        public boolean isOversized() {
+            return items == null;
+        }
+
+        public List<ItemData> getItems() {
+            return items;
+        }
+    }
+
+    public LibraryCache(int maxItems, int maxItemsPerPlayer, long ttlMs) {
+        this.maxItems = Math.max(1, maxItems);
+        this.maxItemsPerPlayer = Math.max(1, Math.min(maxItemsPerPlayer, this.maxItems));
+        this.ttlMs = ttlMs;
+    }
+
+    public synchronized CachedLibrary get(String player) {
+        String key = key(player);
+        Entry entry = entries.get(key);
+        if (entry != null && ttlMs > 0 && System.currentTimeMillis() - entry.loadedAt > ttlMs) {
+            removeEntry(key);
+            evictions.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null || !entry.player.equals(player)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new CachedLibrary(entry.items);
+    }
+
+    public synchronized Object beginLoad(String player) {
+        Object token = new LoadToken(unownedWrites);
+        loadTokens.put(key(player), token);
+        return token;
+    }
+
+    /**
+     * Stores a freshly loaded list unless the player's items, or any item whose owner
+     * wasn't cached, changed since {@link #beginLoad}.
+     */
+    public synchronized CachedLibrary put(String player, List<ItemData> items, Object token) {
+        String key = key(player);
+        List<ItemData> stored = items.size() > maxItemsPerPlayer ? null : Collections.unmodifiableList(sortById(items));
+        if (loadTokens.get(key) != token || ((LoadToken) token).unownedWrites != unownedWrites) {
+            loadTokens.remove(key, token);
+            return new CachedLibrary(stored);
+        }
+        loadTokens.remove(key);
+        loads.incrementAndGet();
+
+        removeEntry(key);
+        Entry entry = new Entry(player, stored, System.currentTimeMillis());
+        entries.put(key, entry);
+        cachedItems += entry.weight();
+        if (stored != null) {
+            for (ItemData item : stored) {
+                itemOwners.put(item.getId(), key);
+            }
+        }
+        evictOverflow();
+        return new CachedLibrary(stored);
+    }
+
+    public synchronized void addItem(ItemData item) {
+        String key = key(item.getPlayer());
+        loadTokens.remove(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        if (entry.items == null || !entry.player.equals(item.getPlayer()) || entry.items.size() + 1 > maxItemsPerPlayer) {
+            removeEntry(key);
+            return;
+        }
+
+        List<ItemData> updated = new ArrayList<>(entry.items);
+        updated.add(item);
+        replaceItems(key, entry, sortById(updated));
+        itemOwners.put(item.getId(), key);
+        evictOverflow();
+    }
+
+    /**
+     * @return {@code true} if the item was in a cached list
+     */
+    public synchronized boolean removeItem(int id) {
+        String key = itemOwners.remove(id);
+        if (key == null) {
+            unownedWrites++;
+            return false;
+        }
+        loadTokens.remove(key);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.items == null) {
+            return false;
+        }
+
+        List<ItemData> updated = new ArrayList<>(entry.items.size());
+        for (ItemData item : entry.items) {
+            if (item.getId() != id) {
+                updated.add(item);
+            }
+        }
+        replaceItems(key, entry, updated);
+        return true;
+    }
+
+    /**
+     * @return the name of the player whose cached list holds the item, or {@code null}
+     */
+    public synchronized String getOwner(int id) {
+        String key = itemOwners.get(id);
+        Entry entry = key == null ? null : entries.get(key);
+        return entry == null ? null : entry.player;
+    }
+
+    public synchronized void decrementUsed(int id) {
+        String key = itemOwners.get(id);
+        if (key == null) {
+            unownedWrites++;
+            return;
+        }
+        loadTokens.remove(key);
+        Entry entry = entries.get(key);
+        if (entry == null || entry.items == null) {
+            return;
+        }
+
+        List<ItemData> updated = new ArrayList<>(entry.items.size());
+        for (ItemData item : entry.items) {
+            if (item.getId() == id) {
+                item = new ItemData(item.getId(), item.getTemplateId(), item.getItemName(), item.getItemDisplay(), item.getDescription(),
+                        item.getPlayer(), item.isEnable(), item.getCommand(), item.getUsed() - 1);
+            }
+            updated.add(item);
+        }
+        replaceItems(key, entry, updated);
+    }
+
+    public synchronized void invalidate(String player) {
+        String key = key(player);
+        loadTokens.remove(key);
+        removeEntry(key);
+    }
+
+    public synchronized void clear() {
+        loadTokens.clear();
+        entries.clear();
+        itemOwners.clear();
+        cachedItems = 0;
+    }
+
+    private void replaceItems(String key, Entry entry, List<ItemData> items) {
+        cachedItems -= entry.weight();
+        Entry replacement = new Entry(entry.player, Collections.unmodifiableList(items), entry.loadedAt);
+        entries.put(key, replacement);
+        cachedItems += replacement.weight();
+    }
+
+    private void removeEntry(String key) {
+        Entry removed = entries.remove(key);
+        if (removed == null) {
+            return;
+        }
+        cachedItems -= removed.weight();
+        if (removed.items != null) {
+            for (ItemData item : removed.items) {
+                itemOwners.remove(item.getId());
+            }
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (cachedItems > maxItems && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            cachedItems -= eldest.weight();
+            if (eldest.items != null) {
+                for (ItemData item : eldest.items) {
+                    itemOwners.remove(item.getId());
+                }
+            }
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static List<ItemData> sortById(List<ItemData> items) {
+        List<ItemData> sorted = new ArrayList<>(items);
+        sorted.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return sorted;
+    }
+
+    // MySQL เทียบชื่อแบบไม่สนตัวพิมพ์ จึงใช้ตัวพิมพ์เล็กเป็น key แล้วเทียบชื่อจริงอีกที
+    private static String key(String player) {
+        return player == null ? "" : player.toLowerCase(Locale.ROOT);
+    }
+
+    // Stats
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+    public long getLoads() { return loads.get(); }
+    public synchronized int getPlayerCount() { return entries.size(); }
+    public synchronized int getItemCount() { return cachedItems; }
+    public int getMaxItems() { return maxItems; }
+    public int getMaxItemsPerPlayer() { return maxItemsPerPlayer; }
+}
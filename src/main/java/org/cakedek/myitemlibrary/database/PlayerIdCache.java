@@ -0,0 +1,41 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded name to {@code co_player.id} map, so item lookups by player name don't
+ * have to hit {@code co_player} every time. Names are compared case-insensitively,
+ * the same way the database compares them.
+ */
+public class PlayerIdCache {
+    private static final int MAX_ENTRIES = 10000;
+
+    private final Map<String, Integer> ids = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public synchronized Integer get(String name) {
+        return ids.get(key(name));
+    }
+
+    public synchronized void put(String name, int id) {
+        ids.put(key(name), id);
+    }
+
+    public synchronized void remove(String name) {
+        ids.remove(key(name));
+    }
+
+    public synchronized void clear() {
+        ids.clear();
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,249 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Sends read-only queries to MySQL read replicas and leaves everything else on the primary.
+ * A player's reads stay on the primary for {@code readYourWritesMs} after one of their own
+ * writes, so they never see a replica that hasn't caught up with them yet. A replica that
+ * can't hand out a connection is skipped for {@code retryAfterMs} and its reads fall back
+ * to the primary.
+ */
+public class ReplicaRouter {
+    private static final int MAX_PINNED_PLAYERS = 10000;
+
+    private final Route primary;
+    private final List<Route> replicas;
+    private final long readYourWritesMs;
+    private final long retryAfterMs;
+    private final Logger logger;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // ชื่อผู้เล่น (ตัวพิมพ์เล็ก) -> เวลาที่เลิกบังคับอ่านจาก primary
+    private final Map<String, Long> pinnedPlayers = new ConcurrentHashMap<>();
+    private volatile long allPinnedUntil;
+
+    private final AtomicLong pinnedReads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Stats and health of one place reads can go.
+     */
+    public static final class Route {
+        private final String name;
+        private final Supplier<ConnectionPool> pool;
+        private volatile long downUntil;
+
+        private final AtomicLong reads = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        private Route(String name, Supplier<ConnectionPool> pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+
+        private void record(long nanos) {
+            reads.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public String getName() { return name; }
+        public boolean isUp() { return System.currentTimeMillis() >= downUntil; }
+        public long getReads() { return reads.get(); }
+        public long getErrors() { return errors.get(); }
+        public double getAverageMs() {
+            long count = reads.get();
+            return count == 0 ? 0 : totalNanos.get() / 1e6 / count;
+        }
+        public double getMaxMs() { return maxNanos.get() / 1e6; }
+    }
+
+    /**
+     * @param primary  the primary pool, looked up on every read so reconnects are picked up
+     * @param replicas replica name to its started pool
+     */
+    public ReplicaRouter(Supplier<ConnectionPool> primary, Map<String, ConnectionPool> replicas,
+                         long readYourWritesMs, long retryAfterMs, Logger logger) {
+        this.primary = new Route("primary", primary);
+        List<Route> routes = new ArrayList<>();
+        for (Map.Entry<String, ConnectionPool> replica : replicas.entrySet()) {
+            ConnectionPool pool = replica.getValue();
+            routes.add(new Route(replica.getKey(), () -> pool));
+        }
+        this.replicas = Collections.unmodifiableList(routes);
+        this.readYourWritesMs = Math.max(0, readYourWritesMs);
+        this.retryAfterMs = Math.max(0, retryAfterMs);
+        this.logger = logger;
+    }
+
+    /**
+     * Runs a read-only query on a replica, or on the primary if {@code player} wrote recently,
+     * no replica is up, or the replica failed to hand out a connection.
+     *
+     * @param player whose data is read, or {@code null} for reads that aren't about one player
+     */
+    public <T> T read(String player, CoDatabase.SqlWork<T> work) throws SQLException {
+        return read(player, work, true);
+    }
+
+    /**
+     * Like {@link #read}, but for work that hands rows on as it reads them: it only falls back
+     * to the primary before the work starts, so no row is ever passed on twice.
+     */
+    public <T> T stream(String player, CoDatabase.SqlWork<T> work) throws SQLException {
+        return read(player, work, false);
+    }
+
+    private <T> T read(String player, CoDatabase.SqlWork<T> work, boolean retry) throws SQLException {
+        if (isPinned(player)) {
+            pinnedReads.incrementAndGet();
+            return run(primary, work);
+        }
+        Route replica = pickReplica();
+        if (replica == null) {
+            return run(primary, work);
+        }
+
+        Connection connection;
+        try {
+            connection = replica.pool.get().borrow();
+        } catch (SQLException e) {
+            markDown(replica, e);
+            fallbacks.incrementAndGet();
+            return run(primary, work);
+        }
+        long start = System.nanoTime();
+        try (connection) {
+            T result = work.run(connection);
+            replica.record(System.nanoTime() - start);
+            return result;
+        } catch (SQLException e) {
+            if (!isConnectionFailure(e)) {
+                replica.errors.incrementAndGet();
+                throw e;
+            }
+            if (!retry) {
+                markDown(replica, e);
+                throw e;
+            }
+            // connection หลุดกลางคัน ลองใหม่ที่ primary
+            markDown(replica, e);
+            fallbacks.incrementAndGet();
+            return run(primary, work);
+        }
+    }
+
+    private <T> T run(Route route, CoDatabase.SqlWork<T> work) throws SQLException {
+        ConnectionPool pool = route.pool.get();
+        if (pool == null) {
+            throw new SQLException("Database is not connected");
+        }
+        long start = System.nanoTime();
+        try (Connection connection = pool.borrow()) {
+            T result = work.run(connection);
+            route.record(System.nanoTime() - start);
+            return result;
+        } catch (SQLException e) {
+            route.errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private Route pickReplica() {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Route replica = replicas.get((start + i) % size);
+            if (replica.isUp()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private void markDown(Route replica, SQLException e) {
+        replica.errors.incrementAndGet();
+        boolean wasUp = replica.isUp();
+        replica.downUntil = System.currentTimeMillis() + retryAfterMs;
+        if (wasUp) {
+            logger.warning("Read replica " + replica.name + " is unavailable, reading from the primary for "
+                    + retryAfterMs + "ms: " + e.getMessage());
+        }
+    }
+
+    private static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || (state != null && state.startsWith("08"));
+    }
+
+    private boolean isPinned(String player) {
+        long now = System.currentTimeMillis();
+        if (now < allPinnedUntil) {
+            return true;
+        }
+        if (player == null) {
+            return false;
+        }
+        Long until = pinnedPlayers.get(player.toLowerCase(Locale.ROOT));
+        return until != null && now < until;
+    }
+
+    /**
+     * Keeps {@code player}'s reads on the primary for the read-your-writes window.
+     */
+    public void pinPlayer(String player) {
+        if (player == null || readYourWritesMs == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (pinnedPlayers.size() >= MAX_PINNED_PLAYERS) {
+            pinnedPlayers.values().removeIf(until -> until <= now);
+        }
+        pinnedPlayers.put(player.toLowerCase(Locale.ROOT), now + readYourWritesMs);
+    }
+
+    /**
+     * Keeps every read on the primary for the read-your-writes window, after writes that touch all players.
+     */
+    public void pinAll() {
+        if (readYourWritesMs > 0) {
+            allPinnedUntil = System.currentTimeMillis() + readYourWritesMs;
+        }
+    }
+
+    /**
+     * Closes the replica pools. The primary pool belongs to {@link CoDatabase}.
+     */
+    public void close() {
+        for (Route replica : replicas) {
+            replica.pool.get().close();
+        }
+    }
+
+    // Stats
+    public Route getPrimary() { return primary; }
+    public List<Route> getReplicas() { return replicas; }
+    public long getPinnedReads() { return pinnedReads.get(); }
+    public long getFallbacks() { return fallbacks.get(); }
+}
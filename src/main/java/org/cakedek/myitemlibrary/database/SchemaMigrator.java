@@ -0,0 +1,547 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Applies ordered schema migrations and records them in {@code co_schema_version}.
+ * Every migration must be safe to run again, because MySQL commits DDL implicitly
+ * and a crash can leave a migration applied but not yet recorded.
+ */
+public class SchemaMigrator {
+    private static final String VERSION_TABLE = "co_schema_version";
+    private static final int MIGRATION_CHUNK_SIZE = 5000;
+
+    private final CoDatabase database;
+    private final boolean mysql;
+    private final Logger logger;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    @FunctionalInterface
+    public interface MigrationStep {
+        void apply(Connection connection, boolean mysql) throws SQLException;
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationStep step;
+
+        private Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    public SchemaMigrator(CoDatabase database, boolean mysql, Logger logger) {
+        this.database = database;
+        this.mysql = mysql;
+        this.logger = logger;
+
+        // เพิ่ม migration ใหม่ต่อท้ายเสมอ ห้ามแก้ไขหรือเรียงลำดับ version เดิมใหม่
+        register(1, "Create co_list_item", (connection, isMySql) -> execute(connection, isMySql
+                ? "CREATE TABLE IF NOT EXISTS co_list_item ("
+                + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                + "item_name VARCHAR(255), "
+                + "item_display VARCHAR(255), "
+                + "description TEXT, "
+                + "player VARCHAR(255), "
+                + "enable BOOLEAN, "
+                + "command TEXT, "
+                + "used INT"
+                + ")"
+                : "CREATE TABLE IF NOT EXISTS co_list_item ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "item_name TEXT, "
+                + "item_display TEXT, "
+                + "description TEXT, "
+                + "player TEXT, "
+                + "enable INTEGER, "
+                + "command TEXT, "
+                + "used INTEGER"
+                + ")"));
+        register(2, "Index co_list_item by player and enable", (connection, isMySql) ->
+                createIndexIfMissing(connection, isMySql, "co_list_item", "idx_co_list_item_player_enable", "player, enable"));
+        register(3, "Create co_grant_job", (connection, isMySql) -> execute(connection,
+                "CREATE TABLE IF NOT EXISTS co_grant_job ("
+                + "id VARCHAR(36) PRIMARY KEY, "
+                + "type VARCHAR(16), "
+                + "status VARCHAR(16), "
+                + "item_name VARCHAR(255), "
+                + "item_display VARCHAR(255), "
+                + "description TEXT, "
+                + "command TEXT, "
+                + "used INT, "
+                + "players " + (isMySql ? "MEDIUMTEXT" : "TEXT") + ", "
+                + "last_player VARCHAR(255), "
+                + "total INT, "
+                + "processed INT, "
+                + "created_at BIGINT, "
+                + "started_at BIGINT, "
+                + "finished_at BIGINT, "
+                + "error TEXT"
+                + ")"));
+        register(4, "Full-text search index on co_list_item", (connection, isMySql) -> {
+            if (isMySql) {
+                if (!indexExists(connection, "co_list_item", "ft_co_list_item_search")) {
+                    execute(connection, "ALTER TABLE co_list_item ADD FULLTEXT INDEX ft_co_list_item_search (item_name, description)");
+                }
+            } else {
+                createSqliteSearchIndex(connection);
+            }
+        });
+        register(5, "Normalize players into co_player", (connection, isMySql) -> {
+            execute(connection, isMySql
+                    ? "CREATE TABLE IF NOT EXISTS co_player ("
+                    + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                    + "uuid CHAR(36) NULL, "
+                    + "name VARCHAR(191) NULL, "
+                    + "last_seen BIGINT, "
+                    + "UNIQUE KEY uk_co_player_uuid (uuid), "
+                    + "UNIQUE KEY uk_co_player_name (name)"
+                    + ")"
+                    : "CREATE TABLE IF NOT EXISTS co_player ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "uuid TEXT UNIQUE, "
+                    + "name TEXT COLLATE NOCASE UNIQUE, "
+                    + "last_seen INTEGER"
+                    + ")");
+            if (isMySql) {
+                normalizeMySqlPlayers(connection);
+            } else {
+                normalizeSqlitePlayers(connection);
+            }
+        });
+        register(6, "Split co_list_item into co_item_template and co_item_grant", (connection, isMySql) -> {
+            execute(connection, isMySql
+                    ? "CREATE TABLE IF NOT EXISTS co_item_template ("
+                    + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                    + "content_hash CHAR(64), "
+                    + "item_name VARCHAR(255), "
+                    + "item_display VARCHAR(255), "
+                    + "description TEXT, "
+                    + "command TEXT, "
+                    + "created_at BIGINT"
+                    + ")"
+                    : "CREATE TABLE IF NOT EXISTS co_item_template ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "content_hash TEXT, "
+                    + "item_name TEXT, "
+                    + "item_display TEXT, "
+                    + "description TEXT, "
+                    + "command TEXT, "
+                    + "created_at INTEGER"
+                    + ")");
+            execute(connection, isMySql
+                    ? "CREATE TABLE IF NOT EXISTS co_item_grant ("
+                    + "id INT AUTO_INCREMENT PRIMARY KEY, "
+                    + "template_id INT NOT NULL, "
+                    + "player_id INT NULL, "
+                    + "enable BOOLEAN, "
+                    + "used INT, "
+                    + "CONSTRAINT fk_co_item_grant_template FOREIGN KEY (template_id) REFERENCES co_item_template (id), "
+                    + "CONSTRAINT fk_co_item_grant_player FOREIGN KEY (player_id) REFERENCES co_player (id)"
+                    + ")"
+                    : "CREATE TABLE IF NOT EXISTS co_item_grant ("
+                    + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "template_id INTEGER NOT NULL REFERENCES co_item_template (id), "
+                    + "player_id INTEGER REFERENCES co_player (id), "
+                    + "enable INTEGER, "
+                    + "used INTEGER"
+                    + ")");
+            createIndexIfMissing(connection, isMySql, "co_item_template", "idx_co_item_template_hash", "content_hash");
+            createIndexIfMissing(connection, isMySql, "co_item_grant", "idx_co_item_grant_player_enable", "player_id, enable");
+            createIndexIfMissing(connection, isMySql, "co_item_grant", "idx_co_item_grant_template", "template_id");
+
+            if (tableExists(connection, "co_list_item")) {
+                copyListItemsToGrants(connection, isMySql);
+                if (!isMySql) {
+                    // ตาราง FTS เดิมอ้างอิง co_list_item ส่วน trigger จะหายไปพร้อมตาราง
+                    execute(connection, "DROP TABLE IF EXISTS co_list_item_fts");
+                }
+                execute(connection, "DROP TABLE co_list_item");
+            }
+
+            if (isMySql) {
+                if (!indexExists(connection, "co_item_template", "ft_co_item_template_search")) {
+                    execute(connection, "ALTER TABLE co_item_template ADD FULLTEXT INDEX ft_co_item_template_search (item_name, description)");
+                }
+            } else {
+                createSqliteTemplateSearchIndex(connection);
+            }
+        });
+        register(7, "Add claimed_at to co_item_grant and create co_item_grant_archive", (connection, isMySql) -> {
+            if (!columnExists(connection, "co_item_grant", "claimed_at")) {
+                execute(connection, "ALTER TABLE co_item_grant ADD COLUMN claimed_at BIGINT NULL");
+            }
+            // ไม่รู้เวลาเคลมของแถวเก่า ใช้เวลาที่ migrate แทน
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "UPDATE co_item_grant SET claimed_at = ? WHERE enable = 0 AND claimed_at IS NULL")) {
+                pstmt.setLong(1, System.currentTimeMillis());
+                pstmt.executeUpdate();
+            }
+            createIndexIfMissing(connection, isMySql, "co_item_grant", "idx_co_item_grant_enable_claimed", "enable, claimed_at");
+
+            execute(connection, isMySql
+                    ? "CREATE TABLE IF NOT EXISTS co_item_grant_archive ("
+                    + "id INT PRIMARY KEY, "
+                    + "template_id INT NOT NULL, "
+                    + "player_id INT NULL, "
+                    + "used INT, "
+                    + "claimed_at BIGINT, "
+                    + "archived_at BIGINT"
+                    + ")"
+                    : "CREATE TABLE IF NOT EXISTS co_item_grant_archive ("
+                    + "id INTEGER PRIMARY KEY, "
+                    + "template_id INTEGER NOT NULL, "
+                    + "player_id INTEGER, "
+                    + "used INTEGER, "
+                    + "claimed_at INTEGER, "
+                    + "archived_at INTEGER"
+                    + ")");
+            createIndexIfMissing(connection, isMySql, "co_item_grant_archive", "idx_co_item_grant_archive_player", "player_id, id");
+        });
+        // หน้า GET /items เดินตาม id ภายในผู้เล่นหรือสถานะ enable เดียวกัน
+        register(8, "Keyset indexes for item listings", (connection, isMySql) -> {
+            createIndexIfMissing(connection, isMySql, "co_item_grant", "idx_co_item_grant_player_id", "player_id, id");
+            createIndexIfMissing(connection, isMySql, "co_item_grant", "idx_co_item_grant_enable_id", "enable, id");
+        });
+        // คีย์ยาวได้ไม่เกิน 191 ตัวอักษร เพื่อให้ primary key แบบ utf8mb4 อยู่ในขีดจำกัดของ InnoDB รุ่นเก่า
+        register(9, "Create co_idempotency_key", (connection, isMySql) -> {
+            execute(connection, isMySql
+                    ? "CREATE TABLE IF NOT EXISTS co_idempotency_key ("
+                    + "idem_key VARCHAR(191) PRIMARY KEY, "
+                    + "request_hash CHAR(64), "
+                    + "created_at BIGINT, "
+                    + "status INT, "
+                    + "content_type VARCHAR(255), "
+                    + "body MEDIUMTEXT"
+                    + ")"
+                    : "CREATE TABLE IF NOT EXISTS co_idempotency_key ("
+                    + "idem_key TEXT PRIMARY KEY, "
+                    + "request_hash TEXT, "
+                    + "created_at INTEGER, "
+                    + "status INTEGER, "
+                    + "content_type TEXT, "
+                    + "body TEXT"
+                    + ")");
+            createIndexIfMissing(connection, isMySql, "co_idempotency_key", "idx_co_idempotency_key_created", "created_at");
+        });
+    }
+
+    public void register(int version, String description, MigrationStep step) {
+        if (!migrations.isEmpty() && migrations.get(migrations.size() - 1).version >= version) {
+            throw new IllegalArgumentException("Migrations must be registered in increasing version order: " + version);
+        }
+        migrations.add(new Migration(version, description, step));
+    }
+
+    public void migrate() throws SQLException {
+        database.writeExclusive(connection -> {
+            execute(connection, "CREATE TABLE IF NOT EXISTS " + VERSION_TABLE + " ("
+                    + "version INT PRIMARY KEY, "
+                    + "description VARCHAR(255), "
+                    + "applied_at BIGINT"
+                    + ")");
+
+            int currentVersion = getCurrentVersion(connection);
+            for (Migration migration : migrations) {
+                if (migration.version <= currentVersion) {
+                    continue;
+                }
+
+                logger.info("Applying database migration " + migration.version + ": " + migration.description);
+                connection.setAutoCommit(false);
+                try {
+                    migration.step.apply(connection, mysql);
+                    try (PreparedStatement pstmt = connection.prepareStatement(
+                            "INSERT INTO " + VERSION_TABLE + " (version, description, applied_at) VALUES (?, ?, ?)")) {
+                        pstmt.setInt(1, migration.version);
+                        pstmt.setString(2, migration.description);
+                        pstmt.setLong(3, System.currentTimeMillis());
+                        pstmt.executeUpdate();
+                    }
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw new SQLException("Database migration " + migration.version + " failed: " + e.getMessage(), e);
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+            return null;
+        });
+    }
+
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+
+    private int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM " + VERSION_TABLE)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // FTS5 แบบ external content เก็บเฉพาะไอเทมที่ยังไม่ถูกรับ (enable = 1)
+    private void createSqliteSearchIndex(Connection connection) throws SQLException {
+        try {
+            execute(connection, "CREATE VIRTUAL TABLE IF NOT EXISTS co_list_item_fts USING fts5("
+                    + "item_name, description, content='co_list_item', content_rowid='id', "
+                    + "tokenize='unicode61 remove_diacritics 2')");
+        } catch (SQLException e) {
+            logger.warning("SQLite FTS5 is not available, library search will use the in-memory index: " + e.getMessage());
+            return;
+        }
+        createSqliteSearchTriggers(connection);
+
+        execute(connection, "INSERT INTO co_list_item_fts (co_list_item_fts) VALUES ('delete-all')");
+        execute(connection, "INSERT INTO co_list_item_fts (rowid, item_name, description) "
+                + "SELECT id, item_name, description FROM co_list_item WHERE enable = 1");
+    }
+
+    private static void createSqliteSearchTriggers(Connection connection) throws SQLException {
+        execute(connection, "CREATE TRIGGER IF NOT EXISTS co_list_item_fts_insert AFTER INSERT ON co_list_item "
+                + "WHEN new.enable = 1 BEGIN "
+                + "INSERT INTO co_list_item_fts (rowid, item_name, description) VALUES (new.id, new.item_name, new.description); "
+                + "END");
+        execute(connection, "CREATE TRIGGER IF NOT EXISTS co_list_item_fts_delete AFTER DELETE ON co_list_item "
+                + "WHEN old.enable = 1 BEGIN "
+                + "INSERT INTO co_list_item_fts (co_list_item_fts, rowid, item_name, description) VALUES ('delete', old.id, old.item_name, old.description); "
+                + "END");
+        execute(connection, "CREATE TRIGGER IF NOT EXISTS co_list_item_fts_update AFTER UPDATE OF item_name, description, enable ON co_list_item "
+                + "BEGIN "
+                + "INSERT INTO co_list_item_fts (co_list_item_fts, rowid, item_name, description) "
+                + "SELECT 'delete', old.id, old.item_name, old.description WHERE old.enable = 1; "
+                + "INSERT INTO co_list_item_fts (rowid, item_name, description) "
+                + "SELECT new.id, new.item_name, new.description WHERE new.enable = 1; "
+                + "END");
+    }
+
+    private static void normalizeMySqlPlayers(Connection connection) throws SQLException {
+        if (!columnExists(connection, "co_list_item", "player_id")) {
+            execute(connection, "ALTER TABLE co_list_item ADD COLUMN player_id INT NULL");
+        }
+        if (columnExists(connection, "co_list_item", "player")) {
+            execute(connection, "INSERT IGNORE INTO co_player (name) "
+                    + "SELECT DISTINCT player FROM co_list_item WHERE player IS NOT NULL");
+            execute(connection, "UPDATE co_list_item i JOIN co_player p ON p.name = i.player "
+                    + "SET i.player_id = p.id WHERE i.player_id IS NULL");
+        }
+        createIndexIfMissing(connection, true, "co_list_item", "idx_co_list_item_player_id_enable", "player_id, enable");
+        if (indexExists(connection, "co_list_item", "idx_co_list_item_player_enable")) {
+            execute(connection, "ALTER TABLE co_list_item DROP INDEX idx_co_list_item_player_enable");
+        }
+        if (columnExists(connection, "co_list_item", "player")) {
+            execute(connection, "ALTER TABLE co_list_item DROP COLUMN player");
+        }
+        if (!foreignKeyExists(connection, "co_list_item", "fk_co_list_item_player")) {
+            execute(connection, "ALTER TABLE co_list_item ADD CONSTRAINT fk_co_list_item_player "
+                    + "FOREIGN KEY (player_id) REFERENCES co_player (id)");
+        }
+    }
+
+    // SQLite ลบคอลัมน์ที่มี index ไม่ได้ จึงสร้างตารางใหม่แล้วคัดลอกข้อมูล (id เดิมคงอยู่ FTS จึงยังใช้ได้)
+    private static void normalizeSqlitePlayers(Connection connection) throws SQLException {
+        if (!columnExists(connection, "co_list_item", "player")) {
+            return;
+        }
+        execute(connection, "INSERT OR IGNORE INTO co_player (name) "
+                + "SELECT DISTINCT player FROM co_list_item WHERE player IS NOT NULL");
+        execute(connection, "CREATE TABLE co_list_item_new ("
+                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "item_name TEXT, "
+                + "item_display TEXT, "
+                + "description TEXT, "
+                + "player_id INTEGER REFERENCES co_player (id), "
+                + "enable INTEGER, "
+                + "command TEXT, "
+                + "used INTEGER"
+                + ")");
+        execute(connection, "INSERT INTO co_list_item_new (id, item_name, item_display, description, player_id, enable, command, used) "
+                + "SELECT i.id, i.item_name, i.item_display, i.description, p.id, i.enable, i.command, i.used "
+                + "FROM co_list_item i LEFT JOIN co_player p ON p.name = i.player");
+        execute(connection, "DROP TABLE co_list_item");
+        execute(connection, "ALTER TABLE co_list_item_new RENAME TO co_list_item");
+        createIndexIfMissing(connection, false, "co_list_item", "idx_co_list_item_player_id_enable", "player_id, enable");
+
+        // trigger ของ FTS ถูกลบไปพร้อมตารางเดิม
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, "co_list_item_fts");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    createSqliteSearchTriggers(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies every co_list_item row into co_item_grant with the same id, creating one
+     * template per distinct definition. Rows already copied are skipped, so a partly
+     * applied MySQL migration can run again.
+     */
+    private static void copyListItemsToGrants(Connection connection, boolean mysql) throws SQLException {
+        Map<String, Integer> templateIds = new HashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, content_hash FROM co_item_template")) {
+            while (rs.next()) {
+                templateIds.putIfAbsent(rs.getString("content_hash"), rs.getInt("id"));
+            }
+        }
+
+        String selectSQL = "SELECT id, item_name, item_display, description, player_id, enable, command, used "
+                + "FROM co_list_item WHERE id > ? ORDER BY id LIMIT " + MIGRATION_CHUNK_SIZE;
+        String templateSQL = "INSERT INTO co_item_template (content_hash, item_name, item_display, description, command, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+        String grantSQL = (mysql ? "INSERT IGNORE" : "INSERT OR IGNORE")
+                + " INTO co_item_grant (id, template_id, player_id, enable, used) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement select = connection.prepareStatement(selectSQL);
+             PreparedStatement insertTemplate = connection.prepareStatement(templateSQL, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement insertGrant = connection.prepareStatement(grantSQL)) {
+            int lastId = 0;
+            while (true) {
+                int rows = 0;
+                select.setInt(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastId = rs.getInt("id");
+                        String itemName = rs.getString("item_name");
+                        String itemDisplay = rs.getString("item_display");
+                        String description = rs.getString("description");
+                        String command = rs.getString("command");
+                        String hash = ItemTemplate.contentHash(itemName, itemDisplay, description, command);
+
+                        Integer templateId = templateIds.get(hash);
+                        if (templateId == null) {
+                            insertTemplate.setString(1, hash);
+                            insertTemplate.setString(2, itemName);
+                            insertTemplate.setString(3, itemDisplay);
+                            insertTemplate.setString(4, description);
+                            insertTemplate.setString(5, command);
+                            insertTemplate.setLong(6, System.currentTimeMillis());
+                            insertTemplate.executeUpdate();
+                            try (ResultSet keys = insertTemplate.getGeneratedKeys()) {
+                                if (!keys.next()) {
+                                    throw new SQLException("No id returned for new item template");
+                                }
+                                templateId = keys.getInt(1);
+                            }
+                            templateIds.put(hash, templateId);
+                        }
+
+                        insertGrant.setInt(1, lastId);
+                        insertGrant.setInt(2, templateId);
+                        insertGrant.setObject(3, rs.getObject("player_id") == null ? null : rs.getInt("player_id"), Types.INTEGER);
+                        insertGrant.setBoolean(4, rs.getBoolean("enable"));
+                        insertGrant.setInt(5, rs.getInt("used"));
+                        insertGrant.addBatch();
+                    }
+                }
+                if (rows == 0) {
+                    break;
+                }
+                insertGrant.executeBatch();
+            }
+        }
+    }
+
+    private void createSqliteTemplateSearchIndex(Connection connection) throws SQLException {
+        try {
+            execute(connection, "CREATE VIRTUAL TABLE IF NOT EXISTS co_item_template_fts USING fts5("
+                    + "item_name, description, content='co_item_template', content_rowid='id', "
+                    + "tokenize='unicode61 remove_diacritics 2')");
+        } catch (SQLException e) {
+            logger.warning("SQLite FTS5 is not available, library search will use the in-memory index: " + e.getMessage());
+            return;
+        }
+
+        execute(connection, "CREATE TRIGGER IF NOT EXISTS co_item_template_fts_insert AFTER INSERT ON co_item_template BEGIN "
+                + "INSERT INTO co_item_template_fts (rowid, item_name, description) VALUES (new.id, new.item_name, new.description); "
+                + "END");
+        execute(connection, "CREATE TRIGGER IF NOT EXISTS co_item_template_fts_delete AFTER DELETE ON co_item_template BEGIN "
+                + "INSERT INTO co_item_template_fts (co_item_template_fts, rowid, item_name, description) VALUES ('delete', old.id, old.item_name, old.description); "
+                + "END");
+        execute(connection, "CREATE TRIGGER IF NOT EXISTS co_item_template_fts_update AFTER UPDATE OF item_name, description ON co_item_template BEGIN "
+                + "INSERT INTO co_item_template_fts (co_item_template_fts, rowid, item_name, description) VALUES ('delete', old.id, old.item_name, old.description); "
+                + "INSERT INTO co_item_template_fts (rowid, item_name, description) VALUES (new.id, new.item_name, new.description); "
+                + "END");
+
+        execute(connection, "INSERT INTO co_item_template_fts (co_item_template_fts) VALUES ('delete-all')");
+        execute(connection, "INSERT INTO co_item_template_fts (rowid, item_name, description) "
+                + "SELECT id, item_name, description FROM co_item_template");
+    }
+
+    static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getTables(connection.getCatalog(), null, table, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+
+    static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    static void createIndexIfMissing(Connection connection, boolean mysql, String table, String indexName, String columns) throws SQLException {
+        if (!mysql) {
+            execute(connection, "CREATE INDEX IF NOT EXISTS " + indexName + " ON " + table + " (" + columns + ")");
+            return;
+        }
+        // MySQL ไม่รองรับ CREATE INDEX IF NOT EXISTS
+        if (!indexExists(connection, table, indexName)) {
+            execute(connection, "CREATE INDEX " + indexName + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, table, null)) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean foreignKeyExists(Connection connection, String table, String constraintName) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getImportedKeys(connection.getCatalog(), null, table)) {
+            while (rs.next()) {
+                if (constraintName.equalsIgnoreCase(rs.getString("FK_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean indexExists(Connection connection, String table, String indexName) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
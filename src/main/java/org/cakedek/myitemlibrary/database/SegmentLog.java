@@ -0,0 +1,358 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log split into fixed-size, memory-mapped segment files.
+ *
+ * <p>Each record is {@code [int length][int crc32][byte type][payload]}; the CRC covers the
+ * type and payload. A zero length marks the end of a segment. A record is addressed by its
+ * location, {@code segmentId << 32 | offset}. {@link EmbeddedItemStore} serializes appends
+ * and only reads the active segment while no append is running; sealed segments never change.
+ * An open log holds an exclusive lock on its directory, so a second log cannot append over it.
+ */
+public class SegmentLog {
+    public static final int HEADER_SIZE = 9;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String LOCK_FILE = "log.lock";
+
+    private final File directory;
+    private final int segmentSize;
+    private final Logger logger;
+    // compaction อ่าน segment ที่ปิดแล้วพร้อมกับการเขียน จึงใช้ map ที่อ่านข้าม thread ได้
+    private final NavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private volatile Segment active;
+    private FileChannel lockChannel;
+
+    @FunctionalInterface
+    public interface RecordVisitor {
+        void visit(long location, byte type, ByteBuffer payload) throws IOException;
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int end;
+
+        private Segment(int id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    public SegmentLog(File directory, int segmentSize, Logger logger) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.logger = logger;
+    }
+
+    /**
+     * Maps every segment and finds where the last one ends. A torn or corrupt record at the
+     * end of the last segment, left by a crash, is cut off here.
+     *
+     * @throws IOException if another log, in this process or another, already has the directory open
+     */
+    public void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        lock();
+        try {
+            mapSegments();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void lock() throws IOException {
+        lockChannel = new RandomAccessFile(new File(directory, LOCK_FILE), "rw").getChannel();
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // JVM เดียวกันถือ lock ไฟล์นี้อยู่แล้ว เช่น store เก่าที่ยังไม่ถูกปิด
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            lockChannel = null;
+            throw new IOException(directory + " is already open in another store");
+        }
+    }
+
+    private void mapSegments() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+                int id;
+                try {
+                    id = Integer.parseInt(number);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                segments.put(id, new Segment(id, file, map(file)));
+            }
+        }
+
+        for (Segment segment : segments.values()) {
+            segment.end = scanEnd(segment, segment == segments.lastEntry().getValue());
+        }
+        if (segments.isEmpty()) {
+            rotate();
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            if (raf.length() < segmentSize) {
+                raf.setLength(segmentSize);
+            }
+            // mapping ยังใช้ได้หลังปิด channel
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+    }
+
+    private int scanEnd(Segment segment, boolean last) {
+        int offset = 0;
+        while (true) {
+            int length = validRecordLength(segment, offset);
+            if (length <= 0) {
+                if (length < 0) {
+                    if (last) {
+                        logger.warning("Discarding a torn record at the end of " + segment.file.getName() + " (offset " + offset + ")");
+                        zeroFrom(segment, offset);
+                    } else {
+                        logger.warning("Corrupt record in " + segment.file.getName() + " at offset " + offset
+                                + ", the rest of this segment is ignored");
+                    }
+                }
+                return offset;
+            }
+            offset += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * @return the payload length of a valid record at {@code offset}, 0 at the end of the data, -1 if the record is damaged
+     */
+    private int validRecordLength(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer;
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length == 0) {
+            return 0;
+        }
+        if (length < 0 || offset + HEADER_SIZE + (long) length > buffer.capacity()) {
+            return -1;
+        }
+        return buffer.getInt(offset + 4) == crc(buffer, offset + 8, length + 1) ? length : -1;
+    }
+
+    private static int crc(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void zeroFrom(Segment segment, int offset) {
+        byte[] zeros = new byte[8192];
+        for (int position = offset; position < segment.buffer.capacity(); position += zeros.length) {
+            segment.buffer.put(position, zeros, 0, Math.min(zeros.length, segment.buffer.capacity() - position));
+        }
+        segment.buffer.force();
+    }
+
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.buffer.force();
+        }
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        File file = new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        Segment segment = new Segment(id, file, map(file));
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    /**
+     * Appends a record and returns its location. The record is durable once {@link #force()} returns.
+     */
+    public long append(byte type, byte[] payload) throws IOException {
+        if (payload.length == 0 || HEADER_SIZE + payload.length > segmentSize) {
+            throw new IOException("Record of " + payload.length + " bytes does not fit in a segment");
+        }
+        if (active.end + HEADER_SIZE + payload.length > active.buffer.capacity()) {
+            rotate();
+        }
+
+        int offset = active.end;
+        ByteBuffer buffer = active.buffer;
+        buffer.put(offset + 8, type);
+        buffer.put(offset + HEADER_SIZE, payload);
+        buffer.putInt(offset + 4, crc(buffer, offset + 8, payload.length + 1));
+        // เขียนความยาวเป็นอย่างสุดท้าย ระเบียนจึงยังไม่นับจนกว่าจะเขียนครบ
+        buffer.putInt(offset, payload.length);
+        active.end = offset + HEADER_SIZE + payload.length;
+        return location(active.id, offset);
+    }
+
+    public void force() {
+        active.buffer.force();
+    }
+
+    public byte readType(long location) {
+        return segment(location).buffer.get(offset(location) + 8);
+    }
+
+    /**
+     * Read-only view of the record's payload, positioned at its start.
+     */
+    public ByteBuffer readPayload(long location) {
+        Segment segment = segment(location);
+        int offset = offset(location);
+        return segment.buffer.slice(offset + HEADER_SIZE, segment.buffer.getInt(offset)).asReadOnlyBuffer();
+    }
+
+    public int recordSize(long location) {
+        return HEADER_SIZE + segment(location).buffer.getInt(offset(location));
+    }
+
+    /**
+     * Visits every record from {@code from} (inclusive) to the end of the log, in order.
+     */
+    public void replay(long from, RecordVisitor visitor) throws IOException {
+        for (Segment segment : segments.tailMap(segmentId(from), true).values()) {
+            int start = segment.id == segmentId(from) ? offset(from) : 0;
+            visitSegment(segment, start, visitor);
+        }
+    }
+
+    public void forEachRecord(int segmentId, RecordVisitor visitor) throws IOException {
+        Segment segment = segments.get(segmentId);
+        if (segment != null) {
+            visitSegment(segment, 0, visitor);
+        }
+    }
+
+    private void visitSegment(Segment segment, int start, RecordVisitor visitor) throws IOException {
+        int offset = start;
+        while (offset < segment.end) {
+            int length = segment.buffer.getInt(offset);
+            visitor.visit(location(segment.id, offset), segment.buffer.get(offset + 8),
+                    segment.buffer.slice(offset + HEADER_SIZE, length).asReadOnlyBuffer());
+            offset += HEADER_SIZE + length;
+        }
+    }
+
+    public boolean hasSegment(int id) {
+        return segments.containsKey(id);
+    }
+
+    /**
+     * @return whether any segment with an id in {@code [from, to)} still exists
+     */
+    public boolean hasSegmentBetween(int from, int to) {
+        return from < to && !segments.subMap(from, true, to, false).isEmpty();
+    }
+
+    public int getActiveSegmentId() {
+        return active.id;
+    }
+
+    /**
+     * Location right after the last record; replaying from here visits nothing.
+     */
+    public long getEndLocation() {
+        return location(active.id, active.end);
+    }
+
+    public List<Integer> getSealedSegmentIds() {
+        return new ArrayList<>(segments.headMap(active.id, false).keySet());
+    }
+
+    /**
+     * Bytes of record data in each segment, live or not.
+     */
+    public Map<Integer, Integer> getSegmentSizes() {
+        Map<Integer, Integer> sizes = new TreeMap<>();
+        for (Segment segment : segments.values()) {
+            sizes.put(segment.id, segment.end);
+        }
+        return sizes;
+    }
+
+    public void deleteSegment(int id) {
+        Segment segment = segments.get(id);
+        if (segment == null || segment == active) {
+            return;
+        }
+        segments.remove(id);
+        // ทำให้ segment ว่างก่อน เผื่อลบไฟล์ไม่ได้ (Windows ลบไฟล์ที่ยัง map อยู่ไม่ได้) จะได้ไม่ถูกอ่านซ้ำตอนเปิดใหม่
+        segment.buffer.putInt(0, 0);
+        segment.buffer.force();
+        if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    public void close() {
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        active = null;
+        if (lockChannel != null) {
+            try {
+                // ปิด channel แล้ว lock ถูกปล่อยไปด้วย
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.warning("Failed to release " + new File(directory, LOCK_FILE) + ": " + e.getMessage());
+            }
+            lockChannel = null;
+        }
+    }
+
+    public static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    public static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    public static int offset(long location) {
+        return (int) location;
+    }
+
+    private Segment segment(long location) {
+        Segment segment = segments.get(segmentId(location));
+        if (segment == null) {
+            throw new IllegalStateException("Segment " + segmentId(location) + " no longer exists");
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,264 @@
+package org.cakedek.myitemlibrary.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs every write in Local mode on one thread with one connection, so writers never
+ * compete for the SQLite lock. Short writes that are waiting at the same time are
+ * committed together in one transaction (group commit), each inside its own savepoint
+ * so a failing write does not roll back the others.
+ */
+public class SqliteWriter {
+    private static final long WAIT_CHECK_MS = 1000;
+
+    private final String url;
+    private final List<String> initSql;
+    private final int maxGroupSize;
+    private final Logger logger;
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    private Connection connection;
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    private static final class Task<T> {
+        private final CoDatabase.SqlWork<T> work;
+        private final boolean grouped;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Task(CoDatabase.SqlWork<T> work, boolean grouped) {
+            this.work = work;
+            this.grouped = grouped;
+        }
+
+        private T run(Connection connection) throws SQLException {
+            return work.run(connection);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void succeed(Object value) {
+            result.complete((T) value);
+        }
+
+        private void fail(Throwable error) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    public SqliteWriter(String url, List<String> initSql, int maxGroupSize, Logger logger) {
+        this.url = url;
+        this.initSql = initSql;
+        this.maxGroupSize = Math.max(1, maxGroupSize);
+        this.logger = logger;
+        this.thread = new Thread(this::run, "MyItemLibrary-SQLiteWriter");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() throws SQLException {
+        connection = DriverManager.getConnection(url);
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : initSql) {
+                stmt.execute(sql);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        thread.start();
+    }
+
+    /**
+     * Runs {@code work} on the writer thread and waits for it to commit. Grouped work may be
+     * committed together with other writes and must not manage its own transaction; work that
+     * commits or rolls back itself must pass {@code grouped = false}.
+     */
+    public <T> T submit(CoDatabase.SqlWork<T> work, boolean grouped) throws SQLException {
+        if (Thread.currentThread() == thread) {
+            return work.run(connection);
+        }
+        if (closed) {
+            throw new SQLException("SQLite writer is closed");
+        }
+
+        Task<T> task = new Task<>(work, grouped);
+        queue.add(task);
+        // ถ้าปิดระหว่างนั้น thread อาจออกจาก loop ไปแล้ว ถ้ายังเอางานคืนจากคิวได้แปลว่าไม่มีใครรับไป
+        if (closed && queue.remove(task)) {
+            throw new SQLException("SQLite writer is closed");
+        }
+        try {
+            while (true) {
+                try {
+                    return task.result.get(WAIT_CHECK_MS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // งานยาวรอต่อได้ แต่ถ้า thread หยุดไปแล้วจะไม่มีใครตอบอีก
+                    if (!thread.isAlive() && !task.result.isDone()) {
+                        queue.remove(task);
+                        throw new SQLException("SQLite writer stopped before the write finished");
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the SQLite writer", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    private void run() {
+        while (!closed || !queue.isEmpty()) {
+            Task<?> first;
+            try {
+                first = queue.poll(250, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (first == null) {
+                continue;
+            }
+
+            if (!first.grouped) {
+                runAlone(first);
+                continue;
+            }
+            List<Task<?>> group = new ArrayList<>();
+            group.add(first);
+            // มีผู้อ่านคิวแค่ thread นี้ peek แล้ว poll จึงได้ตัวเดียวกันเสมอ
+            while (group.size() < maxGroupSize) {
+                Task<?> next = queue.peek();
+                if (next == null || !next.grouped) {
+                    break;
+                }
+                group.add(queue.poll());
+            }
+            if (group.size() == 1) {
+                runAlone(first);
+            } else {
+                runGroup(group);
+            }
+        }
+
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            task.fail(new SQLException("SQLite writer is closed"));
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to close the SQLite writer connection.", e);
+        }
+    }
+
+    private void runAlone(Task<?> task) {
+        try {
+            Object value = task.run(connection);
+            writes.incrementAndGet();
+            commits.incrementAndGet();
+            task.succeed(value);
+        } catch (Throwable e) {
+            restoreAutoCommit();
+            task.fail(e);
+        }
+    }
+
+    private void runGroup(List<Task<?>> group) {
+        Object[] values = new Object[group.size()];
+        Throwable[] errors = new Throwable[group.size()];
+        try {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < group.size(); i++) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    values[i] = group.get(i).run(connection);
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback(savepoint);
+                    errors[i] = e;
+                }
+            }
+            connection.commit();
+            commits.incrementAndGet();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException ignored) {
+            }
+            for (int i = 0; i < group.size(); i++) {
+                if (errors[i] == null) {
+                    errors[i] = e;
+                }
+            }
+        } finally {
+            restoreAutoCommit();
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            if (errors[i] != null) {
+                group.get(i).fail(errors[i]);
+            } else {
+                writes.incrementAndGet();
+                group.get(i).succeed(values[i]);
+            }
+        }
+    }
+
+    private void restoreAutoCommit() {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Failed to reset the SQLite writer connection.", e);
+        }
+    }
+
+    /**
+     * Finishes the writes already queued, then closes the connection.
+     */
+    public void close() {
+        closed = true;
+        if (!thread.isAlive()) {
+            return;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warning("SQLite writer did not finish in time.");
+            thread.interrupt();
+        }
+    }
+
+    // Stats
+    public int getQueueDepth() { return queue.size(); }
+    public long getWrites() { return writes.get(); }
+    public long getCommits() { return commits.get(); }
+}
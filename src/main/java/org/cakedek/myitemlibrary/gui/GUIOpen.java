@@ -13,18 +13,21 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
-import org.cakedek.myitemlibrary.database.CoDatabase;
+import org.cakedek.myitemlibrary.database.ClaimQueue;
+import org.cakedek.myitemlibrary.database.ItemStore;
+import org.cakedek.myitemlibrary.database.DatabaseExecutor;
+import org.cakedek.myitemlibrary.database.ItemData;
 import org.cakedek.myitemlibrary.commands.CommandDetails;
 import org.cakedek.myitemlibrary.MyItemLibrary;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
 
 @SuppressWarnings("ALL")
@@ -33,13 +36,16 @@ public class GUIOpen implements CommandExecutor, Listener {
     private static final int INVENTORY_SIZE = 54;
 
     private final MyItemLibrary plugin;
-    private final CoDatabase database;
     private final Map<UUID, Integer> playerPageMap = new HashMap<>();
     private final Map<UUID, String> playerSearchMap = new HashMap<>();
+    // id สุดท้ายก่อนเริ่มแต่ละหน้า (keyset) ของผู้เล่นแต่ละคน
+    private final Map<UUID, List<Integer>> playerPageAnchors = new HashMap<>();
+    private final Map<UUID, Integer> playerItemCount = new HashMap<>();
+    // ผู้เล่นที่กำลังรอผลจากฐานข้อมูล กันการคลิกซ้ำ
+    private final Set<UUID> loadingPlayers = new HashSet<>();
 
     public GUIOpen(MyItemLibrary plugin) {
         this.plugin = plugin;
-        this.database = plugin.getDatabase();
     }
 
     @SuppressWarnings("NullableProblems")
@@ -65,48 +71,121 @@ public class GUIOpen implements CommandExecutor, Listener {
     }
 
 
+    private static class LibraryPage {
+        private final List<ItemData> rows;
+        private final int totalCount;
+
+        private LibraryPage(List<ItemData> rows, int totalCount) {
+            this.rows = rows;
+            this.totalCount = totalCount;
+        }
+    }
+
     public void openLibraryGui(Player player, int page) {
+        // /my-library-reload เปลี่ยน store ได้ จึงถามจากปลั๊กอินทุกครั้ง
+        ItemStore database = plugin.getDatabase();
         if (database == null) {
             player.sendMessage(plugin.getTranslation("messages.db_not_connected", player));
             return;
         }
 
-        try {
-            String searchTerm = playerSearchMap.getOrDefault(player.getUniqueId(), "");
-            ResultSet rs = database.getListItemsByPlayerAndEnabledAndSearch(player.getName(), searchTerm);
-            List<ItemStack> items = loadItemsFromResultSet(rs);
+        UUID playerId = player.getUniqueId();
+        if (!loadingPlayers.add(playerId)) {
+            return;
+        }
+
+        String playerName = player.getName();
+        String searchTerm = playerSearchMap.getOrDefault(playerId, "");
+        DatabaseExecutor.SqlTask<LibraryPage> task;
+        int targetPage;
+        if (searchTerm.isEmpty()) {
+            // เปิดหน้าแรกใหม่ทุกครั้งจะนับจำนวนไอเทมใหม่ด้วย หน้าอื่นใช้ค่าที่เก็บไว้
+            List<Integer> anchors = playerPageAnchors.computeIfAbsent(playerId, id -> new ArrayList<>());
+            boolean refreshCount = page <= 0 || anchors.isEmpty() || !playerItemCount.containsKey(playerId);
+            if (anchors.isEmpty()) {
+                anchors.add(0);
+            }
+            targetPage = Math.max(0, Math.min(page, anchors.size() - 1));
+            int afterId = anchors.get(targetPage);
+            task = () -> new LibraryPage(
+                    database.getListItemsPage(playerName, afterId, ITEMS_PER_PAGE + 1),
+                    refreshCount ? database.countListItems(playerName) : -1);
+        } else {
+            // ผลการค้นหาเรียงตามความเกี่ยวข้อง จึงแบ่งหน้าด้วย offset
+            targetPage = Math.max(0, page);
+            int offset = targetPage * ITEMS_PER_PAGE;
+            task = () -> new LibraryPage(database.searchItems(playerName, searchTerm, offset, ITEMS_PER_PAGE + 1), -1);
+        }
+
+        int openedPage = targetPage;
+        plugin.getDatabaseExecutor().submit(
+                task,
+                result -> {
+                    loadingPlayers.remove(playerId);
+                    if (player.isOnline()) {
+                        showLibraryGui(player, result, openedPage, !searchTerm.isEmpty());
+                    }
+                },
+                e -> {
+                    loadingPlayers.remove(playerId);
+                    player.sendMessage(plugin.getTranslation("messages.db_error", player));
+                    plugin.getLogger().log(java.util.logging.Level.SEVERE, "An error occurred while fetching the item list.", e);
+                });
+    }
 
-            int totalPages = (int) Math.ceil(items.size() / (double) ITEMS_PER_PAGE);
-            String guiTitle = plugin.getTranslation("gui.title", page + 1, player);
-            Inventory gui = Bukkit.createInventory(new LibraryGUIHolder(), INVENTORY_SIZE, guiTitle);
+    private void showLibraryGui(Player player, LibraryPage result, int page, boolean searching) {
+        UUID playerId = player.getUniqueId();
+        boolean hasNextPage = result.rows.size() > ITEMS_PER_PAGE;
+        List<ItemData> visibleRows = hasNextPage ? result.rows.subList(0, ITEMS_PER_PAGE) : result.rows;
 
-            populateInventoryWithItems(gui, items, page);
-            addNavigationButtons(gui, page, totalPages);
-            addUtilityButtons(gui, player);
+        int cachedPages = 0;
+        if (!searching) {
+            List<Integer> anchors = playerPageAnchors.computeIfAbsent(playerId, id -> new ArrayList<>(Collections.singletonList(0)));
+            while (anchors.size() > page + 1) {
+                anchors.remove(anchors.size() - 1);
+            }
+            if (hasNextPage) {
+                anchors.add(visibleRows.get(visibleRows.size() - 1).getId());
+            }
 
-            playerPageMap.put(player.getUniqueId(), page);
-            player.openInventory(gui);
-        } catch (SQLException e) {
-            player.sendMessage(plugin.getTranslation("messages.db_error", player));
-            plugin.getLogger().log(java.util.logging.Level.SEVERE, "An error occurred while fetching the item list.", e);
+            if (result.totalCount >= 0) {
+                playerItemCount.put(playerId, result.totalCount);
+            }
+            cachedPages = (int) Math.ceil(playerItemCount.getOrDefault(playerId, 0) / (double) ITEMS_PER_PAGE);
         }
+        int totalPages = Math.max(cachedPages, page + (hasNextPage ? 2 : 1));
+
+        List<ItemStack> items = loadItems(visibleRows);
+        String guiTitle = plugin.getTranslation("gui.title", page + 1, totalPages, player);
+        Inventory gui = Bukkit.createInventory(new LibraryGUIHolder(), INVENTORY_SIZE, guiTitle);
+
+        populateInventoryWithItems(gui, items);
+        addNavigationButtons(gui, page, hasNextPage);
+        addUtilityButtons(gui, player);
+
+        playerPageMap.put(playerId, page);
+        player.openInventory(gui);
     }
 
-    private List<ItemStack> loadItemsFromResultSet(ResultSet rs) throws SQLException {
+    private List<ItemStack> loadItems(List<ItemData> rows) {
         List<ItemStack> items = new ArrayList<>();
-        while (rs.next()) {
-            ItemStack item = createItemStackFromResultSet(rs);
+        ClaimQueue claimQueue = plugin.getClaimQueue();
+        for (ItemData row : rows) {
+            if (claimQueue != null && claimQueue.isPending(row.getId())) {
+                continue;
+            }
+            ItemStack item = createItemStack(row);
             items.add(item);
-            plugin.getCommandMap().put(item, new CommandDetails(rs.getInt("id"), rs.getString("command")));
+            plugin.getCommandMap().put(item, new CommandDetails(row.getId(), row.getCommand()));
         }
         return items;
     }
 
-    private ItemStack createItemStackFromResultSet(ResultSet rs) throws SQLException {
-        String itemName = rs.getString("item_name");
-        String itemDisplay = rs.getString("item_display");
-        String description = rs.getString("description");
-        int id = rs.getInt("id");
+    private ItemStack createItemStack(ItemData row) {
+        String itemName = row.getItemName();
+        String itemDisplay = row.getItemDisplay();
+        String description = row.getDescription();
+        int id = row.getId();
 
         Material material = Material.BARRIER;
         try {
@@ -138,21 +217,18 @@ public class GUIOpen implements CommandExecutor, Listener {
         return lines;
     }
 
-    private void populateInventoryWithItems(Inventory gui, List<ItemStack> items, int page) {
-        int start = page * ITEMS_PER_PAGE;
-        int end = Math.min(start + ITEMS_PER_PAGE, items.size());
-
-        for (int i = start; i < end; i++) {
-            gui.setItem(i - start, items.get(i));
+    private void populateInventoryWithItems(Inventory gui, List<ItemStack> items) {
+        for (int i = 0; i < items.size() && i < ITEMS_PER_PAGE; i++) {
+            gui.setItem(i, items.get(i));
         }
     }
 
-    private void addNavigationButtons(Inventory gui, int currentPage, int totalPages) {
+    private void addNavigationButtons(Inventory gui, int currentPage, boolean hasNextPage) {
         if (currentPage > 0) {
             gui.setItem(45, createNavigationItem(Material.ARROW, plugin.getTranslation("gui.prev_page", null), "prev_page"));
         }
 
-        if (currentPage < totalPages - 1) {
+        if (hasNextPage) {
             gui.setItem(53, createNavigationItem(Material.ARROW, plugin.getTranslation("gui.next_page", null), "next_page"));
         }
     }
@@ -243,25 +319,40 @@ public class GUIOpen implements CommandExecutor, Listener {
     private void handleItemClick(InventoryClickEvent event, Player player, ItemStack clickedItem) {
         CommandDetails commandDetails = plugin.getCommandMap().get(clickedItem);
 
-        if (commandDetails == null) {
+        if (commandDetails == null || loadingPlayers.contains(player.getUniqueId())) {
             return;
         }
 
         player.closeInventory();
-        String commandToRun = commandDetails.getCommand().replace("<player>", player.getName());
-        Bukkit.dispatchCommand(Bukkit.getConsoleSender(), commandToRun);
-        player.sendMessage(plugin.getTranslation("gui.item_received", Objects.requireNonNull(clickedItem.getItemMeta()).getDisplayName(), player));
-
-        updateItemInDatabase(commandDetails.getId());
+        plugin.getCommandMap().remove(clickedItem);
+        String displayName = Objects.requireNonNull(clickedItem.getItemMeta()).getDisplayName();
+        claimItem(player, commandDetails, displayName);
     }
 
-    private void updateItemInDatabase(int itemId) {
-        try {
-            database.updateItemEnabled(itemId, false);
-            database.updateItemused(itemId);
-        } catch (SQLException e) {
-            plugin.getLogger().log(java.util.logging.Level.SEVERE, "An error occurred while updating the item.", e);
-        }
+    // รันคำสั่งรางวัลหลังจากฐานข้อมูลยืนยันว่าเคลมได้จริงเท่านั้น กันการรับซ้ำจากการคลิกเร็วหรือหลายเซิร์ฟเวอร์
+    private void claimItem(Player player, CommandDetails commandDetails, String displayName) {
+        UUID playerId = player.getUniqueId();
+        loadingPlayers.add(playerId);
+        plugin.getDatabaseExecutor().submit(
+                () -> {
+                    ClaimQueue claimQueue = plugin.getClaimQueue();
+                    return claimQueue != null ? claimQueue.claim(commandDetails.getId()) : plugin.getDatabase().claimItem(commandDetails.getId());
+                },
+                claimed -> {
+                    loadingPlayers.remove(playerId);
+                    if (!claimed) {
+                        player.sendMessage(plugin.getTranslation("gui.item_already_claimed", player));
+                        return;
+                    }
+                    String commandToRun = commandDetails.getCommand().replace("<player>", player.getName());
+                    Bukkit.dispatchCommand(Bukkit.getConsoleSender(), commandToRun);
+                    player.sendMessage(plugin.getTranslation("gui.item_received", displayName, player));
+                },
+                e -> {
+                    loadingPlayers.remove(playerId);
+                    plugin.getLogger().log(java.util.logging.Level.SEVERE, "An error occurred while claiming the item.", e);
+                    player.sendMessage(plugin.getTranslation("messages.db_error", player));
+                });
     }
 
     private void handleNavigationClick(InventoryClickEvent event, Player player) {
@@ -356,6 +447,35 @@ public class GUIOpen implements CommandExecutor, Listener {
         }
     }
 
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        ItemStore database = plugin.getDatabase();
+        if (database == null) {
+            return;
+        }
+        UUID playerId = event.getPlayer().getUniqueId();
+        String playerName = event.getPlayer().getName();
+        plugin.getDatabaseExecutor().execute(() -> {
+            database.registerPlayer(playerId, playerName);
+            database.warmLibraryCache(playerName);
+            return null;
+        }, "Failed to register or prefetch the library of " + playerName);
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        UUID playerId = player.getUniqueId();
+        playerPageMap.remove(playerId);
+        playerPageAnchors.remove(playerId);
+        playerItemCount.remove(playerId);
+        playerSearchMap.remove(playerId);
+        ItemStore database = plugin.getDatabase();
+        if (database != null) {
+            database.evictLibraryCache(player.getName());
+        }
+    }
+
     @EventHandler
     public void onPlayerChat(AsyncPlayerChatEvent event) {
         Player player = event.getPlayer();
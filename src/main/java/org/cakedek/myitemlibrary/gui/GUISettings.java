@@ -16,6 +16,7 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.cakedek.myitemlibrary.MyItemLibrary;
+import org.cakedek.myitemlibrary.api.Api;
 
 import java.io.File;
 import java.io.IOException;
@@ -155,11 +156,17 @@ public class GUISettings implements Listener {
         plugin.getConfig().set("c-api.c-api-enable", !currentState);
         plugin.saveConfig();
 
+        // api เป็น null ได้ถ้า /my-library-reload เปิดฐานข้อมูลใหม่ไม่สำเร็จ
+        Api api = plugin.getApi();
         if (!currentState) {
-            plugin.getApi().startServer();
+            if (api != null) {
+                api.startServer();
+            }
             player.sendMessage("§aAPI has been enabled.");
         } else {
-            plugin.getApi().stopServer();
+            if (api != null) {
+                api.stopServer();
+            }
             player.sendMessage("§cAPI has been disabled.");
         }
         openSettingsGUI(player);
@@ -184,8 +191,11 @@ public class GUISettings implements Listener {
         player.sendMessage(ChatColor.GREEN + "Please update your applications with this new key.");
 
         plugin.reloadConfig();
-        plugin.getApi().stopServer();
-        plugin.getApi().startServer();
+        Api api = plugin.getApi();
+        if (api != null) {
+            api.stopServer();
+            api.startServer();
+        }
 
         openSettingsGUI(player);
     }
@@ -0,0 +1,128 @@
+package org.cakedek.myitemlibrary.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCompressionTest {
+    private static final byte[] JSON = repeat("{\"id\":1,\"itemName\":\"Sword\",\"player\":\"Steve\",\"enable\":true},", 200);
+
+    @Test
+    public void gzipDecompressesToTheOriginalBody() throws IOException {
+        ResponseCompression compression = new ResponseCompression(true, 256, 6);
+        byte[] compressed = compression.compress(JSON, ResponseCompression.GZIP);
+
+        assertEquals(0x1f, compressed[0] & 0xff);
+        assertEquals(0x8b, compressed[1] & 0xff);
+        assertArrayEquals(JSON, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertEquals(1, compression.getGzipResponses());
+        assertEquals(JSON.length, compression.getUncompressedBytes());
+        assertEquals(compressed.length, compression.getCompressedBytes());
+        assertTrue(compression.getRatio() < 0.1);
+    }
+
+    @Test
+    public void deflateIsZlibWrapped() throws IOException {
+        ResponseCompression compression = new ResponseCompression(true, 256, 6);
+        byte[] compressed = compression.compress(JSON, ResponseCompression.DEFLATE);
+
+        // HTTP deflate คือรูปแบบ zlib (RFC 1950) ไม่ใช่ deflate ดิบ
+        assertEquals(0x78, compressed[0] & 0xff);
+        assertArrayEquals(JSON, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+        assertEquals(1, compression.getDeflateResponses());
+    }
+
+    @Test
+    public void smallBodiesAreNotCompressed() throws IOException {
+        ResponseCompression compression = new ResponseCompression(true, 256, 6);
+
+        assertNull(compression.compress("{\"ok\":true}".getBytes(StandardCharsets.UTF_8), ResponseCompression.GZIP));
+        assertEquals(1, compression.getSkippedSmall());
+        assertEquals(0, compression.getGzipResponses());
+    }
+
+    @Test
+    public void incompressibleBodiesLargerThanTheBufferSurvive() throws IOException {
+        byte[] body = new byte[100_000];
+        new Random(1).nextBytes(body);
+        ResponseCompression compression = new ResponseCompression(true, 0, 9);
+
+        assertArrayEquals(body, readAll(new GZIPInputStream(new ByteArrayInputStream(compression.compress(body, ResponseCompression.GZIP)))));
+        assertArrayEquals(body, readAll(new InflaterInputStream(new ByteArrayInputStream(compression.compress(body, ResponseCompression.DEFLATE)))));
+    }
+
+    @Test
+    public void flushMakesEverythingWrittenSoFarDecodable() throws IOException, DataFormatException {
+        ResponseCompression compression = new ResponseCompression(true, 0, 6);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        OutputStream out = compression.wrap(sink, ResponseCompression.DEFLATE);
+        byte[] first = "[{\"id\":1},".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "{\"id\":2}]".getBytes(StandardCharsets.UTF_8);
+
+        out.write(first);
+        out.flush();
+        Inflater inflater = new Inflater();
+        inflater.setInput(sink.toByteArray());
+        byte[] decoded = new byte[first.length];
+        assertEquals(first.length, inflater.inflate(decoded));
+        assertArrayEquals(first, decoded);
+        inflater.end();
+
+        out.write(second);
+        out.close();
+        byte[] expected = new byte[first.length + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        assertArrayEquals(expected, readAll(new InflaterInputStream(new ByteArrayInputStream(sink.toByteArray()))));
+    }
+
+    @Test
+    public void gzipTrailerMatchesStreamedInput() throws IOException {
+        ResponseCompression compression = new ResponseCompression(true, 0, 1);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        try (OutputStream out = compression.wrap(sink, ResponseCompression.GZIP)) {
+            for (int i = 0; i < 50; i++) {
+                out.write(JSON, 0, JSON.length / 2);
+                out.write(JSON[0]);
+                out.flush();
+            }
+        }
+
+        // GZIPInputStream ตรวจ CRC32 และความยาวใน trailer ให้ด้วย
+        byte[] decoded = readAll(new GZIPInputStream(new ByteArrayInputStream(sink.toByteArray())));
+        assertEquals(50 * (JSON.length / 2 + 1), decoded.length);
+        assertEquals(decoded.length, compression.getUncompressedBytes());
+    }
+
+    @Test
+    public void levelIsClamped() {
+        assertEquals(1, new ResponseCompression(true, 0, 0).getLevel());
+        assertEquals(9, new ResponseCompression(true, 0, 42).getLevel());
+        assertEquals(0, new ResponseCompression(true, -5, 6).getMinSizeBytes());
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] repeat(String value, int times) {
+        return value.repeat(times).getBytes(StandardCharsets.UTF_8);
+    }
+}
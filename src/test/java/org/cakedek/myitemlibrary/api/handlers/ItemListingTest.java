@@ -0,0 +1,152 @@
+package org.cakedek.myitemlibrary.api.handlers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.cakedek.myitemlibrary.database.InMemoryItemStore;
+import org.cakedek.myitemlibrary.database.ItemData;
+import org.cakedek.myitemlibrary.database.ItemQuery;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ItemListingTest {
+    private final Gson gson = new Gson();
+
+    @Test
+    public void cursorRoundTrip() {
+        String cursor = ItemListing.encodeCursor(42);
+
+        assertEquals(42, ItemListing.parseQuery(null, parameters("cursor", cursor)).getAfterId());
+        assertEquals(0, ItemListing.parseQuery(null, parameters("cursor", "")).getAfterId());
+        assertEquals(0, ItemListing.parseQuery(null, parameters("cursor", base64("i:-7"))).getAfterId());
+    }
+
+    @Test
+    public void malformedCursorsAreRejected() {
+        for (String cursor : Arrays.asList("not base64!", base64("x:5"), base64("i:"), base64("i:abc"), base64("i:99999999999"))) {
+            try {
+                ItemListing.parseQuery(null, parameters("cursor", cursor));
+                fail("Expected " + cursor + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Invalid cursor", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void parsesLimitAndFilters() {
+        assertEquals(ItemListing.DEFAULT_LIMIT, ItemListing.parseQuery(null, parameters()).getLimit());
+        assertEquals(ItemListing.MAX_LIMIT, ItemListing.parseQuery(null, parameters("limit", "5000")).getLimit());
+        assertEquals(1, ItemListing.parseQuery(null, parameters("limit", "0")).getLimit());
+
+        ItemQuery query = ItemListing.parseQuery("Steve", parameters("enabled", "0", "name", "Sword", "q", "sharp"));
+        assertEquals("Steve", query.getPlayer());
+        assertEquals(Boolean.FALSE, query.getEnabled());
+        assertEquals("Sword", query.getItemName());
+        assertEquals("sharp", query.getSearch());
+        assertEquals(Boolean.TRUE, ItemListing.parseQuery(null, parameters("enabled", "TRUE")).getEnabled());
+
+        assertRejected(parameters("limit", "ten"), "Invalid limit");
+        assertRejected(parameters("enabled", "yes"), "Invalid enabled");
+    }
+
+    @Test
+    public void pagingIsRequestedOnlyByListingParameters() {
+        assertFalse(ItemListing.isRequested(parameters()));
+        assertFalse(ItemListing.isRequested(parameters("player", "Steve")));
+        assertTrue(ItemListing.isRequested(parameters("cursor", "")));
+        assertTrue(ItemListing.isRequested(parameters("fields", "id")));
+    }
+
+    @Test
+    public void fieldsProjectTheResponse() {
+        assertNull(ItemListing.parseFields(parameters()));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("id", "itemName")), ItemListing.parseFields(parameters("fields", "id,itemName,id")));
+        try {
+            ItemListing.parseFields(parameters("fields", "id,password"));
+            fail("Expected an unknown field");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown field: password", e.getMessage());
+        }
+
+        List<ItemData> items = List.of(new ItemData(7, 1, "Sword", "Sword", "", "Steve", true, "give", 1));
+        JsonObject response = gson.fromJson(ItemListing.toResponse(gson, items, new ItemQuery(null, null, null, null, 0, 10),
+                ItemListing.parseFields(parameters("fields", "id,player"))), JsonObject.class);
+        JsonObject item = response.getAsJsonArray("items").get(0).getAsJsonObject();
+        assertEquals(2, item.size());
+        assertEquals(7, item.get("id").getAsInt());
+        assertEquals("Steve", item.get("player").getAsString());
+    }
+
+    @Test
+    public void cursorsPageThroughAStoreWithoutGapsOrRepeats() throws SQLException {
+        InMemoryItemStore store = new InMemoryItemStore();
+        for (int i = 0; i < 25; i++) {
+            store.addItem("Item" + i, "Item " + i, i % 2 == 0 ? "even" : "odd", i % 3 == 0 ? "Alex" : "Steve", true, "", 1);
+        }
+
+        List<Integer> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            Map<String, String> parameters = parameters("limit", "4", "q", "even");
+            if (cursor != null) {
+                parameters.put("cursor", cursor);
+            }
+            ItemQuery query = ItemListing.parseQuery(null, parameters);
+            JsonObject response = gson.fromJson(ItemListing.toResponse(gson, store.findItems(query), query, null), JsonObject.class);
+            JsonArray items = response.getAsJsonArray("items");
+            for (int i = 0; i < items.size(); i++) {
+                seen.add(items.get(i).getAsJsonObject().get("id").getAsInt());
+            }
+            cursor = response.get("next").isJsonNull() ? null : response.get("next").getAsString();
+            pages++;
+        } while (cursor != null);
+
+        List<Integer> expected = new ArrayList<>();
+        for (ItemData item : store.getAllItems()) {
+            if (item.getDescription().equals("even")) {
+                expected.add(item.getId());
+            }
+        }
+        assertEquals(expected, seen);
+        // 13 ไอเทม หน้าละ 4 = 4 หน้า
+        assertEquals(4, pages);
+    }
+
+    private void assertRejected(Map<String, String> parameters, String message) {
+        try {
+            ItemListing.parseQuery(null, parameters);
+            fail("Expected " + message);
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static Map<String, String> parameters(String... keysAndValues) {
+        Map<String, String> parameters = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            parameters.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return parameters;
+    }
+
+    private static String base64(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
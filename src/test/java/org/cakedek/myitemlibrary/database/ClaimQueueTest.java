@@ -0,0 +1,179 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClaimQueueTest {
+    private static final Logger LOGGER = Logger.getLogger(ClaimQueueTest.class.getName());
+    // ไม่ให้ timer flush เอง เทสต์เรียก flush() หรือรอให้ชุดเต็มแทน
+    private static final long NO_TIMER = 60_000;
+
+    private CachedStore store;
+    private ClaimQueue queue;
+
+    /**
+     * {@link InMemoryItemStore} has no separate cache and never queues a claim, so this one
+     * pretends every item is cached unless listed in {@code uncached}.
+     */
+    private static final class CachedStore extends InMemoryItemStore {
+        private final Set<Integer> claimedInCache = new HashSet<>();
+        private final Set<Integer> uncached = new HashSet<>();
+        private final List<List<Integer>> batches = new ArrayList<>();
+        private volatile CountDownLatch applyGate;
+
+        @Override
+        public synchronized boolean claimCachedItem(int id) {
+            ItemData item = getItem(id);
+            return !uncached.contains(id) && item != null && item.isEnable() && claimedInCache.add(id);
+        }
+
+        @Override
+        public List<Integer> applyClaims(List<Integer> ids) {
+            CountDownLatch gate = applyGate;
+            if (gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (batches) {
+                batches.add(new ArrayList<>(ids));
+            }
+            return super.applyClaims(ids);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        LOGGER.setLevel(Level.OFF);
+        store = new CachedStore();
+        for (int i = 1; i <= 10; i++) {
+            store.addItem("Item" + i, "Item " + i, "", "Steve", true, "give %player% dirt", 1);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (store.applyGate != null) {
+            store.applyGate.countDown();
+        }
+        if (queue != null) {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void repeatedClaimsOfOneItemAreCoalesced() throws SQLException {
+        queue = new ClaimQueue(store, LOGGER, NO_TIMER, 100, 100);
+
+        assertTrue(queue.claim(1));
+        assertFalse(queue.claim(1));
+        assertTrue(queue.claim(2));
+        assertTrue(queue.isPending(1));
+        assertEquals(2, queue.getQueueDepth());
+        // ยังไม่ถูกเขียนลง store จนกว่าจะ flush
+        assertTrue(store.getItem(1).isEnable());
+
+        assertEquals(2, queue.flush());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2)), store.batches);
+        assertFalse(store.getItem(1).isEnable());
+        assertFalse(queue.isPending(1));
+        assertEquals(0, queue.getConflicts());
+        assertEquals(0, queue.flush());
+    }
+
+    @Test
+    public void uncachedItemsAreClaimedDirectly() throws SQLException {
+        queue = new ClaimQueue(store, LOGGER, NO_TIMER, 100, 100);
+        store.uncached.add(3);
+
+        assertTrue(queue.claim(3));
+        assertFalse(queue.claim(3));
+        assertEquals(0, queue.getQueueDepth());
+        assertFalse(store.getItem(3).isEnable());
+        assertTrue(store.batches.isEmpty());
+    }
+
+    @Test
+    public void fullBatchIsFlushedWithoutWaitingForTheTimer() throws SQLException, InterruptedException {
+        queue = new ClaimQueue(store, LOGGER, NO_TIMER, 3, 100);
+        queue.claim(1);
+        queue.claim(2);
+        queue.claim(3);
+
+        awaitTrue(() -> queue.getQueueDepth() == 0);
+        assertEquals(1, queue.getFlushes());
+        assertEquals(3, queue.getFlushedClaims());
+    }
+
+    @Test
+    public void fullQueueFallsBackToTheDatabase() throws SQLException, InterruptedException {
+        store.applyGate = new CountDownLatch(1);
+        queue = new ClaimQueue(store, LOGGER, NO_TIMER, 2, 2);
+        assertTrue(queue.claim(1));
+        assertTrue(queue.claim(2));
+
+        // flush ค้างอยู่ที่ applyGate คิวจึงยังเต็ม
+        assertTrue(queue.claim(3));
+        assertEquals(1, queue.getBackpressureFallbacks());
+        assertFalse(store.getItem(3).isEnable());
+        assertFalse(queue.isPending(3));
+
+        store.applyGate.countDown();
+        awaitTrue(() -> queue.getQueueDepth() == 0);
+        assertFalse(store.getItem(1).isEnable());
+    }
+
+    @Test
+    public void claimsOnDeletedItemsAreCountedAsConflicts() throws SQLException {
+        queue = new ClaimQueue(store, LOGGER, NO_TIMER, 100, 100);
+        assertTrue(queue.claim(4));
+        assertTrue(queue.claim(5));
+        store.deleteItem(4);
+
+        assertEquals(2, queue.flush());
+        assertEquals(1, queue.getConflicts());
+        assertFalse(store.getItem(5).isEnable());
+    }
+
+    @Test
+    public void shutdownWritesEverythingStillQueued() throws SQLException {
+        queue = new ClaimQueue(store, LOGGER, NO_TIMER, 2, 100);
+        for (int id = 1; id <= 5; id++) {
+            assertTrue(queue.claim(id));
+        }
+        queue.shutdown();
+        queue = null;
+
+        for (int id = 1; id <= 5; id++) {
+            assertFalse(store.getItem(id).isEnable());
+        }
+        assertTrue(store.getItem(6).isEnable());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
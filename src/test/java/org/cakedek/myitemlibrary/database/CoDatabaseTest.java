@@ -0,0 +1,62 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoDatabaseTest {
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        SchemaMigrator.execute(connection, "CREATE TABLE t (name TEXT)");
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO t (name) VALUES (?)")) {
+            for (String name : Arrays.asList("100%", "1000", "a_b", "axb", "x!y", "x!!y", "back\\slash", "Sword")) {
+                insert.setString(1, name);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void containsPatternTakesWildcardsLiterally() throws SQLException {
+        assertEquals("%!%!_!!%", CoDatabase.containsPattern("%_!"));
+        assertEquals(Arrays.asList("100%"), like("0%"));
+        assertEquals(Arrays.asList("a_b"), like("_"));
+        assertEquals(Arrays.asList("x!y", "x!!y"), like("!"));
+        assertEquals(Arrays.asList("x!!y"), like("!!"));
+        assertEquals(Arrays.asList("back\\slash"), like("\\"));
+        // LIKE ของ SQLite ไม่สนตัวพิมพ์สำหรับ ASCII เหมือน ItemQuery.matches
+        assertEquals(Arrays.asList("Sword"), like("sWORD"));
+    }
+
+    private List<String> like(String term) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement select = connection.prepareStatement("SELECT name FROM t WHERE name LIKE ? ESCAPE '!' ORDER BY rowid")) {
+            select.setString(1, CoDatabase.containsPattern(term));
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+}
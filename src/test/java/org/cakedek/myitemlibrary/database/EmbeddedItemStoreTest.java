@@ -0,0 +1,179 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddedItemStoreTest {
+    private static final Logger LOGGER = Logger.getLogger(EmbeddedItemStoreTest.class.getName());
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    // fsync ตาม interval ไม่ใช่ทุกครั้งที่เขียน ไม่งั้นเทสต์ที่เขียนหลาย MB จะช้า
+    private static final long FSYNC_INTERVAL_MS = 60_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private EmbeddedItemStore store;
+    private int addedItems;
+
+    @Before
+    public void setUp() throws IOException {
+        LOGGER.setLevel(Level.OFF);
+        directory = folder.newFolder("embedded");
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void snapshotAndFullReplayLoadTheSameState() throws SQLException {
+        open(0);
+        addItems("Steve", 50);
+        addItems("Alex", 50);
+        assertTrue(store.claimItem(3));
+        assertTrue(store.deleteItem(10));
+        store.updateItemEnabled(20, false);
+        store.registerPlayer(UUID.randomUUID(), "Notch");
+        store.grantTemplateToAllPlayers(store.getOrCreateTemplateId("Crate", "Crate", "", "give %player% chest"), true, 2);
+        List<String> expected = describe(store.getAllItems());
+        store.close();
+
+        assertTrue(snapshotFile().exists());
+        open(0);
+        assertEquals(expected, describe(store.getAllItems()));
+        store.close();
+
+        assertTrue(snapshotFile().delete());
+        open(0);
+        assertEquals(expected, describe(store.getAllItems()));
+    }
+
+    @Test
+    public void olderSnapshotIsCaughtUpByReplayingTheTail() throws SQLException, IOException {
+        open(0);
+        addItems("Steve", 20);
+        store.close();
+        File older = folder.newFile("older.snapshot");
+        Files.copy(snapshotFile().toPath(), older.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        // หลัง snapshot: ทั้งแก้ไอเทมที่อยู่ใน snapshot แล้ว และเพิ่มใหม่
+        open(0);
+        assertTrue(store.claimItem(1));
+        assertTrue(store.deleteItem(2));
+        store.updateItemEnabled(3, false);
+        addItems("Alex", 5);
+        List<String> expected = describe(store.getAllItems());
+        store.close();
+
+        Files.copy(older.toPath(), snapshotFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open(0);
+        assertEquals(expected, describe(store.getAllItems()));
+        assertNull(store.getItem(2));
+        assertEquals(0, store.getItem(1).getUsed());
+    }
+
+    @Test
+    public void compactionKeepsTombstonesForOlderSegments() throws SQLException, InterruptedException {
+        open(50);
+        // segment 1 เต็มไปด้วยไอเทมที่ยังอยู่ จึงไม่ถูก compact
+        while (!segmentFile(2).exists()) {
+            addItems("Steve", 1000);
+        }
+        int live = addedItems;
+        // ระเบียนลบของไอเทม 1 อยู่ใน segment 2 แต่ตัวไอเทมอยู่ใน segment 1
+        assertTrue(store.deleteItem(1));
+        // ส่วนที่เหลือของ segment 2 เป็นไอเทมที่ถูกลบไปแล้วทั้งหมด
+        while (!segmentFile(3).exists()) {
+            int first = addedItems + 1;
+            addItems("Alex", 1000);
+            for (int id = first; id <= addedItems; id++) {
+                assertTrue(store.deleteItem(id));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (segmentFile(2).exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse("segment 2 should have been compacted", segmentFile(2).exists());
+        assertTrue(segmentFile(1).exists());
+        assertNull(store.getItem(1));
+        assertEquals(live - 1, store.countListItems("Steve"));
+        store.close();
+
+        // เล่น log ใหม่ทั้งหมด ระเบียนลบที่ถูกคัดลอกต้องยังซ่อนไอเทม 1 ที่อยู่ใน segment 1
+        assertTrue(snapshotFile().delete());
+        open(0);
+        assertNull(store.getItem(1));
+        assertNotNull(store.getItem(2));
+        assertEquals(live - 1, store.countListItems("Steve"));
+        assertEquals(0, store.countListItems("Alex"));
+    }
+
+    @Test
+    public void secondStoreOnSameDirectoryFailsToConnect() {
+        open(0);
+        EmbeddedItemStore second = new EmbeddedItemStore(directory, SEGMENT_SIZE, FSYNC_INTERVAL_MS, 0, 0.5, 0, LOGGER);
+        assertFalse(second.connect());
+        assertFalse(second.isConnectionValid());
+
+        store.close();
+        assertTrue(second.connect());
+        second.close();
+    }
+
+    private void open(long compactionIntervalMs) {
+        store = new EmbeddedItemStore(directory, SEGMENT_SIZE, FSYNC_INTERVAL_MS, compactionIntervalMs, 0.5, 0, LOGGER);
+        assertTrue(store.connect());
+    }
+
+    private void addItems(String player, int count) throws SQLException {
+        List<ItemData> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new ItemData(0, 0, "Item" + (i % 10), "Item " + (i % 10), "", player, true, "give %player% dirt", 1));
+        }
+        assertEquals(count, store.addItems(items));
+        addedItems += count;
+    }
+
+    private static List<String> describe(List<ItemData> items) {
+        List<String> described = new ArrayList<>(items.size());
+        for (ItemData item : items) {
+            described.add(item.getId() + "/" + item.getTemplateId() + "/" + item.getItemName() + "/" + item.getPlayer()
+                    + "/" + item.isEnable() + "/" + item.getCommand() + "/" + item.getUsed());
+        }
+        return described;
+    }
+
+    private File snapshotFile() {
+        return new File(directory, "index.snapshot");
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("segment-%06d.log", id));
+    }
+}
@@ -0,0 +1,132 @@
+package org.cakedek.myitemlibrary.database;
+
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ItemTransferTest {
+    private final Gson gson = new Gson();
+    private InMemoryItemStore source;
+
+    @Before
+    public void setUp() throws SQLException {
+        source = new InMemoryItemStore();
+        source.addItem("Sword", "Diamond Sword", "Sharp, \"very\" sharp", "Steve", true, "give %player% diamond_sword", 1);
+        source.addItem("Note", "Note", "line one\nline two\r\nline three", "Alex", false, "", 3);
+        source.addItem("Apple", "แอปเปิ้ลทอง", "", "Steve", true, "give %player% golden_apple,1", 0);
+        source.addItem("Empty", "Empty", null, "Notch", true, null, 1);
+    }
+
+    @Test
+    public void ndjsonRoundTrip() throws SQLException, IOException {
+        assertRoundTrip(ItemTransfer.Format.NDJSON);
+    }
+
+    @Test
+    public void csvRoundTrip() throws SQLException, IOException {
+        assertRoundTrip(ItemTransfer.Format.CSV);
+    }
+
+    @Test
+    public void exportWritesOneLinePerItemInBatches() throws SQLException, IOException {
+        StringWriter out = new StringWriter();
+        List<Long> progress = new ArrayList<>();
+        long written = new ItemTransfer(source, gson, 3).exportItems(ItemTransfer.Format.NDJSON, out, progress::add);
+
+        assertEquals(4, written);
+        assertEquals(Arrays.asList(3L, 4L), progress);
+        String[] lines = out.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].contains("\"item_name\":\"Sword\""));
+        assertTrue(lines[0], lines[0].contains("\"template_id\":"));
+    }
+
+    @Test
+    public void csvParserHandlesQuotingAndMissingColumns() throws SQLException, IOException {
+        String csv = "\uFEFFItem_Name,item_display,description,player,enable,command,used\r\n"
+                + "Sword,\"Sword, the best\",\"He said \"\"hi\"\"\",Steve,false,give,2\r\n"
+                + "\r\n"
+                + "Note,Note,\"two\nlines\",Alex\n"
+                + "Apple,Apple,,Notch,1,,";
+        InMemoryItemStore target = new InMemoryItemStore();
+        long imported = new ItemTransfer(target, gson, 2).importItems(ItemTransfer.Format.CSV, new StringReader(csv), null);
+
+        assertEquals(3, imported);
+        assertEquals(Arrays.asList(
+                "Sword/Sword, the best/He said \"hi\"/Steve/false/give/2",
+                "Note/Note/two\nlines/Alex/true//1",
+                "Apple/Apple//Notch/true//1"
+        ), describe(target.getAllItems()));
+    }
+
+    @Test
+    public void invalidRecordNamesItsLineAndKeepsEarlierBatches() throws SQLException, IOException {
+        String csv = "item_name,item_display,description,player\n"
+                + "Sword,Sword,\"multi\nline\",Steve\n"
+                + "Note,Note,,not a player\n";
+        InMemoryItemStore target = new InMemoryItemStore();
+        try {
+            new ItemTransfer(target, gson, 1).importItems(ItemTransfer.Format.CSV, new StringReader(csv), null);
+            fail("Expected an invalid player name");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 4: Invalid player name"));
+        }
+        assertEquals(1, target.getAllItems().size());
+    }
+
+    @Test
+    public void invalidRecordsAreRejected() throws SQLException, IOException {
+        assertRejected(ItemTransfer.Format.NDJSON, "{\"item_name\":\"A\",\"item_display\":\"A\",\"player\":\"Steve\"}\n\n{not json\n", "Line 3: invalid JSON");
+        assertRejected(ItemTransfer.Format.NDJSON, "{\"item_name\":\"A\",\"item_display\":\"A\",\"player\":\"Steve\",\"used\":-1}\n", "Line 1: Invalid used");
+        assertRejected(ItemTransfer.Format.NDJSON, "{\"item_name\":\"A\",\"player\":\"Steve\"}\n", "Line 1: Missing item_display");
+        assertRejected(ItemTransfer.Format.CSV, "item_name,item_display,player\nA,A,Steve,extra\n", "Line 2: expected 3 fields, found 4");
+        assertRejected(ItemTransfer.Format.CSV, "item_name,item_display,player\n\"A,A,Steve\n", "Line 2: unterminated quoted field");
+        assertRejected(ItemTransfer.Format.CSV, "item_name,item_display,player,enable\nA,A,Steve,maybe\n", "Line 2: Invalid enable");
+    }
+
+    private void assertRoundTrip(ItemTransfer.Format format) throws SQLException, IOException {
+        StringWriter out = new StringWriter();
+        assertEquals(4, new ItemTransfer(source, gson, 2).exportItems(format, out, null));
+
+        InMemoryItemStore target = new InMemoryItemStore();
+        long imported = new ItemTransfer(target, gson, 3).importItems(format, new StringReader(out.toString()), null);
+
+        assertEquals(4, imported);
+        assertEquals(describe(source.getAllItems()), describe(target.getAllItems()));
+    }
+
+    private void assertRejected(ItemTransfer.Format format, String input, String message) throws SQLException, IOException {
+        try {
+            new ItemTransfer(new InMemoryItemStore(), gson, 10).importItems(format, new StringReader(input), null);
+            fail("Expected " + message);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    // id ถูกสร้างใหม่ตอนนำเข้า จึงเทียบเฉพาะข้อมูลของไอเทม
+    private static List<String> describe(List<ItemData> items) {
+        List<String> described = new ArrayList<>(items.size());
+        for (ItemData item : items) {
+            described.add(item.getItemName() + "/" + item.getItemDisplay() + "/" + nullToEmpty(item.getDescription()) + "/"
+                    + item.getPlayer() + "/" + item.isEnable() + "/" + nullToEmpty(item.getCommand()) + "/" + item.getUsed());
+        }
+        return described;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
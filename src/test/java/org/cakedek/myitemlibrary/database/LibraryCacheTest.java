@@ -0,0 +1,144 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LibraryCacheTest {
+    @Test
+    public void loadedListIsServedSortedById() {
+        LibraryCache cache = new LibraryCache(100, 10, 0);
+        assertNull(cache.get("Steve"));
+
+        cache.put("Steve", Arrays.asList(item(3, "Steve"), item(1, "Steve"), item(2, "Steve")), cache.beginLoad("Steve"));
+
+        assertEquals(Arrays.asList(1, 2, 3), ids(cache.get("Steve")));
+        assertEquals("Steve", cache.getOwner(2));
+        // key ไม่สนตัวพิมพ์ แต่ชื่อต้องตรงกันจริง
+        assertNull(cache.get("steve"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getLoads());
+    }
+
+    @Test
+    public void loadIsDroppedWhenThePlayerChangedMeanwhile() {
+        LibraryCache cache = new LibraryCache(100, 10, 0);
+        Object token = cache.beginLoad("Steve");
+        cache.addItem(item(5, "Steve"));
+
+        LibraryCache.CachedLibrary result = cache.put("Steve", List.of(item(1, "Steve")), token);
+        assertEquals(Arrays.asList(1), ids(result));
+        assertNull(cache.get("Steve"));
+
+        token = cache.beginLoad("Steve");
+        cache.invalidate("Steve");
+        cache.put("Steve", List.of(item(1, "Steve")), token);
+        assertNull(cache.get("Steve"));
+        assertEquals(0, cache.getLoads());
+    }
+
+    @Test
+    public void loadIsDroppedAfterAWriteToAnUncachedItem() {
+        LibraryCache cache = new LibraryCache(100, 10, 0);
+        Object token = cache.beginLoad("Steve");
+        // ไม่รู้ว่าไอเทม 9 เป็นของใคร อาจเป็นของ Steve ที่กำลังโหลดอยู่
+        assertFalse(cache.removeItem(9));
+
+        cache.put("Steve", List.of(item(9, "Steve")), token);
+        assertNull(cache.get("Steve"));
+
+        cache.put("Steve", List.of(item(1, "Steve")), cache.beginLoad("Steve"));
+        assertNotNull(cache.get("Steve"));
+    }
+
+    @Test
+    public void onlyTheLatestLoadIsStored() {
+        LibraryCache cache = new LibraryCache(100, 10, 0);
+        Object older = cache.beginLoad("Steve");
+        Object newer = cache.beginLoad("Steve");
+
+        cache.put("Steve", List.of(item(1, "Steve")), older);
+        assertNull(cache.get("Steve"));
+        cache.put("Steve", List.of(item(1, "Steve"), item(2, "Steve")), newer);
+        assertEquals(Arrays.asList(1, 2), ids(cache.get("Steve")));
+    }
+
+    @Test
+    public void writesUpdateTheCachedList() {
+        LibraryCache cache = new LibraryCache(100, 10, 0);
+        cache.put("Steve", Arrays.asList(item(1, "Steve"), item(4, "Steve")), cache.beginLoad("Steve"));
+
+        cache.addItem(item(2, "Steve"));
+        assertEquals(Arrays.asList(1, 2, 4), ids(cache.get("Steve")));
+
+        cache.decrementUsed(4);
+        assertEquals(2, cache.get("Steve").getItems().get(2).getUsed());
+
+        assertTrue(cache.removeItem(1));
+        assertEquals(Arrays.asList(2, 4), ids(cache.get("Steve")));
+        assertNull(cache.getOwner(1));
+        assertEquals(2, cache.getItemCount());
+    }
+
+    @Test
+    public void playersWithTooManyItemsAreMarkedOversized() {
+        LibraryCache cache = new LibraryCache(100, 2, 0);
+        List<ItemData> items = Arrays.asList(item(1, "Steve"), item(2, "Steve"), item(3, "Steve"));
+
+        assertTrue(cache.put("Steve", items, cache.beginLoad("Steve")).isOversized());
+        assertTrue(cache.get("Steve").isOversized());
+
+        cache.put("Alex", Arrays.asList(item(4, "Alex"), item(5, "Alex")), cache.beginLoad("Alex"));
+        cache.addItem(item(6, "Alex"));
+        assertNull(cache.get("Alex"));
+    }
+
+    @Test
+    public void leastRecentlyUsedPlayersAreEvicted() {
+        LibraryCache cache = new LibraryCache(4, 4, 0);
+        cache.put("Steve", Arrays.asList(item(1, "Steve"), item(2, "Steve")), cache.beginLoad("Steve"));
+        cache.put("Alex", Arrays.asList(item(3, "Alex"), item(4, "Alex")), cache.beginLoad("Alex"));
+        cache.get("Steve");
+
+        cache.put("Notch", List.of(item(5, "Notch")), cache.beginLoad("Notch"));
+
+        assertNull(cache.get("Alex"));
+        assertNull(cache.getOwner(3));
+        assertNotNull(cache.get("Steve"));
+        assertNotNull(cache.get("Notch"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getItemCount());
+    }
+
+    @Test
+    public void entriesExpireAfterTheTtl() throws InterruptedException {
+        LibraryCache cache = new LibraryCache(100, 10, 10);
+        cache.put("Steve", List.of(item(1, "Steve")), cache.beginLoad("Steve"));
+
+        Thread.sleep(30);
+        assertNull(cache.get("Steve"));
+        assertEquals(0, cache.getPlayerCount());
+        assertEquals(0, cache.getItemCount());
+    }
+
+    private static ItemData item(int id, String player) {
+        return new ItemData(id, 1, "Item" + id, "Item " + id, "", player, true, "give %player% dirt", 3);
+    }
+
+    private static List<Integer> ids(LibraryCache.CachedLibrary library) {
+        List<Integer> ids = new ArrayList<>();
+        for (ItemData item : library.getItems()) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
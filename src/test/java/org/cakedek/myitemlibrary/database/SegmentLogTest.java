@@ -0,0 +1,218 @@
+package org.cakedek.myitemlibrary.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class SegmentLogTest {
+    private static final Logger LOGGER = Logger.getLogger(SegmentLogTest.class.getName());
+    private static final byte TYPE = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private SegmentLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        LOGGER.setLevel(Level.OFF);
+        directory = folder.newFolder("log");
+    }
+
+    @After
+    public void tearDown() {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    @Test
+    public void recordsSurviveReopen() throws IOException {
+        log = open(4096);
+        append("a", "b", "c");
+        reopen(4096);
+
+        assertEquals(Arrays.asList("a", "b", "c"), replayAll());
+    }
+
+    @Test
+    public void rotatesWhenSegmentIsFull() throws IOException {
+        // 3 ระเบียนขนาด 9 + 11 ไบต์ต่อ segment
+        log = open(64);
+        append("record-0001", "record-0002", "record-0003", "record-0004", "record-0005");
+
+        assertEquals(Arrays.asList(1), log.getSealedSegmentIds());
+        assertEquals(2, log.getActiveSegmentId());
+        reopen(64);
+        assertEquals(Arrays.asList("record-0001", "record-0002", "record-0003", "record-0004", "record-0005"), replayAll());
+    }
+
+    @Test
+    public void replayStartsAtLocation() throws IOException {
+        log = open(4096);
+        log.append(TYPE, bytes("a"));
+        long from = log.append(TYPE, bytes("b"));
+        log.append(TYPE, bytes("c"));
+
+        List<String> records = new ArrayList<>();
+        log.replay(from, (location, type, payload) -> records.add(string(payload)));
+        assertEquals(Arrays.asList("b", "c"), records);
+
+        records.clear();
+        log.replay(log.getEndLocation(), (location, type, payload) -> records.add(string(payload)));
+        assertEquals(0, records.size());
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException {
+        log = open(4096);
+        append("a", "b");
+        long end = log.getEndLocation();
+        log.close();
+
+        // header บอกว่ามี 100 ไบต์ แต่เขียนไม่ทันครบก่อนเครื่องดับ
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(1), "rw")) {
+            file.seek(SegmentLog.offset(end));
+            file.writeInt(100);
+            file.writeInt(0x12345678);
+            file.writeByte(TYPE);
+            file.write(bytes("partial"));
+        }
+
+        log = open(4096);
+        assertEquals(Arrays.asList("a", "b"), replayAll());
+        assertEquals(end, log.getEndLocation());
+
+        append("c");
+        reopen(4096);
+        assertEquals(Arrays.asList("a", "b", "c"), replayAll());
+    }
+
+    @Test
+    public void crcMismatchInLastSegmentDropsTheRest() throws IOException {
+        log = open(4096);
+        log.append(TYPE, bytes("a"));
+        long corrupt = log.append(TYPE, bytes("b"));
+        log.append(TYPE, bytes("c"));
+        log.close();
+
+        flipPayloadByte(1, corrupt);
+
+        log = open(4096);
+        assertEquals(Arrays.asList("a"), replayAll());
+        append("d");
+        reopen(4096);
+        assertEquals(Arrays.asList("a", "d"), replayAll());
+    }
+
+    @Test
+    public void crcMismatchInSealedSegmentSkipsOnlyThatSegment() throws IOException {
+        log = open(64);
+        log.append(TYPE, bytes("record-0001"));
+        long corrupt = log.append(TYPE, bytes("record-0002"));
+        append("record-0003", "record-0004", "record-0005");
+        assertEquals(1, SegmentLog.segmentId(corrupt));
+        log.close();
+
+        flipPayloadByte(1, corrupt);
+
+        log = open(64);
+        assertEquals(Arrays.asList("record-0001", "record-0004", "record-0005"), replayAll());
+        assertEquals(2, log.getActiveSegmentId());
+    }
+
+    @Test
+    public void deletedSegmentIsNotReplayed() throws IOException {
+        log = open(64);
+        append("record-0001", "record-0002", "record-0003", "record-0004");
+        log.deleteSegment(1);
+        // segment ที่กำลังเขียนอยู่ลบไม่ได้
+        log.deleteSegment(2);
+
+        assertFalse(segmentFile(1).exists());
+        reopen(64);
+        assertEquals(Arrays.asList("record-0004"), replayAll());
+    }
+
+    @Test
+    public void secondOpenOfSameDirectoryFails() throws IOException {
+        log = open(4096);
+        try {
+            open(4096);
+            fail("Expected the directory to be locked");
+        } catch (IOException expected) {
+        }
+
+        log.close();
+        log = open(4096);
+    }
+
+    private SegmentLog open(int segmentSize) throws IOException {
+        SegmentLog opened = new SegmentLog(directory, segmentSize, LOGGER);
+        opened.open();
+        return opened;
+    }
+
+    private void reopen(int segmentSize) throws IOException {
+        log.close();
+        log = open(segmentSize);
+    }
+
+    private void append(String... payloads) throws IOException {
+        for (String payload : payloads) {
+            log.append(TYPE, bytes(payload));
+        }
+        log.force();
+    }
+
+    private List<String> replayAll() throws IOException {
+        List<String> records = new ArrayList<>();
+        log.replay(SegmentLog.location(0, 0), (location, type, payload) -> {
+            assertEquals(TYPE, type);
+            records.add(string(payload));
+        });
+        return records;
+    }
+
+    private void flipPayloadByte(int segmentId, long location) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile(segmentId), "rw")) {
+            long position = SegmentLog.offset(location) + SegmentLog.HEADER_SIZE;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("segment-%06d.log", id));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}